@@ -12,21 +12,21 @@ do
   cp src/$F bin/hicupp/$F
 done
 
-jpackage -p bin -m hicupp/interactivehicupp.ImagesMain --name HicuppForImages --type app-image --mac-sign
+jpackage -p bin -m hicupp/interactivehicupp.ImagesMain --add-modules jdk.incubator.vector --java-options "--add-modules jdk.incubator.vector" --name HicuppForImages --type app-image --mac-sign
 ditto -c -k --keepParent --sequesterRsrc HicuppForImages.app HicuppForImages-macos-unstapled.zip
 xcrun notarytool submit HicuppForImages-macos-unstapled.zip --keychain-profile APPLE_ID_PASSWORD --wait
 rm HicuppForImages-macos-unstapled.zip
 xcrun stapler staple HicuppForImages.app
 ditto -c -k --keepParent --sequesterRsrc HicuppForImages.app HicuppForImages-macos.zip
 
-jpackage -p bin -m hicupp/interactivehicupp.GeneralMain --name HicuppForGeneralPointSets --type app-image --mac-sign
+jpackage -p bin -m hicupp/interactivehicupp.GeneralMain --add-modules jdk.incubator.vector --java-options "--add-modules jdk.incubator.vector" --name HicuppForGeneralPointSets --type app-image --mac-sign
 ditto -c -k --keepParent --sequesterRsrc HicuppForGeneralPointSets.app HicuppForGeneralPointSets-macos-unstapled.zip
 xcrun notarytool submit HicuppForGeneralPointSets-macos-unstapled.zip --keychain-profile APPLE_ID_PASSWORD --wait
 rm HicuppForGeneralPointSets-macos-unstapled.zip
 xcrun stapler staple HicuppForGeneralPointSets.app
 ditto -c -k --keepParent --sequesterRsrc HicuppForGeneralPointSets.app HicuppForGeneralPointSets-macos.zip
 
-jpackage -p bin -m hicupp/hicupp.SequentialHicupp --name SequentialHicupp --type app-image --mac-sign
+jpackage -p bin -m hicupp/hicupp.SequentialHicupp --add-modules jdk.incubator.vector --java-options "--add-modules jdk.incubator.vector" --name SequentialHicupp --type app-image --mac-sign
 ditto -c -k --keepParent --sequesterRsrc SequentialHicupp.app SequentialHicupp-macos-unstapled.zip
 xcrun notarytool submit SequentialHicupp-macos-unstapled.zip --keychain-profile APPLE_ID_PASSWORD --wait
 rm SequentialHicupp-macos-unstapled.zip
@@ -1,14 +1,33 @@
 package hicupp;
 
+import java.util.Arrays;
+
 public class ArraySetOfPoints implements SetOfPoints {
   private final int dimensionCount;
   private final int pointCount;
   private final double[] matrix;
+  private final int[] weights;
   
   public ArraySetOfPoints(int dimensionCount, double[] matrix) {
+    this(dimensionCount, matrix, null);
+  }
+  
+  /**
+   * @param weights The number of times each point occurs, or <code>null</code>
+   *                if each occurs once; see {@link SetOfPoints#isWeighted()}.
+   */
+  public ArraySetOfPoints(int dimensionCount, double[] matrix, int[] weights) {
     this.dimensionCount = dimensionCount;
     pointCount = matrix.length / dimensionCount;
     this.matrix = matrix;
+    if (weights != null) {
+      if (weights.length != pointCount)
+        throw new IllegalArgumentException("There must be a weight for each point.");
+      for (int weight : weights)
+        if (weight <= 0)
+          throw new IllegalArgumentException("The weights must be positive.");
+    }
+    this.weights = weights;
   }
   
   public int getDimensionCount() {
@@ -19,10 +38,27 @@ public class ArraySetOfPoints implements SetOfPoints {
     return pointCount;
   }
   
+  public boolean isWeighted() {
+    return weights != null;
+  }
+  
   public PointIterator createIterator() {
     return new MatrixPointIterator();
   }
   
+  public double[] getCoordinateArray() {
+    return matrix;
+  }
+  
+  public void project(double[] axis, double[] values) {
+    for (int k = 0, offset = 0; k < pointCount; k++, offset += dimensionCount) {
+      double value = 0.0;
+      for (int i = 0; i < dimensionCount; i++)
+        value += matrix[offset + i] * axis[i];
+      values[k] = value;
+    }
+  }
+  
   private class MatrixPointIterator implements PointIterator {
     private int i = -dimensionCount;
     
@@ -37,5 +73,24 @@ public class ArraySetOfPoints implements SetOfPoints {
     public double getCoordinate(int index) {
       return matrix[i + index];
     }
+    
+    public int getWeight() {
+      return weights == null ? 1 : weights[i / dimensionCount];
+    }
+    
+    public void nextPoints(int count, int ndims, double[] buffer, int offset, int[] pointWeights) {
+      if (ndims == dimensionCount)
+        System.arraycopy(matrix, i + dimensionCount, buffer, offset, count * dimensionCount);
+      else
+        for (int p = 0, from = i + dimensionCount; p < count; p++, from += dimensionCount, offset += ndims)
+          System.arraycopy(matrix, from, buffer, offset, ndims);
+      if (pointWeights != null) {
+        if (weights == null)
+          Arrays.fill(pointWeights, 0, count, 1);
+        else
+          System.arraycopy(weights, i / dimensionCount + 1, pointWeights, 0, count);
+      }
+      i += count * dimensionCount;
+    }
   }
 }
@@ -0,0 +1,128 @@
+package hicupp;
+
+/**
+ * Estimates the density of a list of values on a uniform grid by linear
+ * binning followed by a convolution with a Gaussian kernel, computed by FFT.
+ * <p>The values are binned onto a fine grid whose spacing is the coarse grid
+ * step divided by the <i>oversampling</i> factor; a larger factor gives a
+ * smaller binning error at the cost of a larger transform. The estimate equals
+ * the exact kernel sum with each value moved to its two neighbouring fine grid
+ * points.</p>
+ * <p>An instance holds scratch arrays for grids of up to a maximum size and
+ * must not be used by several threads at once.</p>
+ */
+final class BinnedDensityEstimator {
+  private final int maximumGridSize;
+  private final int oversampling;
+  private final double[] counts;
+  private final double[] re;
+  private final double[] im;
+  private int gridSize;
+  private int fineSize;
+  private double fineStep;
+
+  BinnedDensityEstimator(int maximumGridSize, int oversampling) {
+    this.maximumGridSize = maximumGridSize;
+    this.oversampling = oversampling;
+    counts = new double[(maximumGridSize - 1) * oversampling + 1];
+    int capacity = FFT.powerOfTwoAtLeast(2 * counts.length);
+    re = new double[capacity];
+    im = new double[capacity];
+  }
+
+  int getOversampling() {
+    return oversampling;
+  }
+
+  int getMaximumGridSize() {
+    return maximumGridSize;
+  }
+
+  /**
+   * Distributes each value over the two nearest points of the fine grid that
+   * starts at <code>x0</code> and underlies a coarse grid of
+   * <code>gridSize</code> points, in proportion to its distance to each, and
+   * to its weight if <code>weights</code> is not <code>null</code>.
+   * All values must lie within the grid.
+   */
+  void bin(double[] values, double[] weights, int count, double x0, double step, int gridSize) {
+    if (gridSize > maximumGridSize)
+      throw new IllegalArgumentException("gridSize exceeds the maximum grid size.");
+    this.gridSize = gridSize;
+    fineSize = (gridSize - 1) * oversampling + 1;
+    fineStep = step / oversampling;
+    final double scale = 1.0 / fineStep;
+    final double[] counts = this.counts;
+    final int last = fineSize - 1;
+
+    for (int t = 0; t < fineSize; t++)
+      counts[t] = 0.0;
+
+    for (int i = 0; i < count; i++) {
+      double position = (values[i] - x0) * scale;
+      int t = (int) position;
+      if (t >= last)
+        t = last - 1;
+      double fraction = position - t;
+      if (weights == null) {
+        counts[t] += 1.0 - fraction;
+        counts[t + 1] += fraction;
+      } else {
+        counts[t] += weights[i] * (1.0 - fraction);
+        counts[t + 1] += weights[i] * fraction;
+      }
+    }
+  }
+
+  /**
+   * Stores the kernel density estimate at each point of the coarse grid into
+   * <code>fhat</code>. As in the exact estimate, the kernel is truncated at
+   * four bandwidths and the sum is not divided by the number of values.
+   */
+  void estimate(double bandwidth, double[] fhat) {
+    final double[] re = this.re;
+    final double[] im = this.im;
+    final int L = (int) Math.min(fineSize - 1, Math.floor(4 * bandwidth / fineStep));
+    final int P = FFT.powerOfTwoAtLeast(fineSize + L);
+
+    // Pack the bin counts and the kernel into a single complex sequence.
+
+    for (int t = 0; t < P; t++) {
+      re[t] = t < fineSize ? counts[t] : 0.0;
+      im[t] = 0.0;
+    }
+    final double normalization = 1 / Math.sqrt(2 * Math.PI) / bandwidth;
+    for (int i = 0; i <= L; i++) {
+      double u = i * fineStep / bandwidth;
+      double k = normalization * Math.exp(u * u / -2);
+      im[i] = k;
+      if (i > 0)
+        im[P - i] = k;
+    }
+
+    FFT.transform(re, im, P, false);
+
+    // Separate the two spectra and multiply them.
+
+    for (int k = 0; k <= P / 2; k++) {
+      int m = (P - k) & (P - 1);
+      double ar = re[k], ai = im[k];
+      double br = re[m], bi = im[m];
+      double cr = (ar + br) / 2, ci = (ai - bi) / 2;
+      double kr = (ai + bi) / 2, ki = (br - ar) / 2;
+      double fr = cr * kr - ci * ki;
+      double fi = cr * ki + ci * kr;
+      re[k] = fr;
+      im[k] = fi;
+      re[m] = fr;
+      im[m] = -fi;
+    }
+
+    FFT.transform(re, im, P, true);
+
+    // Round-off can leave tiny negative values where the density vanishes.
+
+    for (int j = 0; j < gridSize; j++)
+      fhat[j] = Math.max(0.0, re[j * oversampling]);
+  }
+}
@@ -0,0 +1,129 @@
+package hicupp;
+
+import java.util.Arrays;
+
+/**
+ * A set of points whose coordinates are bytes from 0 to 255, such as the
+ * colors of an image, stored as one array per coordinate.
+ * <p>Since each coordinate takes only 256 values, {@link #project(double[], double[])}
+ * first tabulates the products of each value with the corresponding element
+ * of the axis, and then projects a point with one table lookup per
+ * coordinate instead of a multiplication. The tables are kept per thread,
+ * so that repeated projections allocate nothing.</p>
+ * <p>The projection indices do not project through this method: they copy
+ * the points into {@link PointBlocks}, whose vectorized kernel projects them
+ * faster than the lookups do.</p>
+ */
+public class BytePlaneSetOfPoints implements SetOfPoints {
+  private static final int VALUE_COUNT = 256;
+  
+  private final byte[][] planes;
+  private final int pointCount;
+  private final int[] weights;
+  /** The product tables of each thread, one per dimension. */
+  private final ThreadLocal<double[][]> tables;
+  
+  public BytePlaneSetOfPoints(byte[][] planes) {
+    this(planes, null);
+  }
+  
+  /**
+   * @param planes The coordinates, one array per dimension, each holding the
+   *               coordinate of every point as an unsigned byte.
+   * @param weights The number of times each point occurs, or <code>null</code>
+   *                if each occurs once; see {@link SetOfPoints#isWeighted()}.
+   */
+  public BytePlaneSetOfPoints(byte[][] planes, int[] weights) {
+    if (planes.length == 0)
+      throw new IllegalArgumentException("There must be at least one dimension.");
+    pointCount = planes[0].length;
+    for (byte[] plane : planes)
+      if (plane.length != pointCount)
+        throw new IllegalArgumentException("Each dimension must have a coordinate for each point.");
+    if (weights != null) {
+      if (weights.length != pointCount)
+        throw new IllegalArgumentException("There must be a weight for each point.");
+      for (int weight : weights)
+        if (weight <= 0)
+          throw new IllegalArgumentException("The weights must be positive.");
+    }
+    this.planes = planes;
+    this.weights = weights;
+    final int dimensionCount = planes.length;
+    this.tables = ThreadLocal.withInitial(() -> new double[dimensionCount][VALUE_COUNT]);
+  }
+  
+  public int getDimensionCount() {
+    return planes.length;
+  }
+  
+  public int getPointCount() {
+    return pointCount;
+  }
+  
+  public boolean isWeighted() {
+    return weights != null;
+  }
+  
+  public PointIterator createIterator() {
+    return new PlanePointIterator();
+  }
+  
+  public void project(double[] axis, double[] values) {
+    final int dimensionCount = planes.length;
+    final double[][] tables = this.tables.get();
+    for (int i = 0; i < dimensionCount; i++)
+      for (int v = 0; v < VALUE_COUNT; v++)
+        tables[i][v] = v * axis[i];
+    
+    if (dimensionCount == 3) {
+      final byte[] plane0 = planes[0], plane1 = planes[1], plane2 = planes[2];
+      final double[] table0 = tables[0], table1 = tables[1], table2 = tables[2];
+      for (int k = 0; k < pointCount; k++)
+        values[k] = table0[plane0[k] & 0xff] + table1[plane1[k] & 0xff] + table2[plane2[k] & 0xff];
+    } else {
+      Arrays.fill(values, 0, pointCount, 0.0);
+      for (int i = 0; i < dimensionCount; i++) {
+        final byte[] plane = planes[i];
+        final double[] table = tables[i];
+        for (int k = 0; k < pointCount; k++)
+          values[k] += table[plane[k] & 0xff];
+      }
+    }
+  }
+  
+  private class PlanePointIterator implements PointIterator {
+    private int k = -1;
+    
+    public boolean hasNext() {
+      return k + 1 < pointCount;
+    }
+    
+    public void next() {
+      k++;
+    }
+    
+    public double getCoordinate(int index) {
+      return planes[index][k] & 0xff;
+    }
+    
+    public int getWeight() {
+      return weights == null ? 1 : weights[k];
+    }
+    
+    public void nextPoints(int count, int ndims, double[] buffer, int offset, int[] pointWeights) {
+      for (int i = 0; i < ndims; i++) {
+        final byte[] plane = planes[i];
+        for (int p = 0, o = offset + i; p < count; p++, o += ndims)
+          buffer[o] = plane[k + 1 + p] & 0xff;
+      }
+      if (pointWeights != null) {
+        if (weights == null)
+          Arrays.fill(pointWeights, 0, count, 1);
+        else
+          System.arraycopy(weights, k + 1, pointWeights, 0, count);
+      }
+      k += count;
+    }
+  }
+}
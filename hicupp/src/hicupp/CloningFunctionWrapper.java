@@ -4,7 +4,7 @@ package hicupp;
  * Transforms a function into a function that is guaranteed not to
  * modify its arguments.
  */
-public class CloningFunctionWrapper implements Function {
+public class CloningFunctionWrapper implements DifferentiableFunction {
   private Function function;
   
   public CloningFunctionWrapper(Function function) {
@@ -18,4 +18,30 @@ public class CloningFunctionWrapper implements Function {
   public double evaluate(double[] arguments) {
     return function.evaluate((double[]) arguments.clone());
   }
+  
+  public void evaluate(double[][] argumentSets, double[] values) {
+    double[][] clones = new double[argumentSets.length][];
+    for (int s = 0; s < argumentSets.length; s++)
+      clones[s] = argumentSets[s].clone();
+    function.evaluate(clones, values);
+  }
+  
+  public boolean refine() {
+    return function.refine();
+  }
+  
+  public int getRefinementCount() {
+    return function.getRefinementCount();
+  }
+  
+  public boolean isGradientAvailable() {
+    return function instanceof DifferentiableFunction &&
+           ((DifferentiableFunction) function).isGradientAvailable();
+  }
+  
+  public double evaluate(double[] arguments, double[] gradient) {
+    if (!isGradientAvailable())
+      throw new RuntimeException("The gradient is not available.");
+    return ((DifferentiableFunction) function).evaluate(arguments.clone(), gradient);
+  }
 }
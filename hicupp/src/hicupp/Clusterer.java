@@ -23,13 +23,91 @@ public class Clusterer {
                                   Monitor monitor,
                                   AlgorithmParameters parameters)
       throws NoConvergenceException, CancellationException {
-    Function projectionIndexFunction = new ProjectionIndexFunction(projectionIndex,
-                                                                   points);
-    double[] arguments = FunctionMaximizer.maximize(projectionIndexFunction,
-                                                    algorithmIndex,
-                                                    monitor,
-                                                    parameters);
-    double[] axis = new double[points.getDimensionCount()];
+    return findAxis(projectionIndex, algorithmIndex, points, monitor, parameters, 1);
+  }
+
+  /**
+   * Returns the coordinates for the best projection axis for clustering
+   * <code>points</code>, found by running the algorithm from
+   * <code>restartCount</code> starts; see
+   * {@link FunctionMaximizer#maximizeWithRestarts}.
+   */
+  public static double[] findAxis(int projectionIndex,
+                                  int algorithmIndex,
+                                  SetOfPoints points,
+                                  Monitor monitor,
+                                  AlgorithmParameters parameters,
+                                  int restartCount)
+      throws NoConvergenceException, CancellationException {
+    return findAxis(createFunction(projectionIndex, points),
+                    algorithmIndex,
+                    monitor,
+                    parameters,
+                    restartCount);
+  }
+
+  /**
+   * Returns the projection index function that {@link #findAxis} maximizes.
+   * The density indices start on a coarse grid, which the algorithm refines
+   * once it nears convergence; see
+   * {@link ProjectionIndexFunction#setAutoRefining(boolean)}. The Mixed index
+   * starts each fit from the previous one, as successive axes of an algorithm
+   * are close together; see
+   * {@link ProjectionIndexFunction#setWarmStarting(boolean)}.
+   */
+  public static ProjectionIndexFunction createFunction(int projectionIndex, SetOfPoints points) {
+    ProjectionIndexFunction function = new ProjectionIndexFunction(projectionIndex, points);
+    function.setAutoRefining(true);
+    function.setWarmStarting(true);
+    return function;
+  }
+
+  /**
+   * Returns the coordinates for the best projection axis for clustering the
+   * points of <code>function</code>, which may have been configured beyond
+   * {@link #createFunction}, for example with a quadrature.
+   */
+  public static double[] findAxis(ProjectionIndexFunction function,
+                                  int algorithmIndex,
+                                  Monitor monitor,
+                                  AlgorithmParameters parameters,
+                                  int restartCount)
+      throws NoConvergenceException, CancellationException {
+    return searchAxis(function, algorithmIndex, monitor, parameters, false, restartCount).axis();
+  }
+
+  /**
+   * An axis found by {@link #searchAxis}.
+   * @param axis The coordinates of the axis.
+   * @param outcome The outcome of the maximization that found the axis, such
+   *                as the algorithm that won the portfolio's race.
+   */
+  public record AxisSearch(double[] axis, FunctionMaximizer.Outcome outcome) {
+  }
+
+  /**
+   * Finds the axis as {@link #findAxis(ProjectionIndexFunction, int, Monitor,
+   * AlgorithmParameters, int)}, also returning how it was found; see
+   * {@link FunctionMaximizer#maximizeWithOutcome}.
+   * @param memoizing Whether the algorithm remembers the values it evaluated;
+   *                  see {@link FunctionMaximizer#maximize(Function, int,
+   *                  Monitor, AlgorithmParameters, boolean)}.
+   */
+  public static AxisSearch searchAxis(ProjectionIndexFunction function,
+                                      int algorithmIndex,
+                                      Monitor monitor,
+                                      AlgorithmParameters parameters,
+                                      boolean memoizing,
+                                      int restartCount)
+      throws NoConvergenceException, CancellationException {
+    FunctionMaximizer.Outcome outcome = FunctionMaximizer.maximizeWithOutcome(function,
+                                                                              algorithmIndex,
+                                                                              monitor,
+                                                                              parameters,
+                                                                              memoizing,
+                                                                              restartCount);
+    double[] arguments = outcome.x();
+    double[] axis = new double[arguments.length + 1];
     double sumOfSquares = 0.0;
     for (int j = 0; j < arguments.length; j++) {
       double argument = arguments[j];
@@ -37,7 +115,7 @@ public class Clusterer {
       sumOfSquares += argument * argument;
     }
     axis[arguments.length] = sumOfSquares < 1.0 ? Math.sqrt(1.0 - sumOfSquares) : 0.0;
-    return axis;
+    return new AxisSearch(axis, outcome);
   }
 
   public static double[] findAxis(int projectionIndex,
@@ -55,24 +133,40 @@ public class Clusterer {
    * Returns the value that separates the two clusters in the given ordered list of points on a line.
    */
   public static double split(double[] list) {
+    return split(list, null);
+  }
+
+  /**
+   * Returns the value that separates the two clusters in the given ordered
+   * list of points on a line, each counting as many times as its weight in
+   * <code>weights</code>, if not <code>null</code>.
+   */
+  public static double split(double[] list, double[] weights) {
     
     final double PFACT2 = 1.0e-4;
     
     double sum = 0.0;
-    for (int i = 0; i < list.length; i++)
-      sum += list[i];
+    double count = 0.0;
+    for (int i = 0; i < list.length; i++) {
+      double weight = weights == null ? 1.0 : weights[i];
+      sum += weight * list[i];
+      count += weight;
+    }
     
     double cutoff = 0.0;
     double max = -1.0;
     double lsum = 0.0;
+    double lcount = 0.0;
     
     for (int l = 0; l < list.length - 1; l++) {
-      lsum += list[l];
+      double weight = weights == null ? 1.0 : weights[l];
+      lsum += weight * list[l];
+      lcount += weight;
       double test = (list[l] - list[l + 1]) / list[l];
       if (Math.abs(test) >= PFACT2) {
-        int r = list.length - l - 1;
+        double r = count - lcount;
         double rsum = sum - lsum;
-        double m = (lsum * lsum / (l + 1)) + (rsum * rsum / r);
+        double m = (lsum * lsum / lcount) + (rsum * rsum / r);
         if (m > max) {
           max = m;
           cutoff = list[l];
@@ -0,0 +1,18 @@
+package hicupp;
+
+/**
+ * Reports how far a binned density index value is from the exact one; see
+ * {@link ProjectionIndexFunction#compareDensityEstimation(double[])}.
+ * @param binningOversampling The number of bins per grid step that was used.
+ * @param exactIndex The index value computed with the exact density estimate.
+ * @param binnedIndex The index value computed with the binned density estimate.
+ * @param relativeDensityError The largest difference between the two density
+ *                             estimates on the grid, relative to the largest
+ *                             exact density.
+ */
+public record DensityEstimationAccuracy(int binningOversampling, double exactIndex, double binnedIndex,
+                                        double relativeDensityError) {
+  public double getRelativeIndexError() {
+    return Math.abs(binnedIndex - exactIndex) / Math.abs(exactIndex);
+  }
+}
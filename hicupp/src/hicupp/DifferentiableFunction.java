@@ -0,0 +1,20 @@
+package hicupp;
+
+/**
+ * A function that can compute its gradient together with its value, at
+ * about the cost of a few evaluations rather than one or two per argument.
+ */
+public interface DifferentiableFunction extends Function {
+  /**
+   * Returns whether {@link #evaluate(double[], double[])} can compute the
+   * gradient; this may depend on how the function is configured.
+   */
+  boolean isGradientAvailable();
+  
+  /**
+   * Evaluates this function at <code>arguments</code> and stores its gradient
+   * there into <code>gradient</code>.
+   * @exception RuntimeException If the gradient is not available.
+   */
+  double evaluate(double[] arguments, double[] gradient);
+}
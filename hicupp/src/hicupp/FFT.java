@@ -0,0 +1,75 @@
+package hicupp;
+
+/**
+ * Holds an in-place radix-2 fast Fourier transform.
+ */
+public class FFT {
+  /**
+   * Returns the smallest power of two that is not less than <code>n</code>.
+   */
+  public static int powerOfTwoAtLeast(int n) {
+    int size = 1;
+    while (size < n)
+      size <<= 1;
+    return size;
+  }
+
+  /**
+   * Replaces the first <code>n</code> elements of <code>re</code> and
+   * <code>im</code> by their discrete Fourier transform.
+   * <p>The inverse transform includes the factor <code>1 / n</code>.</p>
+   * @param n A power of two.
+   */
+  public static void transform(double[] re, double[] im, int n, boolean inverse) {
+    // Bit-reversal permutation.
+
+    for (int i = 1, j = 0; i < n; i++) {
+      int bit = n >> 1;
+      for (; (j & bit) != 0; bit >>= 1)
+        j ^= bit;
+      j ^= bit;
+      if (i < j) {
+        double t = re[i];
+        re[i] = re[j];
+        re[j] = t;
+        t = im[i];
+        im[i] = im[j];
+        im[j] = t;
+      }
+    }
+
+    // Butterflies.
+
+    for (int length = 2; length <= n; length <<= 1) {
+      double angle = (inverse ? 2 : -2) * Math.PI / length;
+      double wre = Math.cos(angle);
+      double wim = Math.sin(angle);
+      int half = length >> 1;
+      for (int i = 0; i < n; i += length) {
+        double ure = 1.0;
+        double uim = 0.0;
+        for (int j = 0; j < half; j++) {
+          int a = i + j;
+          int b = a + half;
+          double tre = re[b] * ure - im[b] * uim;
+          double tim = re[b] * uim + im[b] * ure;
+          re[b] = re[a] - tre;
+          im[b] = im[a] - tim;
+          re[a] += tre;
+          im[a] += tim;
+          double nre = ure * wre - uim * wim;
+          uim = ure * wim + uim * wre;
+          ure = nre;
+        }
+      }
+    }
+
+    if (inverse) {
+      double factor = 1.0 / n;
+      for (int i = 0; i < n; i++) {
+        re[i] *= factor;
+        im[i] *= factor;
+      }
+    }
+  }
+}
@@ -3,4 +3,36 @@ package hicupp;
 public interface Function {
   int getArgumentCount();
   double evaluate(double[] arguments);
+  
+  /**
+   * Evaluates this function at each of the argument sets, storing the value at
+   * <code>argumentSets[s]</code> into <code>values[s]</code>.
+   * <p>Implementations that can evaluate several argument sets faster together
+   * than one by one override this method.</p>
+   */
+  default void evaluate(double[][] argumentSets, double[] values) {
+    for (int s = 0; s < argumentSets.length; s++)
+      values[s] = evaluate(argumentSets[s]);
+  }
+  
+  /**
+   * Asks this function to switch to a more accurate, and more expensive,
+   * approximation, once an optimizer is near convergence. An optimizer that
+   * gets <code>true</code> re-evaluates its current arguments and continues.
+   * @return <code>true</code> if the values of this function changed.
+   */
+  default boolean refine() {
+    return false;
+  }
+  
+  /**
+   * Returns the number of times {@link #refine()} has changed the values of
+   * this function. Several optimizers may share one function, and only the
+   * one whose call refines it gets <code>true</code>; the others compare this
+   * count with the one they last saw before comparing values, and
+   * re-evaluate their current arguments if it changed.
+   */
+  default int getRefinementCount() {
+    return 0;
+  }
 }
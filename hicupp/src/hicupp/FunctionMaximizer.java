@@ -3,8 +3,13 @@ package hicupp;
 import hicupp.algorithms.*;
 import hicupp.algorithms.ga.*;
 import hicupp.algorithms.gd.GradientDescent;
+import hicupp.algorithms.portfolio.Portfolio;
 import hicupp.algorithms.sa.*;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * Holds a method for maximizing a function using the Simplex method of Nelder and Mead.
  */
@@ -15,25 +20,132 @@ public final class FunctionMaximizer {
     "Simplex",
     "Simulated annealing",
     "Genetic algorithm",
-    "Gradient ascent"
+    "Gradient ascent",
+    "Portfolio"
   };
 
   public static final int SIMPLEX_ALGORITHM_INDEX = 0;
   public static final int ANNEALING_ALGORITHM_INDEX = 1;
   public static final int GENETIC_ALGORITHM_INDEX = 2;
   public static final int GRADIENT_ALGORITHM_INDEX = 3;
+  /**
+   * Races the other algorithms concurrently and keeps the best maximum found;
+   * see {@link Portfolio}.
+   */
+  public static final int PORTFOLIO_ALGORITHM_INDEX = 4;
 
   public static String[] getAlgorithmNames() {
     return algorithmIndices;
   }
 
+  /**
+   * The outcome of {@link #maximizeWithOutcome}.
+   * @param x The arguments found.
+   * @param winnerIndex The index of the algorithm that found <code>x</code>:
+   *                    the algorithm asked for, or for the portfolio, the one
+   *                    that won the race, -1 if none of them converged; see
+   *                    {@link Portfolio.Result#winnerIndex()}.
+   * @param starts With more than one start, the maximum found by each start;
+   *               otherwise <code>null</code>.
+   */
+  public record Outcome(double[] x, int winnerIndex, MultiStart.Result starts) {
+  }
+
+  /**
+   * Maximizes the function without memoizing it.
+   */
   public static double[] maximize(Function function, int algorithmIndex, Monitor monitor, AlgorithmParameters parameters)
           throws NoConvergenceException, CancellationException {
+    return maximize(function, algorithmIndex, monitor, parameters, false);
+  }
+
+  /**
+   * Maximizes the function from one start.
+   * @param memoizing If <code>true</code>, the function is wrapped in a
+   *                  {@link MemoizingFunctionWrapper}, so that the algorithm
+   *                  does not evaluate it twice at the same arguments, and the
+   *                  cache's hits and misses are reported to the
+   *                  <code>monitor</code> once the algorithm finishes.
+   */
+  public static double[] maximize(Function function, int algorithmIndex, Monitor monitor, AlgorithmParameters parameters,
+                                  boolean memoizing)
+          throws NoConvergenceException, CancellationException {
+    return maximize(function, algorithmIndex, monitor, parameters, memoizing, 1);
+  }
+
+  /**
+   * @param restartCount The number of starts from which to run the algorithm;
+   *                     with more than one, {@link #maximizeWithRestarts} is
+   *                     called.
+   */
+  public static double[] maximize(Function function, int algorithmIndex, Monitor monitor, AlgorithmParameters parameters,
+                                  boolean memoizing, int restartCount)
+          throws NoConvergenceException, CancellationException {
+    return maximizeWithOutcome(function, algorithmIndex, monitor, parameters, memoizing, restartCount).x();
+  }
+
+  /**
+   * Maximizes the function as {@link #maximize(Function, int, Monitor,
+   * AlgorithmParameters, boolean, int)}, also returning which algorithm found
+   * the maximum, and with more than one start, the maximum of each start; see
+   * {@link #maximizeWithRestarts}. The winner is then that of the best start.
+   */
+  public static Outcome maximizeWithOutcome(Function function, int algorithmIndex, Monitor monitor,
+                                            AlgorithmParameters parameters, boolean memoizing, int restartCount)
+          throws NoConvergenceException, CancellationException {
+    if (restartCount < 1)
+      throw new IllegalArgumentException("The restart count must be positive.");
+    final MemoizingFunctionWrapper memo = memoizing ? new MemoizingFunctionWrapper(function) : null;
+    final Function target = memo != null ? memo : function;
+    final Outcome outcome;
+    if (restartCount > 1) {
+      
+      // MultiStart returns the arguments array of the best start itself, so
+      // its winner is looked up by identity.
+      
+      final Map<double[], Integer> winners = Collections.synchronizedMap(new IdentityHashMap<>());
+      final MultiStart.Result result = MultiStart.maximize(target, (f, m) -> {
+        final Outcome start = run(f, algorithmIndex, m, parameters);
+        winners.put(start.x(), start.winnerIndex());
+        return start.x();
+      }, monitor, restartCount);
+      outcome = new Outcome(result.x(), winners.get(result.x()), result);
+    } else
+      outcome = run(target, algorithmIndex, monitor, parameters);
+    if (memo != null && monitor != null)
+      monitor.writeLine(memo.toString());
+    return outcome;
+  }
+
+  /**
+   * Runs the algorithm concurrently from <code>restartCount</code> starting
+   * arguments spread evenly over the axes, and keeps the best maximum found;
+   * see {@link MultiStart}. If memoizing, the starts share one cache.
+   */
+  public static MultiStart.Result maximizeWithRestarts(Function function, int algorithmIndex, Monitor monitor,
+                                                       AlgorithmParameters parameters, boolean memoizing,
+                                                       int restartCount)
+          throws NoConvergenceException, CancellationException {
+    final MemoizingFunctionWrapper memo = memoizing ? new MemoizingFunctionWrapper(function) : null;
+    final Function target = memo != null ? memo : function;
+    final MultiStart.Result result = MultiStart.maximize(target,
+        (f, m) -> run(f, algorithmIndex, m, parameters).x(), monitor, restartCount);
+    if (memo != null && monitor != null)
+      monitor.writeLine(memo.toString());
+    return result;
+  }
+
+  private static Outcome run(Function target, int algorithmIndex, Monitor monitor, AlgorithmParameters parameters)
+          throws NoConvergenceException, CancellationException {
     return switch (algorithmIndex) {
-      case 1 -> SimulatedAnnealing.maximize(function, monitor, parameters);
-      case 2 -> GeneticAlgorithm.maximize(function, monitor, parameters);
-      case 3 -> GradientDescent.maximize(function, monitor, parameters);
-      default -> Simplex.maximize(function, monitor);
+      case 1 -> new Outcome(SimulatedAnnealing.maximize(target, monitor, parameters), algorithmIndex, null);
+      case 2 -> new Outcome(GeneticAlgorithm.maximize(target, monitor, parameters), algorithmIndex, null);
+      case 3 -> new Outcome(GradientDescent.maximize(target, monitor, parameters), algorithmIndex, null);
+      case 4 -> {
+        final Portfolio.Result result = Portfolio.race(target, monitor, parameters);
+        yield new Outcome(result.x(), result.winnerIndex(), null);
+      }
+      default -> new Outcome(Simplex.maximize(target, monitor), SIMPLEX_ALGORITHM_INDEX, null);
     };
   }
 }
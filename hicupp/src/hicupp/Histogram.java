@@ -10,9 +10,24 @@ public class Histogram {
    * Assumes that <code>list</code> is sorted.
    */
   public Histogram(double[] list) {
+    this(list, null);
+  }
+  
+  /**
+   * Assumes that <code>list</code> is sorted; each value counts as many times
+   * as its weight in <code>weights</code>, if not <code>null</code>.
+   */
+  public Histogram(double[] list, double[] weights) {
+    int count = list.length;
+    if (weights != null) {
+      double totalWeight = 0.0;
+      for (int j = 0; j < list.length; j++)
+        totalWeight += weights[j];
+      count = (int) totalWeight;
+    }
     int nslots;
-    if (list.length < 500)
-      nslots = list.length < 10 ? 1 : list.length / 10;
+    if (count < 500)
+      nslots = count < 10 ? 1 : count / 10;
     else
       nslots = 50;
     min = list[0];
@@ -28,7 +43,7 @@ public class Histogram {
       for (int j = 0; j < list.length; j++) {
         double value = list[j];
         if (value >= bottom && value < top)
-          freq++;
+          freq += weights == null ? 1 : (int) weights[j];
       }
       if (freq > maxfreq)
         maxfreq = freq;
@@ -2,11 +2,30 @@ package hicupp;
 
 import Jama.*;
 
+import java.util.Arrays;
+
 public class MatrixSetOfPoints implements SetOfPoints {
   private Matrix matrix;
+  private final int[] weights;
   
   public MatrixSetOfPoints(Matrix matrix) {
+    this(matrix, null);
+  }
+  
+  /**
+   * @param weights The number of times each row occurs, or <code>null</code>
+   *                if each occurs once; see {@link SetOfPoints#isWeighted()}.
+   */
+  public MatrixSetOfPoints(Matrix matrix, int[] weights) {
+    if (weights != null) {
+      if (weights.length != matrix.getRowDimension())
+        throw new IllegalArgumentException("There must be a weight for each point.");
+      for (int weight : weights)
+        if (weight <= 0)
+          throw new IllegalArgumentException("The weights must be positive.");
+    }
     this.matrix = matrix;
+    this.weights = weights;
   }
   
   public int getDimensionCount() {
@@ -17,15 +36,31 @@ public class MatrixSetOfPoints implements SetOfPoints {
     return matrix.getRowDimension();
   }
   
+  public boolean isWeighted() {
+    return weights != null;
+  }
+  
   public PointIterator createIterator() {
     return new MatrixPointIterator();
   }
   
+  public void project(double[] axis, double[] values) {
+    double[][] rows = matrix.getArray();
+    int ndims = matrix.getColumnDimension();
+    for (int k = 0; k < rows.length; k++) {
+      double[] row = rows[k];
+      double value = 0.0;
+      for (int i = 0; i < ndims; i++)
+        value += row[i] * axis[i];
+      values[k] = value;
+    }
+  }
+  
   private class MatrixPointIterator implements PointIterator {
     private int row = -1;
     
     public boolean hasNext() {
-      return row < matrix.getRowDimension();
+      return row + 1 < matrix.getRowDimension();
     }
     
     public void next() {
@@ -35,5 +70,21 @@ public class MatrixSetOfPoints implements SetOfPoints {
     public double getCoordinate(int index) {
       return matrix.get(row, index);
     }
+    
+    public int getWeight() {
+      return weights == null ? 1 : weights[row];
+    }
+    
+    public void nextPoints(int count, int ndims, double[] buffer, int offset, int[] pointWeights) {
+      double[][] rows = matrix.getArray();
+      if (pointWeights != null) {
+        if (weights == null)
+          Arrays.fill(pointWeights, 0, count, 1);
+        else
+          System.arraycopy(weights, row + 1, pointWeights, 0, count);
+      }
+      for (int k = 0; k < count; k++, offset += ndims)
+        System.arraycopy(rows[++row], 0, buffer, offset, ndims);
+    }
   }
 }
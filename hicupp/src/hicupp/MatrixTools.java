@@ -4,6 +4,15 @@ import Jama.*;
 
 public class MatrixTools {
   public static Matrix computeVariance(Matrix matrix) {
+    return computeVariance(matrix, null);
+  }
+  
+  /**
+   * Returns the sums of the products of the columns of <code>matrix</code>,
+   * each row counted as many times as its weight, or once if
+   * <code>weights</code> is <code>null</code>.
+   */
+  public static Matrix computeVariance(Matrix matrix, double[] weights) {
     int npoints = matrix.getRowDimension();
     int ndims = matrix.getColumnDimension();
     double[][] array = matrix.getArray();
@@ -12,18 +21,45 @@ public class MatrixTools {
     for (int i = 0; i < ndims; i++)
       for (int j = 0; j < ndims; j++) {
         double sum = 0.0;
-        for (int k = 0; k < npoints; k++)
-          sum += array[k][i] * array[k][j];
+        if (weights == null)
+          for (int k = 0; k < npoints; k++)
+            sum += array[k][i] * array[k][j];
+        else
+          for (int k = 0; k < npoints; k++)
+            sum += weights[k] * array[k][i] * array[k][j];
         variance[i][j] = sum;
       }
     return varianceMatrix;
   }
   
   public static double[] computeCenter(Matrix matrix) {
-    double[] center = sumOfRows(matrix);
-    int npoints = matrix.getRowDimension();
+    return computeCenter(matrix, null);
+  }
+  
+  /**
+   * Returns the mean of the rows of <code>matrix</code>, each counted as many
+   * times as its weight, or once if <code>weights</code> is <code>null</code>.
+   */
+  public static double[] computeCenter(Matrix matrix, double[] weights) {
+    double[][] array = matrix.getArray();
+    int npoints = array.length;
+    double[] center;
+    double total;
+    if (weights == null) {
+      center = sumOfRows(matrix);
+      total = npoints;
+    } else {
+      center = new double[matrix.getColumnDimension()];
+      total = 0.0;
+      for (int k = 0; k < npoints; k++) {
+        double[] row = array[k];
+        for (int j = 0; j < center.length; j++)
+          center[j] += weights[k] * row[j];
+        total += weights[k];
+      }
+    }
     for (int i = 0; i < center.length; i++)
-      center[i] /= npoints;
+      center[i] /= total;
     return center;
   }
   
@@ -59,12 +95,21 @@ public class MatrixTools {
     int ndims = points.getDimensionCount();
     
     double[][] array = new double[npoints][ndims];
-    PointIterator iter = points.createIterator();
-    for (int i = 0; i < npoints; i++) {
-      iter.next();
-      double[] row = array[i];
-      for (int j = 0; j < ndims; j++)
-        row[j] = iter.getCoordinate(j);
+    double[] coordinates = points.getCoordinateArray();
+    if (coordinates != null) {
+      int stride = points.getCoordinateStride();
+      for (int i = 0; i < npoints; i++)
+        System.arraycopy(coordinates, i * stride, array[i], 0, ndims);
+    } else {
+      final int B = PointBlocks.BLOCK_SIZE;
+      double[] buffer = new double[B * ndims];
+      PointIterator iter = points.createIterator();
+      for (int first = 0; first < npoints; first += B) {
+        int count = Math.min(B, npoints - first);
+        iter.nextPoints(count, ndims, buffer, 0, null);
+        for (int k = 0; k < count; k++)
+          System.arraycopy(buffer, k * ndims, array[first + k], 0, ndims);
+      }
     }
     
     return new Matrix(array, npoints, ndims);
@@ -0,0 +1,200 @@
+package hicupp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transforms a function into a function that remembers the values it most
+ * recently computed, so that evaluating it again at the same arguments is
+ * free.
+ * <p>Arguments are rounded to a multiple of the <i>quantum</i> before they
+ * are looked up, so that arguments that differ only by rounding error share
+ * a value. When the cache is full, the least recently used value is
+ * forgotten. Arguments that are not finite are never cached.</p>
+ * <p>Instances may be used by several threads at once.</p>
+ */
+public class MemoizingFunctionWrapper implements DifferentiableFunction {
+  public static final int DEFAULT_CAPACITY = 4096;
+  public static final double DEFAULT_QUANTUM = 1e-12;
+  
+  private final Function function;
+  private final double quantum;
+  private final Map<Key, Double> cache;
+  private int refinementCount;
+  private long hitCount;
+  private long missCount;
+  
+  public MemoizingFunctionWrapper(Function function) {
+    this(function, DEFAULT_CAPACITY, DEFAULT_QUANTUM);
+  }
+  
+  public MemoizingFunctionWrapper(Function function, final int capacity, double quantum) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive.");
+    if (!(quantum > 0))
+      throw new IllegalArgumentException("quantum must be positive.");
+    this.function = function;
+    this.quantum = quantum;
+    refinementCount = function.getRefinementCount();
+    cache = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+  
+  public int getArgumentCount() {
+    return function.getArgumentCount();
+  }
+  
+  public double evaluate(double[] arguments) {
+    Key key = createKey(arguments);
+    if (key != null) {
+      Double value = lookUp(key);
+      if (value != null)
+        return value;
+    }
+    int refinementCount = function.getRefinementCount();
+    double value = function.evaluate(arguments);
+    store(key, value, refinementCount);
+    return value;
+  }
+  
+  /**
+   * Evaluates the function at the argument sets whose values are not cached,
+   * as one batch.
+   */
+  public void evaluate(double[][] argumentSets, double[] values) {
+    Key[] keys = new Key[argumentSets.length];
+    int[] misses = new int[argumentSets.length];
+    int missCount = 0;
+    for (int s = 0; s < argumentSets.length; s++) {
+      keys[s] = createKey(argumentSets[s]);
+      Double value = keys[s] == null ? null : lookUp(keys[s]);
+      if (value != null)
+        values[s] = value;
+      else
+        misses[missCount++] = s;
+    }
+    if (missCount == 0)
+      return;
+    
+    double[][] missingSets = new double[missCount][];
+    for (int i = 0; i < missCount; i++)
+      missingSets[i] = argumentSets[misses[i]];
+    double[] missingValues = new double[missCount];
+    int refinementCount = function.getRefinementCount();
+    function.evaluate(missingSets, missingValues);
+    for (int i = 0; i < missCount; i++) {
+      values[misses[i]] = missingValues[i];
+      store(keys[misses[i]], missingValues[i], refinementCount);
+    }
+  }
+  
+  /**
+   * Refines the function, forgetting the cached values if they changed.
+   */
+  public boolean refine() {
+    boolean refined = function.refine();
+    if (refined)
+      clear();
+    return refined;
+  }
+  
+  public int getRefinementCount() {
+    return function.getRefinementCount();
+  }
+  
+  public boolean isGradientAvailable() {
+    return function instanceof DifferentiableFunction &&
+           ((DifferentiableFunction) function).isGradientAvailable();
+  }
+  
+  /**
+   * Evaluates the function and its gradient. Gradients are not cached, but
+   * the value is.
+   */
+  public double evaluate(double[] arguments, double[] gradient) {
+    if (!isGradientAvailable())
+      throw new RuntimeException("The gradient is not available.");
+    int refinementCount = function.getRefinementCount();
+    double value = ((DifferentiableFunction) function).evaluate(arguments, gradient);
+    store(createKey(arguments), value, refinementCount);
+    return value;
+  }
+  
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+  
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+  
+  public synchronized void clear() {
+    cache.clear();
+  }
+  
+  public synchronized String toString() {
+    return "(cache hits = " + hitCount + ") (cache misses = " + missCount + ")";
+  }
+  
+  /**
+   * Looks up a value, first forgetting the cached values if the function has
+   * been refined through another wrapper.
+   */
+  private synchronized Double lookUp(Key key) {
+    if (refinementCount != function.getRefinementCount()) {
+      refinementCount = function.getRefinementCount();
+      cache.clear();
+    }
+    Double value = cache.get(key);
+    if (value != null)
+      hitCount++;
+    else
+      missCount++;
+    return value;
+  }
+  
+  /**
+   * Caches a value, unless the function has been refined since it started to
+   * compute it, when it had been refined <code>refinementCount</code> times.
+   */
+  private synchronized void store(Key key, double value, int refinementCount) {
+    if (key != null && refinementCount == function.getRefinementCount())
+      cache.put(key, value);
+  }
+  
+  /**
+   * @return <code>null</code> if some argument is not finite.
+   */
+  private Key createKey(double[] arguments) {
+    long[] quanta = new long[arguments.length];
+    for (int i = 0; i < arguments.length; i++) {
+      double argument = arguments[i];
+      if (!Double.isFinite(argument))
+        return null;
+      quanta[i] = Math.round(argument / quantum);
+    }
+    return new Key(quanta);
+  }
+  
+  private static final class Key {
+    private final long[] quanta;
+    private final int hashCode;
+    
+    Key(long[] quanta) {
+      this.quanta = quanta;
+      hashCode = Arrays.hashCode(quanta);
+    }
+    
+    public boolean equals(Object object) {
+      return object instanceof Key && Arrays.equals(quanta, ((Key) object).quanta);
+    }
+    
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -1,136 +1,278 @@
 package hicupp;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A mixture of univariate normal distributions fitted to a list of values by
+ * the EM algorithm, starting from random posterior probabilities.
+ * <p>Each iteration makes a single pass over the values: it computes the log
+ * densities of the components, adds their expected log likelihood to the AIC,
+ * updates the posterior probabilities with the log-sum-exp rule and
+ * accumulates the sums for the next iteration's estimates. The posterior
+ * probabilities are kept in one flat array, the probability of component
+ * <code>j</code> for value <code>i</code> being at index
+ * <code>i * mixcomp + j</code>. Weighted values count as many times as their
+ * weights in the likelihood, the estimates and the certainty.</p>
+ * <p>The random starts are drawn from streams split off a generator seeded
+ * with the given seed, {@link #DEFAULT_SEED} if none is given, so fitting the
+ * same values with the same seed always gives the same model, bit for bit.</p>
+ */
 public class MixedModel
 {
 	public double[] values;
+	/** The weights of the values, or <code>null</code> if they are unweighted. */
+	public double[] weights;
 	public int mixcomp;
-	public double[][] postprobcons;
+	public double[] postprobcons;
 	public double[] mixprob;
 	public double[] mugg;
 	public double[] covgg;
 	public double aic;
 	public double certainty;
+	public int iterations;
 
 	private static final double criter = 0.001f;
 	private static final int iter = 500;
 	private static final int pp = 1;
-	
+
+	/**
+	 * The smallest variance of a component, relative to the values' unit
+	 * variance, so that no component collapses onto a single value.
+	 */
+	private static final double varianceFloor = 1e-6;
+
+	public static final long DEFAULT_SEED = 20240229L;
+
 	public MixedModel(int mixcomp, double[] values) {
+		this(mixcomp, values, DEFAULT_SEED);
+	}
+
+	public MixedModel(int mixcomp, double[] values, long seed) {
+		this(mixcomp, values, null, new double[values.length * mixcomp], new SplittableRandom(seed));
+	}
+
+	/**
+	 * @param weights The weights of the values, or <code>null</code> if they
+	 *                are unweighted.
+	 * @param postprobcons Receives the posterior probabilities; at least
+	 *                     <code>values.length * mixcomp</code> long.
+	 * @param random Draws the random starting posterior probabilities.
+	 */
+	MixedModel(int mixcomp, double[] values, double[] weights, double[] postprobcons, SplittableRandom random) {
 		this.values = values;
+		this.weights = weights;
 		this.mixcomp = mixcomp;
-		
-		postprobcons = new double[values.length][mixcomp];
-		for (int i = 0; i < values.length; i++) {
-			double sum = 0f;
-			double[] postprobcons_i = postprobcons[i];
-			for (int j = 0; j < mixcomp; j++) {
-				double x = Math.random();
-				postprobcons_i[j] = x;
-				sum += x;
-			}
-			for (int j = 0; j < mixcomp; j++)
-				postprobcons_i[j] /= sum;
-		}
+		this.postprobcons = postprobcons;
 		mixprob = new double[mixcomp];
 		mugg = new double[mixcomp];
 		covgg = new double[mixcomp];
-		double[][] densitygg = new double[values.length][mixcomp];
-		
-		double oldaic = 0;
-		
-		for (int k = 1; k <= iter; k++) {
+
+		final int n = values.length;
+		final double[] sum0 = new double[mixcomp];
+		final double[] sum1 = new double[mixcomp];
+		final double[] sum2 = new double[mixcomp];
+
+		for (int i = 0, ij = 0; i < n; i++) {
+			double sum = 0;
 			for (int j = 0; j < mixcomp; j++) {
-				double sum = 0;
-				for (int i = 0; i < values.length; i++)
-					sum += postprobcons[i][j];
-				sum /= values.length;
-				mixprob[j] = sum;
+				double x = random.nextDouble();
+				postprobcons[ij + j] = x;
+				sum += x;
 			}
-					
-			for (int j = 0; j < mixcomp; j++) {
-				double sum = 0;
-				for (int i = 0; i < values.length; i++) {
-					sum += values[i] * postprobcons[i][j];
-				}
-				sum /= values.length * mixprob[j];
-				mugg[j] = sum;
+			final double value = values[i];
+			final double w = weights == null ? 1 : weights[i];
+			for (int j = 0; j < mixcomp; j++, ij++) {
+				double p = postprobcons[ij] / sum;
+				postprobcons[ij] = p;
+				p *= w;
+				sum0[j] += p;
+				sum1[j] += p * value;
+				sum2[j] += p * value * value;
 			}
-					
+		}
+
+		optimize(sum0, sum1, sum2);
+	}
+
+	/**
+	 * Fits a model starting from the given components instead of from random
+	 * posterior probabilities, which takes few iterations if they are close to
+	 * the fit.
+	 * @param postprobcons Receives the posterior probabilities; at least
+	 *                     <code>values.length * mixprob.length</code> long.
+	 */
+	MixedModel(double[] values, double[] weights, double[] postprobcons, double[] mixprob, double[] mugg, double[] covgg) {
+		this.values = values;
+		this.weights = weights;
+		this.mixcomp = mixprob.length;
+		this.postprobcons = postprobcons;
+		this.mixprob = new double[mixcomp];
+		this.mugg = new double[mixcomp];
+		this.covgg = new double[mixcomp];
+
+		// Set the sums so that the first iteration estimates the given components.
+		// The first iteration's AIC is never compared, so the posterior
+		// probabilities it uses need only be valid.
+
+		final int n = values.length;
+		final double totalWeight = getTotalWeight();
+		final double[] sum0 = new double[mixcomp];
+		final double[] sum1 = new double[mixcomp];
+		final double[] sum2 = new double[mixcomp];
+		for (int j = 0; j < mixcomp; j++) {
+			sum0[j] = mixprob[j] * totalWeight;
+			sum1[j] = mugg[j] * sum0[j];
+			sum2[j] = (covgg[j] + mugg[j] * mugg[j]) * sum0[j];
+		}
+		for (int ij = 0; ij < n * mixcomp; ij++)
+			postprobcons[ij] = 1.0 / mixcomp;
+
+		optimize(sum0, sum1, sum2);
+	}
+
+	/**
+	 * Returns the sum of the weights of the values, which is their number if
+	 * they are unweighted.
+	 */
+	private double getTotalWeight() {
+		if (weights == null)
+			return values.length;
+		double sum = 0;
+		for (int i = 0; i < values.length; i++)
+			sum += weights[i];
+		return sum;
+	}
+
+	private void optimize(double[] sum0, double[] sum1, double[] sum2) {
+		final int n = values.length;
+		final double totalWeight = getTotalWeight();
+		final double[] logweight = new double[mixcomp];
+		final double[] factor = new double[mixcomp];
+		final double[] logdensity = new double[mixcomp];
+		final double log2pi = Math.log(2 * Math.PI);
+		final int parameterCount = mixcomp + mixcomp - 1 + (mixcomp * (pp + (pp * (pp - 1) / 2)));
+
+		double oldaic = 0;
+
+		for (int k = 1; k <= iter; k++) {
+			iterations = k;
+
+			// Estimate the components from the sums of the posterior probabilities.
+
 			for (int j = 0; j < mixcomp; j++) {
-				double sum = 0;
-				for (int i = 0; i < values.length; i++) {
-					double facmin = values[i] - mugg[j];
-					sum += postprobcons[i][j] * facmin * facmin;
+				mixprob[j] = sum0[j] / totalWeight;
+				if (sum0[j] > 0) {
+					mugg[j] = sum1[j] / sum0[j];
+					covgg[j] = Math.max(varianceFloor, sum2[j] / sum0[j] - mugg[j] * mugg[j]);
 				}
-				sum /= values.length * mixprob[j];
-				covgg[j] = sum;
+				logweight[j] = Math.log(mixprob[j]) - (log2pi + Math.log(covgg[j])) / 2;
+				factor[j] = -0.5 / covgg[j];
+				sum0[j] = 0;
+				sum1[j] = 0;
+				sum2[j] = 0;
 			}
 
-			double sqrt2pi = Math.sqrt(2 * Math.PI);
-			for (int i = 0; i < values.length; i++) {
-				double[] densitygg_i = densitygg[i];
-				for (int j = 0; j < mixcomp; j++) {
-					double delta = values[i] - mugg[j];
-					densitygg_i[j] = Math.exp(-delta * delta / 2 / covgg[j]) / sqrt2pi / Math.sqrt(covgg[j]);
-				}
-			}
-					
+			// Fused pass: expected log likelihood under the old posterior
+			// probabilities, new posterior probabilities, and their sums.
+
 			double loglik = 0;
-			for (int j = 0; j < mixcomp; j++) {
-				double x = Math.log(mixprob[j]);
-				if (!Double.isInfinite(x)) {
-					for (int i = 0; i < values.length; i++) {
-						double logdensity = Math.log(densitygg[i][j]);
-						if (!Double.isInfinite(logdensity)) {
-							loglik += postprobcons[i][j] * (x + logdensity);
-						}
+			for (int i = 0, ij = 0; i < n; i++, ij += mixcomp) {
+				final double value = values[i];
+				final double w = weights == null ? 1 : weights[i];
+				double max = Double.NEGATIVE_INFINITY;
+				int jmax = 0;
+				for (int j = 0; j < mixcomp; j++) {
+					double delta = value - mugg[j];
+					double l = logweight[j] + factor[j] * delta * delta;
+					logdensity[j] = l;
+					if (postprobcons[ij + j] > 0)
+						loglik += w * postprobcons[ij + j] * l;
+					if (l > max) {
+						max = l;
+						jmax = j;
 					}
 				}
-			}
-
-			aic = -2 * loglik + 2 * (mixcomp + mixcomp - 1 + (mixcomp * (pp + (pp * (pp - 1) / 2))));
-
-			for (int i = 0; i < values.length; i++) {
 				double sum = 0;
-				double[] densitygg_i = densitygg[i];
-				for (int j = 0; j < mixcomp; j++)
-					sum += densitygg_i[j];
-				double[] postprobcons_i = postprobcons[i];
-				for (int j = 0; j < mixcomp; j++)
-					postprobcons_i[j] = densitygg_i[j] / sum;
+				for (int j = 0; j < mixcomp; j++) {
+					double p = j == jmax ? 1 : Math.exp(logdensity[j] - max);
+					logdensity[j] = p;
+					sum += p;
+				}
+				for (int j = 0; j < mixcomp; j++) {
+					double p = logdensity[j] / sum;
+					postprobcons[ij + j] = p;
+					p *= w;
+					sum0[j] += p;
+					sum1[j] += p * value;
+					sum2[j] += p * value * value;
+				}
 			}
 
+			aic = -2 * loglik + 2 * parameterCount;
+
 			if (k > 1 && Math.abs(aic - oldaic) < criter)
 				break;
 
 			oldaic = aic;
-			
-			dump();
 		}
-		
-		for (int i = 0; i < values.length; i++) {
+
+		certainty = 0;
+		for (int i = 0, ij = 0; i < n; i++) {
 			double max = 0;
-			double[] postprobcons_i = postprobcons[i];
-			for (int j = 0; j < mixcomp; j++)
-				if (postprobcons_i[j] > max)
-					max = postprobcons_i[j];
-			certainty += max;
-		}
-	}
-	
-	public void dump() {
-		System.out.println("certainty: " + certainty);
-		for (int j = 0; j < mixcomp; j++) {
-			System.out.println("Component " + j + ": mixprob = " + mixprob[j] + "; mean = " + mugg[j] + "; variance = " + covgg[j]);
+			for (int j = 0; j < mixcomp; j++, ij++)
+				if (postprobcons[ij] > max)
+					max = postprobcons[ij];
+			certainty += weights == null ? max : weights[i] * max;
 		}
-		System.out.println();
 	}
-	
+
+	/**
+	 * Fits <code>n</code> models from different random starts and returns the
+	 * one with the lowest AIC, or of those the first.
+	 * <p>The models are fitted concurrently, as fork/join tasks in the common
+	 * pool (or the current pool, if called from one). Restart <code>i</code>
+	 * always uses the <code>i</code>th stream split off {@link #DEFAULT_SEED},
+	 * so the result does not depend on the number of threads.</p>
+	 */
 	public static MixedModel iterate(int mixcomp, double[] values, int n) {
-		MixedModel best = new MixedModel(mixcomp, values);
-		for (int i = 1; i < n; i++) {
-			MixedModel model = new MixedModel(mixcomp, values);
-			if (model.aic < best.aic)
+		return iterate(mixcomp, values, null, n, DEFAULT_SEED, new double[n][]);
+	}
+
+	/**
+	 * Fits models to weighted values as {@link #iterate(int, double[], int)},
+	 * from streams split off the given seed.
+	 * @param weights The weights of the values, or <code>null</code> if they
+	 *                are unweighted.
+	 */
+	public static MixedModel iterate(int mixcomp, double[] values, double[] weights, int n, long seed) {
+		return iterate(mixcomp, values, weights, n, seed, new double[n][]);
+	}
+
+	/**
+	 * @param buffers Holds the posterior probability array for each restart;
+	 *                missing or too short arrays are replaced by new ones.
+	 */
+	static MixedModel iterate(final int mixcomp, final double[] values, final double[] weights, int n, long seed,
+	                          double[][] buffers) {
+		final SplittableRandom root = new SplittableRandom(seed);
+		final List<ForkJoinTask<MixedModel>> tasks = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			final SplittableRandom random = root.split();
+			if (buffers[i] == null || buffers[i].length < values.length * mixcomp)
+				buffers[i] = new double[values.length * mixcomp];
+			final double[] buffer = buffers[i];
+			tasks.add(ForkJoinTask.adapt(() -> new MixedModel(mixcomp, values, weights, buffer, random)));
+		}
+
+		ForkJoinTask.invokeAll(tasks);
+
+		MixedModel best = null;
+		for (ForkJoinTask<MixedModel> task : tasks) {
+			MixedModel model = task.join();
+			if (best == null || model.aic < best.aic)
 				best = model;
 		}
 		return best;
@@ -0,0 +1,216 @@
+package hicupp;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The moments of orders one to four of a set of points about a fixed shift,
+ * stored as symmetric tensors, from which the central moments of the
+ * projection of the points onto any axis follow in O(d<sup>4</sup>) time,
+ * whatever the number of points.
+ * <p>Only the entries with indices <code>i &lt;= j &lt;= k &lt;= l</code> are
+ * stored, in lexicographic order, premultiplied by the number of distinct
+ * permutations of their indices and divided by the number of points, or for
+ * weighted points, weighted and divided by the total weight. The
+ * shift, the mean of the first block of points, keeps the conversion from raw
+ * to central moments accurate.</p>
+ * <p>The tensors are built in one pass over the points, in parallel. The
+ * points are split into chunks of a fixed size, whose sums are added in order,
+ * so the tensors do not depend on the number of threads.</p>
+ */
+final class MomentTensors {
+  private static final int CHUNK_BLOCK_COUNT = 64;
+
+  private final int dimensionCount;
+  private final double[] shift;
+  private final double[] moments1;
+  private final double[] moments2;
+  private final double[] moments3;
+  private final double[] moments4;
+
+  /**
+   * Returns the number of entries stored for a symmetric tensor of the given
+   * order in the given number of dimensions.
+   */
+  static int getSize(int dimensionCount, int order) {
+    long size = 1;
+    for (int i = 1; i <= order; i++)
+      size = size * (dimensionCount + i - 1) / i;
+    return (int) size;
+  }
+
+  /**
+   * Returns the number of entries of all four tensors, which is about the
+   * number of multiply-adds per point to build them, and to project them.
+   */
+  static int getTotalSize(int dimensionCount) {
+    int size = 0;
+    for (int order = 1; order <= 4; order++)
+      size += getSize(dimensionCount, order);
+    return size;
+  }
+
+  MomentTensors(final PointBlocks blocks) {
+    final int d = blocks.getDimensionCount();
+    final int n = blocks.getPointCount();
+    dimensionCount = d;
+
+    final double[] coordinates = blocks.getCoordinates();
+    final double[] weights = blocks.getWeights();
+    final int B = PointBlocks.BLOCK_SIZE;
+
+    shift = new double[d];
+    final int firstCount = Math.min(B, n);
+    for (int i = 0; i < d; i++) {
+      double sum = 0.0;
+      for (int k = 0; k < firstCount; k++)
+        sum += coordinates[i * B + k];
+      shift[i] = firstCount == 0 ? 0.0 : sum / firstCount;
+    }
+
+    final int blockCount = (n + B - 1) / B;
+    final int chunkCount = (blockCount + CHUNK_BLOCK_COUNT - 1) / CHUNK_BLOCK_COUNT;
+    final List<double[][]> chunkSums = IntStream.range(0, chunkCount).parallel().mapToObj(chunk -> {
+      final double[][] sums = {
+        new double[getSize(d, 1)],
+        new double[getSize(d, 2)],
+        new double[getSize(d, 3)],
+        new double[getSize(d, 4)]
+      };
+      final int firstBlock = chunk * CHUNK_BLOCK_COUNT;
+      final int lastBlock = Math.min(blockCount, firstBlock + CHUNK_BLOCK_COUNT);
+      for (int block = firstBlock; block < lastBlock; block++)
+        accumulate(coordinates, weights, block * B, Math.min(B, n - block * B), sums);
+      return sums;
+    }).toList();
+
+    moments1 = new double[getSize(d, 1)];
+    moments2 = new double[getSize(d, 2)];
+    moments3 = new double[getSize(d, 3)];
+    moments4 = new double[getSize(d, 4)];
+    for (double[][] sums : chunkSums) {
+      add(moments1, sums[0]);
+      add(moments2, sums[1]);
+      add(moments3, sums[2]);
+      add(moments4, sums[3]);
+    }
+    scale(blocks.getTotalWeight());
+  }
+
+  /**
+   * Adds the products of the shifted coordinates of the points of one block,
+   * starting at point <code>first</code>, times their weights if any, to
+   * <code>sums</code>.
+   */
+  private void accumulate(double[] coordinates, double[] weights, int first, int count, double[][] sums) {
+    final int d = dimensionCount;
+    final int B = PointBlocks.BLOCK_SIZE;
+    final int offset = first * d;
+    final double[] sum1 = sums[0];
+    final double[] sum2 = sums[1];
+    final double[] sum3 = sums[2];
+    final double[] sum4 = sums[3];
+    final double[] y = new double[d];
+
+    for (int p = 0; p < count; p++) {
+      for (int i = 0; i < d; i++)
+        y[i] = coordinates[offset + i * B + p] - shift[i];
+      final double w = weights == null ? 1.0 : weights[first + p];
+
+      int t2 = 0, t3 = 0, t4 = 0;
+      for (int i = 0; i < d; i++) {
+        final double yi = w * y[i];
+        sum1[i] += yi;
+        for (int j = i; j < d; j++) {
+          final double yij = yi * y[j];
+          sum2[t2++] += yij;
+          for (int k = j; k < d; k++) {
+            final double yijk = yij * y[k];
+            sum3[t3++] += yijk;
+            for (int l = k; l < d; l++)
+              sum4[t4++] += yijk * y[l];
+          }
+        }
+      }
+    }
+  }
+
+  private static void add(double[] sum, double[] terms) {
+    for (int t = 0; t < sum.length; t++)
+      sum[t] += terms[t];
+  }
+
+  /**
+   * Divides the sums by the total weight of the points and multiplies each entry by
+   * the number of distinct permutations of its indices.
+   */
+  private void scale(double n) {
+    final int d = dimensionCount;
+    int t2 = 0, t3 = 0, t4 = 0;
+    for (int i = 0; i < d; i++) {
+      moments1[i] /= n;
+      for (int j = i; j < d; j++) {
+        moments2[t2++] *= (i == j ? 1.0 : 2.0) / n;
+        for (int k = j; k < d; k++) {
+          moments3[t3++] *= permutationCount(i, j, k, -1) / n;
+          for (int l = k; l < d; l++)
+            moments4[t4++] *= permutationCount(i, j, k, l) / n;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of distinct permutations of the sorted indices; an
+   * index of -1 is absent.
+   */
+  private static double permutationCount(int i, int j, int k, int l) {
+    int[] indices = l < 0 ? new int[] {i, j, k} : new int[] {i, j, k, l};
+    double count = indices.length == 3 ? 6 : 24;
+    int run = 1;
+    for (int t = 1; t <= indices.length; t++) {
+      if (t < indices.length && indices[t] == indices[t - 1])
+        run++;
+      else {
+        for (int f = 2; f <= run; f++)
+          count /= f;
+        run = 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Stores the second, third and fourth central moments of the projection of
+   * the points onto <code>axis</code> into <code>centralMoments[0]</code>,
+   * <code>[1]</code> and <code>[2]</code>.
+   */
+  void project(double[] axis, double[] centralMoments) {
+    final int d = dimensionCount;
+    double r1 = 0.0, r2 = 0.0, r3 = 0.0, r4 = 0.0;
+    int t2 = 0, t3 = 0, t4 = 0;
+    for (int i = 0; i < d; i++) {
+      final double wi = axis[i];
+      r1 += moments1[i] * wi;
+      for (int j = i; j < d; j++) {
+        final double wij = wi * axis[j];
+        r2 += moments2[t2++] * wij;
+        for (int k = j; k < d; k++) {
+          final double wijk = wij * axis[k];
+          r3 += moments3[t3++] * wijk;
+          double s4 = 0.0;
+          for (int l = k; l < d; l++)
+            s4 += moments4[t4++] * axis[l];
+          r4 += s4 * wijk;
+        }
+      }
+    }
+
+    // The raw moments are about the projected shift; center them on the mean r1.
+
+    final double r1_2 = r1 * r1;
+    centralMoments[0] = r2 - r1_2;
+    centralMoments[1] = r3 - 3 * r1 * r2 + 2 * r1_2 * r1;
+    centralMoments[2] = r4 - 4 * r1 * r3 + 6 * r1_2 * r2 - 3 * r1_2 * r1_2;
+  }
+}
@@ -1,12 +1,21 @@
 package hicupp;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class MonitoringFunctionWrapper {
   private Function function;
   private Monitor monitor;
+  /** The refinement count of the function when this wrapper last looked. */
+  private int refinementCount;
   
   public MonitoringFunctionWrapper(Function function, Monitor monitor) {
     this.function = function;
     this.monitor = monitor;
+    this.refinementCount = function.getRefinementCount();
   }
   
   public int getArgumentCount() {
@@ -20,4 +29,169 @@ public class MonitoringFunctionWrapper {
     }
     return function.evaluate(arguments);
   }
+  
+  /**
+   * Evaluates the function at each of the argument sets, as one batch.
+   * The monitor is given a chance to cancel the computation before the batch,
+   * and is notified of each evaluation in it.
+   */
+  public void evaluate(double[][] argumentSets, double[] values) throws CancellationException {
+    if (monitor != null) {
+      monitor.continuing();
+      for (int s = 0; s < argumentSets.length; s++)
+        monitor.evaluationStarted();
+    }
+    function.evaluate(argumentSets, values);
+  }
+  
+  /**
+   * Evaluates the function at each of the argument sets, splitting them into
+   * as many chunks as <code>pool</code> has threads and evaluating the chunks
+   * concurrently on it, each as one batch. The function must allow this.
+   * The monitor is only called from the calling thread: it is notified of
+   * each evaluation before the chunks start and given a chance to cancel the
+   * computation before they start and as each completes. Once it cancels,
+   * or a chunk throws, the chunks that have not started are skipped, and
+   * the exception is only thrown once the others have completed.
+   */
+  public void evaluate(final double[][] argumentSets, final double[] values, ForkJoinPool pool)
+      throws CancellationException {
+    if (Math.min(argumentSets.length, pool.getParallelism()) <= 1) {
+      evaluate(argumentSets, values);
+      return;
+    }
+    evaluateInChunks(argumentSets.length, pool, (from, to) -> {
+      double[][] chunk = new double[to - from][];
+      System.arraycopy(argumentSets, from, chunk, 0, chunk.length);
+      double[] chunkValues = new double[chunk.length];
+      function.evaluate(chunk, chunkValues);
+      System.arraycopy(chunkValues, 0, values, from, chunk.length);
+    });
+  }
+  
+  /**
+   * Evaluates the function and its gradient at each of the argument sets,
+   * concurrently on <code>pool</code>, storing the gradients into
+   * <code>gradients</code>; otherwise as
+   * {@link #evaluate(double[][], double[], ForkJoinPool)}.
+   * @exception RuntimeException If the gradient is not available.
+   */
+  public void evaluate(final double[][] argumentSets, final double[] values, final double[][] gradients,
+                       ForkJoinPool pool) throws CancellationException {
+    if (!isGradientAvailable())
+      throw new RuntimeException("The gradient is not available.");
+    final DifferentiableFunction differentiable = (DifferentiableFunction) function;
+    evaluateInChunks(argumentSets.length, pool, (from, to) -> {
+      for (int s = from; s < to; s++)
+        values[s] = differentiable.evaluate(argumentSets[s], gradients[s]);
+    });
+  }
+  
+  /** Evaluates the arguments from <code>from</code> (inclusive) to <code>to</code> (exclusive). */
+  private interface Chunk {
+    void evaluate(int from, int to);
+  }
+  
+  /**
+   * Splits <code>count</code> argument sets into as many chunks as
+   * <code>pool</code> has threads and evaluates the chunks concurrently on it,
+   * calling the monitor as {@link #evaluate(double[][], double[], ForkJoinPool)}
+   * describes.
+   */
+  private void evaluateInChunks(int count, ForkJoinPool pool, final Chunk chunk)
+      throws CancellationException {
+    if (monitor != null) {
+      monitor.continuing();
+      for (int s = 0; s < count; s++)
+        monitor.evaluationStarted();
+    }
+    
+    final int chunkCount = Math.max(1, Math.min(count, pool.getParallelism()));
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    final List<ForkJoinTask<?>> tasks = new ArrayList<>(chunkCount);
+    for (int c = 0; c < chunkCount; c++) {
+      final int from = (int) ((long) count * c / chunkCount);
+      final int to = (int) ((long) count * (c + 1) / chunkCount);
+      tasks.add(pool.submit(() -> {
+        if (!cancelled.get())
+          chunk.evaluate(from, to);
+      }));
+    }
+    
+    try {
+      for (ForkJoinTask<?> task : tasks) {
+        task.join();
+        if (monitor != null)
+          monitor.continuing();
+      }
+    } finally {
+      
+      // If the monitor cancelled or a chunk failed, skip the chunks that have
+      // not started, and wait for the others, so that none writes into the
+      // caller's arrays after this method has returned or thrown.
+      
+      cancelled.set(true);
+      for (ForkJoinTask<?> task : tasks)
+        task.quietlyJoin();
+    }
+  }
+  
+  /**
+   * Evaluates the function at each of the argument sets, as one batch.
+   * @return The values of the function at the argument sets.
+   */
+  public double[] evaluate(double[][] argumentSets) throws CancellationException {
+    double[] values = new double[argumentSets.length];
+    evaluate(argumentSets, values);
+    return values;
+  }
+  
+  /**
+   * Refines the function; see {@link Function#refine()}.
+   * @return <code>true</code> if the values of the function changed, by this
+   * call or by another user of the function since {@link #wasRefined()} was
+   * last called.
+   */
+  public boolean refine() {
+    final boolean refined = function.refine();
+    return wasRefined() || refined;
+  }
+  
+  /**
+   * Returns whether another user of the function has refined it since this
+   * method or {@link #refine()} was last called; see
+   * {@link Function#getRefinementCount()}. An algorithm calls this before
+   * comparing values, and if it returns <code>true</code>, re-evaluates its
+   * current arguments, as the values it holds no longer compare with new ones.
+   */
+  public boolean wasRefined() {
+    final int count = function.getRefinementCount();
+    if (count == refinementCount)
+      return false;
+    refinementCount = count;
+    return true;
+  }
+  
+  /**
+   * Returns whether the function can compute its gradient; see
+   * {@link DifferentiableFunction#isGradientAvailable()}.
+   */
+  public boolean isGradientAvailable() {
+    return function instanceof DifferentiableFunction &&
+           ((DifferentiableFunction) function).isGradientAvailable();
+  }
+  
+  /**
+   * Evaluates the function and its gradient at <code>arguments</code>.
+   * @exception RuntimeException If the gradient is not available.
+   */
+  public double evaluate(double[] arguments, double[] gradient) throws CancellationException {
+    if (!isGradientAvailable())
+      throw new RuntimeException("The gradient is not available.");
+    if (monitor != null) {
+      monitor.continuing();
+      monitor.evaluationStarted();
+    }
+    return ((DifferentiableFunction) function).evaluate(arguments, gradient);
+  }
 }
@@ -0,0 +1,236 @@
+package hicupp;
+
+/**
+ * A copy of a set of points laid out for fast repeated projection.
+ * <p>The points are grouped into blocks of {@link #BLOCK_SIZE} points, and
+ * within a block the coordinates are stored column by column. Projecting a
+ * block onto an axis then streams through contiguous memory, with no virtual
+ * call per coordinate, and lets the {@link Projector}'s kernel process several
+ * points per instruction.</p>
+ * <p>The coordinates may be stored in single precision, which halves the
+ * memory the points take and the memory traffic of projecting them; the
+ * projection is then computed in single precision too. The points are then
+ * stored relative to their mean, so that the rounding error does not grow
+ * with their distance from the origin, and the projected values are those of
+ * the centered points.</p>
+ * <p>The weights of weighted points are kept in point order; see
+ * {@link SetOfPoints#isWeighted()}.</p>
+ */
+public final class PointBlocks {
+  public static final int BLOCK_SIZE = 1024;
+
+  private final int dimensionCount;
+  private final int pointCount;
+  /** The coordinates, or <code>null</code> if they are stored in single precision. */
+  private final double[] coordinates;
+  private final float[] singleCoordinates;
+  /** The weights of the points, or <code>null</code> if they are unweighted. */
+  private final double[] weights;
+  private final int totalWeight;
+
+  public PointBlocks(SetOfPoints points) {
+    this(points, false);
+  }
+
+  /**
+   * @param singlePrecision Whether to store the coordinates as <code>float</code>s.
+   */
+  public PointBlocks(SetOfPoints points, boolean singlePrecision) {
+    dimensionCount = points.getDimensionCount();
+    pointCount = points.getPointCount();
+    int blockCount = (pointCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    int length = blockCount * BLOCK_SIZE * dimensionCount;
+    coordinates = singlePrecision ? null : new double[length];
+    singleCoordinates = singlePrecision ? new float[length] : null;
+    weights = points.isWeighted() ? new double[pointCount] : null;
+
+    // The points are read a block at a time, row by row, and transposed.
+    final double[] buffer = new double[BLOCK_SIZE * dimensionCount];
+    final int[] blockWeights = new int[BLOCK_SIZE];
+
+    final double[] mean = new double[dimensionCount];
+    if (singlePrecision && pointCount > 0) {
+      PointIterator iterator = points.createIterator();
+      for (int first = 0; first < pointCount; first += BLOCK_SIZE) {
+        int count = Math.min(BLOCK_SIZE, pointCount - first);
+        iterator.nextPoints(count, dimensionCount, buffer, 0, null);
+        for (int p = 0, o = 0; p < count; p++)
+          for (int i = 0; i < dimensionCount; i++)
+            mean[i] += buffer[o++];
+      }
+      for (int i = 0; i < dimensionCount; i++)
+        mean[i] /= pointCount;
+    }
+
+    long weightSum = 0;
+    PointIterator iterator = points.createIterator();
+    for (int first = 0; first < pointCount; first += BLOCK_SIZE) {
+      int count = Math.min(BLOCK_SIZE, pointCount - first);
+      iterator.nextPoints(count, dimensionCount, buffer, 0, weights == null ? null : blockWeights);
+      if (weights != null) {
+        for (int p = 0; p < count; p++) {
+          weights[first + p] = blockWeights[p];
+          weightSum += blockWeights[p];
+        }
+      }
+      int offset = first * dimensionCount;
+      for (int i = 0; i < dimensionCount; i++) {
+        int column = offset + i * BLOCK_SIZE;
+        if (singlePrecision)
+          for (int p = 0; p < count; p++)
+            singleCoordinates[column + p] = (float) (buffer[p * dimensionCount + i] - mean[i]);
+        else
+          for (int p = 0; p < count; p++)
+            coordinates[column + p] = buffer[p * dimensionCount + i];
+      }
+    }
+    if (weights == null)
+      weightSum = pointCount;
+    if (weightSum > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("The total weight of the points is too large.");
+    totalWeight = (int) weightSum;
+  }
+
+  public int getDimensionCount() {
+    return dimensionCount;
+  }
+
+  public int getPointCount() {
+    return pointCount;
+  }
+
+  /**
+   * Returns the weights of the points, without copying them, or
+   * <code>null</code> if the points are unweighted.
+   */
+  double[] getWeights() {
+    return weights;
+  }
+
+  /**
+   * Returns the sum of the weights of the points, which is their number if
+   * they are unweighted.
+   */
+  public int getTotalWeight() {
+    return totalWeight;
+  }
+
+  public boolean isSinglePrecision() {
+    return coordinates == null;
+  }
+  
+  /**
+   * Returns the coordinates, without copying them: coordinate <code>i</code>
+   * of point <code>k</code> is at index
+   * <code>(k / BLOCK_SIZE) * BLOCK_SIZE * dimensionCount + i * BLOCK_SIZE + k % BLOCK_SIZE</code>.
+   * @exception RuntimeException If the coordinates are stored in single precision.
+   */
+  double[] getCoordinates() {
+    if (coordinates == null)
+      throw new RuntimeException("The coordinates are stored in single precision.");
+    return coordinates;
+  }
+
+  /**
+   * Stores the axis rounded to single precision into <code>singleAxis</code>
+   * and returns it, or returns <code>null</code> if the coordinates are stored
+   * in double precision.
+   */
+  private float[] toSingleAxis(double[] axis, float[] singleAxis) {
+    if (coordinates != null)
+      return null;
+    for (int i = 0; i < dimensionCount; i++)
+      singleAxis[i] = (float) axis[i];
+    return singleAxis;
+  }
+
+  /**
+   * Projects the points onto the axis, storing the projected values into
+   * <code>values</code>, which must hold at least as many elements as there are points.
+   */
+  public void project(double[] axis, double[] values) {
+    project(axis, values, coordinates == null ? new float[dimensionCount] : null);
+  }
+
+  /**
+   * Projects the points onto the axis as {@link #project(double[], double[])},
+   * rounding the axis to single precision, if needed, into
+   * <code>singleAxis</code>, which must hold as many elements as there are
+   * dimensions.
+   */
+  void project(double[] axis, double[] values, float[] singleAxis) {
+    final ProjectionKernel kernel = Projector.getKernel();
+    singleAxis = toSingleAxis(axis, singleAxis);
+    final int blockLength = BLOCK_SIZE * dimensionCount;
+    for (int first = 0, offset = 0; first < pointCount; first += BLOCK_SIZE, offset += blockLength) {
+      final int count = Math.min(BLOCK_SIZE, pointCount - first);
+      if (singleAxis != null)
+        kernel.project(singleCoordinates, offset, BLOCK_SIZE, count, dimensionCount, singleAxis, values, first);
+      else
+        kernel.project(coordinates, offset, BLOCK_SIZE, count, dimensionCount, axis, values, first);
+    }
+  }
+
+  /**
+   * Projects the points onto the first <code>axisCount</code> axes at once,
+   * storing the values projected onto <code>axes[a]</code> into
+   * <code>values[a]</code>. Each block is read from memory once and then
+   * projected onto every axis while it is in the cache, so this is faster than
+   * projecting onto the axes one by one, and gives the same values.
+   */
+  public void project(double[][] axes, int axisCount, double[][] values) {
+    project(axes, axisCount, values, coordinates == null ? new float[axisCount][dimensionCount] : null);
+  }
+
+  /**
+   * Projects the points onto the axes as
+   * {@link #project(double[][], int, double[][])}, rounding the axes to single
+   * precision, if needed, into <code>singleAxes</code>, which must hold
+   * <code>axisCount</code> arrays of as many elements as there are dimensions.
+   */
+  void project(double[][] axes, int axisCount, double[][] values, float[][] singleAxes) {
+    final ProjectionKernel kernel = Projector.getKernel();
+    final boolean single = coordinates == null;
+    if (single)
+      for (int a = 0; a < axisCount; a++)
+        toSingleAxis(axes[a], singleAxes[a]);
+    final int blockLength = BLOCK_SIZE * dimensionCount;
+    for (int first = 0, offset = 0; first < pointCount; first += BLOCK_SIZE, offset += blockLength) {
+      final int count = Math.min(BLOCK_SIZE, pointCount - first);
+      for (int a = 0; a < axisCount; a++) {
+        if (single)
+          kernel.project(singleCoordinates, offset, BLOCK_SIZE, count, dimensionCount,
+                         singleAxes[a], values[a], first);
+        else
+          kernel.project(coordinates, offset, BLOCK_SIZE, count, dimensionCount, axes[a], values[a], first);
+      }
+    }
+  }
+  
+  /**
+   * Stores the sum of the points weighted by <code>weights</code> into
+   * <code>sum</code>, which must hold as many elements as there are dimensions.
+   * In single precision, the points are the centered ones, which gives the
+   * same sum if the weights sum to zero.
+   */
+  public void accumulate(double[] weights, double[] sum) {
+    final int blockLength = BLOCK_SIZE * dimensionCount;
+    for (int i = 0; i < dimensionCount; i++)
+      sum[i] = 0.0;
+    for (int first = 0, offset = 0; first < pointCount; first += BLOCK_SIZE, offset += blockLength) {
+      final int count = Math.min(BLOCK_SIZE, pointCount - first);
+      for (int i = 0; i < dimensionCount; i++) {
+        final int column = offset + i * BLOCK_SIZE;
+        double s = 0.0;
+        if (coordinates == null) {
+          for (int k = 0; k < count; k++)
+            s += weights[first + k] * singleCoordinates[column + k];
+        } else {
+          for (int k = 0; k < count; k++)
+            s += weights[first + k] * coordinates[column + k];
+        }
+        sum[i] += s;
+      }
+    }
+  }
+}
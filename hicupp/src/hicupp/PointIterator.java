@@ -10,4 +10,33 @@ public interface PointIterator {
   boolean hasNext();
   void next();
   double getCoordinate(int index);
+
+  /**
+   * Returns the number of times the current point occurs in the set, which
+   * is positive; one unless the set is weighted. See
+   * {@link SetOfPoints#isWeighted()}.
+   */
+  default int getWeight() {
+    return 1;
+  }
+
+  /**
+   * Advances over the next <code>count</code> points, which must not be more
+   * than remain, copying the <code>dimensionCount</code> coordinates of each
+   * into <code>buffer</code> from <code>offset</code> on, point after point,
+   * and their weights into <code>weights</code>, if not <code>null</code>,
+   * from index zero on. Afterwards the current point is the last one copied.
+   * By default calls {@link #next()}, {@link #getCoordinate(int)} and
+   * {@link #getWeight()} for each point; iterators that can copy points
+   * faster override this.
+   */
+  default void nextPoints(int count, int dimensionCount, double[] buffer, int offset, int[] weights) {
+    for (int k = 0; k < count; k++) {
+      next();
+      for (int i = 0; i < dimensionCount; i++)
+        buffer[offset++] = getCoordinate(i);
+      if (weights != null)
+        weights[k] = getWeight();
+    }
+  }
 }
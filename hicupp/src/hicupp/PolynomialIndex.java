@@ -0,0 +1,384 @@
+package hicupp;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the orthogonal polynomial projection indices, which measure how far
+ * the density of a projection is from the standard normal density by its first
+ * few coefficients in an orthogonal basis, estimated by sample means.
+ * <p>The <i>Legendre</i> index transforms each standardized value
+ * <code>z</code> to <code>r = 2 &Phi;(z) - 1</code>, which is uniform on
+ * [-1, 1] for normal data, and sums <code>(2j + 1) / 2 E[P<sub>j</sub>(r)]<sup>2</sup></code>
+ * over the Legendre polynomials of degree 1 to <code>J</code>. The
+ * <i>Hermite</i> index is the integrated squared difference between the
+ * density and the standard normal density, both restricted to the span of the
+ * Hermite functions of degree 0 to <code>J</code>.</p>
+ * <p>Neither index needs sorted values or a density estimate. The mean and
+ * variance of each projection follow from the mean and covariance matrix of
+ * the points, computed once, so an evaluation takes a single pass over the
+ * points and stores no projected values. The pass is split into chunks of a
+ * fixed number of blocks, which are processed in parallel and whose sums are
+ * added in order, so the index does not depend on the number of threads.
+ * The gradient takes a second pass. Weighted points count as many times as
+ * their weights in the means, the covariance matrix and the sums.</p>
+ * <p>References:<br />
+ * <i>Exploratory Projection Pursuit.<br />
+ * J. H. Friedman<br />
+ * Journal of the American Statistical Association, Vol 82 No. 397<br />
+ * March 1987, p. 249-266</i><br />
+ * <i>On Polynomial-Based Projection Indices for Exploratory Projection Pursuit.<br />
+ * P. Hall<br />
+ * The Annals of Statistics, Vol 17 No. 2<br />
+ * June 1989, p. 589-605</i></p>
+ */
+final class PolynomialIndex {
+  static final int LEGENDRE = 0;
+  static final int HERMITE = 1;
+
+  private static final int CHUNK_BLOCK_COUNT = 16;
+
+  /** The coefficient of the Hermite function of degree 0 in the standard normal density. */
+  private static final double HERMITE_NORMAL_COEFFICIENT = 1 / Math.sqrt(2) / Math.pow(Math.PI, 0.25);
+
+  private final PointBlocks blocks;
+  private final int kind;
+  private final int order;
+  /** The weights of the points, or <code>null</code> if they are unweighted. */
+  private final double[] pointWeights;
+  private final double[] mean;
+  private final double[] covariance;
+
+  /** The coefficients of the recurrence for the Hermite functions. */
+  private final double[] hermiteA;
+  private final double[] hermiteB;
+
+  /**
+   * @param kind {@link #LEGENDRE} or {@link #HERMITE}.
+   * @param order The highest degree <code>J</code> of the basis.
+   */
+  PolynomialIndex(PointBlocks blocks, int kind, int order) {
+    this.blocks = blocks;
+    this.kind = kind;
+    this.order = order;
+    hermiteA = new double[order + 1];
+    hermiteB = new double[order + 1];
+    initializeRecurrence();
+
+    final int d = blocks.getDimensionCount();
+    final int n = blocks.getPointCount();
+    final double[] coordinates = blocks.getCoordinates();
+    final int B = PointBlocks.BLOCK_SIZE;
+    pointWeights = blocks.getWeights();
+    final double totalWeight = blocks.getTotalWeight();
+
+    mean = new double[d];
+    for (int first = 0, offset = 0; first < n; first += B, offset += B * d) {
+      final int count = Math.min(B, n - first);
+      for (int i = 0; i < d; i++)
+        for (int k = 0; k < count; k++)
+          mean[i] += weight(first + k) * coordinates[offset + i * B + k];
+    }
+    for (int i = 0; i < d; i++)
+      mean[i] /= totalWeight;
+
+    covariance = new double[d * d];
+    for (int first = 0, offset = 0; first < n; first += B, offset += B * d) {
+      final int count = Math.min(B, n - first);
+      for (int i = 0; i < d; i++) {
+        final int columnI = offset + i * B;
+        for (int l = i; l < d; l++) {
+          final int columnL = offset + l * B;
+          double sum = 0.0;
+          for (int k = 0; k < count; k++)
+            sum += weight(first + k) * (coordinates[columnI + k] - mean[i]) * (coordinates[columnL + k] - mean[l]);
+          covariance[i * d + l] += sum;
+        }
+      }
+    }
+    for (int i = 0; i < d; i++)
+      for (int l = i; l < d; l++)
+        covariance[l * d + i] = covariance[i * d + l] /= totalWeight;
+  }
+
+  /** Returns the weight of point <code>k</code>. */
+  private double weight(int k) {
+    return pointWeights == null ? 1.0 : pointWeights[k];
+  }
+
+  /**
+   * Creates an index that can only be evaluated from standardized values; see
+   * {@link #evaluate(double[])}.
+   */
+  PolynomialIndex(int kind, int order) {
+    this.blocks = null;
+    this.kind = kind;
+    this.order = order;
+    hermiteA = new double[order + 1];
+    hermiteB = new double[order + 1];
+    initializeRecurrence();
+    pointWeights = null;
+    mean = null;
+    covariance = null;
+  }
+
+  private void initializeRecurrence() {
+    for (int j = 1; j < order; j++) {
+      hermiteA[j] = Math.sqrt(2.0 / (j + 1));
+      hermiteB[j] = Math.sqrt((double) j / (j + 1));
+    }
+  }
+
+  /**
+   * Returns the index of a projection given its standardized values.
+   * @param weights The weights of the values, or <code>null</code> if they
+   *                are unweighted.
+   * @param totalWeight The sum of the weights.
+   */
+  double evaluate(double[] values, double[] weights, int totalWeight) {
+    final double[] basis = new double[order + 1];
+    final double[] sums = new double[order + 1];
+    for (int k = 0; k < values.length; k++) {
+      evaluateBasis(values[k], basis, null);
+      final double w = weights == null ? 1.0 : weights[k];
+      for (int j = 0; j <= order; j++)
+        sums[j] += w * basis[j];
+    }
+    return computeIndex(sums, totalWeight, new double[order + 1]);
+  }
+
+  /**
+   * Returns the index of the projection onto the unit vector <code>axis</code>.
+   * @param axisGradient If not <code>null</code>, receives the gradient of the
+   *                     index with respect to the coordinates of the axis.
+   */
+  double evaluate(double[] axis, double[] axisGradient) {
+    final int d = axis.length;
+    final int n = blocks.getTotalWeight();
+
+    double projectedMean = 0.0;
+    for (int i = 0; i < d; i++)
+      projectedMean += mean[i] * axis[i];
+    final double[] covarianceAxis = new double[d];
+    double variance = 0.0;
+    for (int i = 0; i < d; i++) {
+      double sum = 0.0;
+      for (int l = 0; l < d; l++)
+        sum += covariance[i * d + l] * axis[l];
+      covarianceAxis[i] = sum;
+      variance += sum * axis[i];
+    }
+    final double standardDeviation = Math.sqrt(variance);
+
+    final double[] sums = accumulate(axis, projectedMean, standardDeviation, null);
+    final double[] weights = new double[order + 1];
+    final double index = computeIndex(sums, n, weights);
+
+    if (axisGradient != null) {
+
+      // With w[k] the derivative of the index with respect to z[k] =
+      // (x[k] . axis - mean . axis) / sigma, the gradient is
+      // (sum(w[k] * x[k]) - mean * sum(w)) / sigma - sum(w[k] * z[k]) * C axis / sigma^2.
+
+      final double[] weightedSums = accumulate(axis, projectedMean, standardDeviation, weights);
+      final double sumW = weightedSums[0];
+      final double sumWZ = weightedSums[1];
+      for (int i = 0; i < d; i++)
+        axisGradient[i] = (weightedSums[2 + i] - mean[i] * sumW) / standardDeviation -
+                          sumWZ * covarianceAxis[i] / variance;
+    }
+
+    return index;
+  }
+
+  /**
+   * Returns the index given the sums of the basis functions at the
+   * <code>n</code> standardized values, counted as many times as their weights, and stores the derivatives of the
+   * index with respect to the sums into <code>weights</code>.
+   */
+  private double computeIndex(double[] sums, int n, double[] weights) {
+    double index = 0.0;
+    if (kind == LEGENDRE) {
+      for (int j = 1; j <= order; j++) {
+        final double coefficient = sums[j] / n;
+        index += (2 * j + 1) * coefficient * coefficient / 2;
+        weights[j] = (2 * j + 1) * coefficient / n;
+      }
+    } else {
+      for (int j = 0; j <= order; j++) {
+        final double difference = sums[j] / n - (j == 0 ? HERMITE_NORMAL_COEFFICIENT : 0.0);
+        index += difference * difference;
+        weights[j] = 2 * difference / n;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Makes a pass over the points. Without <code>weights</code>, returns the
+   * sums of the basis functions at the standardized projected values, times
+   * the weights of the points if they are weighted. With
+   * them, returns the sum of <code>w</code>, the sum of <code>w z</code> and
+   * the sums of <code>w</code> times each coordinate, where <code>w</code> is
+   * the derivative at <code>z</code> of the basis functions weighted by
+   * <code>weights</code>, times the weight of the point.
+   */
+  private double[] accumulate(final double[] axis, final double projectedMean,
+                              final double standardDeviation, final double[] weights) {
+    final int d = axis.length;
+    final int n = blocks.getPointCount();
+    final int B = PointBlocks.BLOCK_SIZE;
+    final int blockCount = (n + B - 1) / B;
+    final int chunkCount = (blockCount + CHUNK_BLOCK_COUNT - 1) / CHUNK_BLOCK_COUNT;
+    final int length = weights == null ? order + 1 : d + 2;
+
+    final double[] sums;
+    if (chunkCount <= 1)
+      sums = accumulate(0, blockCount, axis, projectedMean, standardDeviation, weights, length);
+    else {
+      final List<double[]> chunkSums = IntStream.range(0, chunkCount).parallel().mapToObj(chunk ->
+        accumulate(chunk * CHUNK_BLOCK_COUNT, Math.min(blockCount, (chunk + 1) * CHUNK_BLOCK_COUNT),
+                   axis, projectedMean, standardDeviation, weights, length)
+      ).toList();
+      sums = new double[length];
+      for (double[] chunkSum : chunkSums)
+        for (int t = 0; t < length; t++)
+          sums[t] += chunkSum[t];
+    }
+    return sums;
+  }
+
+  private double[] accumulate(int firstBlock, int lastBlock, double[] axis, double projectedMean,
+                              double standardDeviation, double[] weights, int length) {
+    final int d = axis.length;
+    final int n = blocks.getPointCount();
+    final int B = PointBlocks.BLOCK_SIZE;
+    final double[] coordinates = blocks.getCoordinates();
+    final ProjectionKernel kernel = Projector.getKernel();
+    final double[] values = new double[B];
+    final double[] basis = new double[order + 1];
+    final double[] derivatives = weights == null ? null : new double[order + 1];
+    final double[] sums = new double[length];
+
+    for (int block = firstBlock; block < lastBlock; block++) {
+      final int offset = block * B * d;
+      final int count = Math.min(B, n - block * B);
+      kernel.project(coordinates, offset, B, count, d, axis, values, 0);
+
+      if (weights == null) {
+        for (int k = 0; k < count; k++) {
+          evaluateBasis((values[k] - projectedMean) / standardDeviation, basis, null);
+          final double pointWeight = weight(block * B + k);
+          for (int j = 0; j <= order; j++)
+            sums[j] += pointWeight * basis[j];
+        }
+      } else {
+        for (int k = 0; k < count; k++) {
+          final double z = (values[k] - projectedMean) / standardDeviation;
+          evaluateBasis(z, basis, derivatives);
+          double w = 0.0;
+          for (int j = 0; j <= order; j++)
+            w += weights[j] * derivatives[j];
+          w *= weight(block * B + k);
+          sums[0] += w;
+          sums[1] += w * z;
+          values[k] = w;
+        }
+        for (int i = 0; i < d; i++) {
+          final int column = offset + i * B;
+          double sum = 0.0;
+          for (int k = 0; k < count; k++)
+            sum += values[k] * coordinates[column + k];
+          sums[2 + i] += sum;
+        }
+      }
+    }
+    return sums;
+  }
+
+  /**
+   * Stores the basis functions of degree 0 to <code>order</code> at the
+   * standardized value <code>z</code> into <code>basis</code> and, if
+   * <code>derivatives</code> is not <code>null</code>, their derivatives with
+   * respect to <code>z</code> into <code>derivatives</code>.
+   */
+  private void evaluateBasis(double z, double[] basis, double[] derivatives) {
+    if (kind == LEGENDRE) {
+
+      // (j + 1) P[j + 1](r) = (2j + 1) r P[j](r) - j P[j - 1](r), and
+      // P'[j + 1] = P'[j - 1] + (2j + 1) P[j].
+
+      final double r = 2 * normalDistribution(z) - 1;
+      basis[0] = 1.0;
+      basis[1] = r;
+      for (int j = 1; j < order; j++)
+        basis[j + 1] = ((2 * j + 1) * r * basis[j] - j * basis[j - 1]) / (j + 1);
+      if (derivatives != null) {
+        final double drdz = 2 / Math.sqrt(2 * Math.PI) * Math.exp(z * z / -2);
+        derivatives[0] = 0.0;
+        derivatives[1] = drdz;
+        for (int j = 1; j < order; j++)
+          derivatives[j + 1] = derivatives[j - 1] + (2 * j + 1) * basis[j] * drdz;
+      }
+    } else {
+
+      // The orthonormal Hermite functions: psi[j + 1](z) =
+      // sqrt(2 / (j + 1)) z psi[j](z) - sqrt(j / (j + 1)) psi[j - 1](z), and
+      // psi'[j](z) = sqrt(2j) psi[j - 1](z) - z psi[j](z).
+
+      basis[0] = Math.exp(z * z / -2) / Math.pow(Math.PI, 0.25);
+      basis[1] = Math.sqrt(2) * z * basis[0];
+      for (int j = 1; j < order; j++)
+        basis[j + 1] = hermiteA[j] * z * basis[j] - hermiteB[j] * basis[j - 1];
+      if (derivatives != null) {
+        derivatives[0] = -z * basis[0];
+        for (int j = 1; j <= order; j++)
+          derivatives[j] = Math.sqrt(2 * j) * basis[j - 1] - z * basis[j];
+      }
+    }
+  }
+
+  /**
+   * Returns the standard normal distribution function, accurate to double
+   * precision, by Hart's rational approximation.
+   * <p>Reference:<br />
+   * <i>Better Approximations to Cumulative Normal Functions.<br />
+   * G. West<br />
+   * Wilmott Magazine, May 2005, p. 70-76</i></p>
+   */
+  static double normalDistribution(double x) {
+    final double z = Math.abs(x);
+    double tail;
+    if (z > 37)
+      tail = 0.0;
+    else {
+      final double exponential = Math.exp(z * z / -2);
+      if (z < 7.07106781186547) {
+        double numerator = 3.52624965998911e-02;
+        numerator = numerator * z + 0.700383064443688;
+        numerator = numerator * z + 6.37396220353165;
+        numerator = numerator * z + 33.912866078383;
+        numerator = numerator * z + 112.079291497871;
+        numerator = numerator * z + 221.213596169931;
+        numerator = numerator * z + 220.206867912376;
+        double denominator = 8.83883476483184e-02;
+        denominator = denominator * z + 1.75566716318264;
+        denominator = denominator * z + 16.064177579207;
+        denominator = denominator * z + 86.7807322029461;
+        denominator = denominator * z + 296.564248779674;
+        denominator = denominator * z + 637.333633378831;
+        denominator = denominator * z + 793.826512519948;
+        denominator = denominator * z + 440.413735824752;
+        tail = exponential * numerator / denominator;
+      } else {
+        double fraction = z + 0.65;
+        fraction = z + 4 / fraction;
+        fraction = z + 3 / fraction;
+        fraction = z + 2 / fraction;
+        fraction = z + 1 / fraction;
+        tail = exponential / fraction / 2.506628274631;
+      }
+    }
+    return x > 0 ? 1 - tail : tail;
+  }
+}
@@ -6,7 +6,8 @@ public class PrincipalPlaneFinder {
   /**
    * The principal plane is the plane defined by <code>axis</code> and
    * a vector in the hyperplane that is perpendicular to <code>axis</code>,
-   * along which the <code>points</code> have greatest variance.
+   * along which the <code>points</code> have greatest variance, each point
+   * counted as many times as its weight.
    * This method returns the projection of <code>points</code> onto the
    * principal plane.
    */
@@ -14,7 +15,8 @@ public class PrincipalPlaneFinder {
     final int npoints = points.getPointCount();
     final int ndims = axis.length;
     Matrix setOfPoints = MatrixTools.setOfPointsToMatrix(points);
-    double[] center = MatrixTools.computeCenter(setOfPoints);
+    double[] weights = Projector.getWeights(points);
+    double[] center = MatrixTools.computeCenter(setOfPoints, weights);
     MatrixTools.subtractFromRows(setOfPoints, center);
     Matrix basis = OrthogonalBasisComputer.computeOrthogonalBasis(axis, setOfPoints);
     
@@ -25,7 +27,7 @@ public class PrincipalPlaneFinder {
     
     Matrix tt = t.transpose();
     Matrix pointsInSubspace = setOfPoints.times(tt);
-    Matrix varianceMatrix = MatrixTools.computeVariance(pointsInSubspace);
+    Matrix varianceMatrix = MatrixTools.computeVariance(pointsInSubspace, weights);
     EigenvalueDecomposition eig = varianceMatrix.eig();
     
     double[] eigenvalues = eig.getRealEigenvalues();
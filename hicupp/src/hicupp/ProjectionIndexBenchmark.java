@@ -0,0 +1,88 @@
+package hicupp;
+
+import java.util.Random;
+
+/**
+ * Measures the time per evaluation of each projection index, and of its
+ * gradient where available, on random points.
+ * <p>Usage: <code>java hicupp.ProjectionIndexBenchmark [pointCount [dimensionCount [evaluationCount [single]]]]</code></p>
+ * <p>The points are drawn from a fixed seed, two thirds from the standard
+ * normal distribution and one third shifted along the second dimension, and
+ * each index is evaluated at the same random arguments after a warm-up of as
+ * many evaluations, so runs on different builds can be compared. The density
+ * indices are evaluated on the full grid resolution throughout. With
+ * <code>single</code>, the points are projected in single precision, and the
+ * drift of each index from double precision is reported too.</p>
+ */
+public class ProjectionIndexBenchmark {
+  public static void main(String[] args) {
+    final int pointCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    final int dimensionCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    final int evaluationCount = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+    final boolean singlePrecision = args.length > 3 && args[3].equals("single");
+
+    final Random random = new Random(1);
+    final double[] coordinates = new double[pointCount * dimensionCount];
+    for (int k = 0; k < pointCount; k++)
+      for (int i = 0; i < dimensionCount; i++)
+        coordinates[k * dimensionCount + i] = random.nextGaussian() + (k % 3 == 0 && i == 1 ? 3 : 0);
+    final SetOfPoints points = new ArraySetOfPoints(dimensionCount, coordinates);
+
+    final double[][] argumentSets = new double[evaluationCount][dimensionCount - 1];
+    final double bound = 1 / Math.sqrt(dimensionCount);
+    for (double[] arguments : argumentSets)
+      for (int i = 0; i < arguments.length; i++)
+        arguments[i] = (2 * random.nextDouble() - 1) * bound;
+
+    System.out.println(pointCount + " points, " + dimensionCount + " dimensions, " +
+                       evaluationCount + " evaluations; projection kernel: " + Projector.getKernelName() +
+                       (singlePrecision ? "; single precision" : ""));
+
+    final String[] names = ProjectionIndexFunction.getProjectionIndexNames();
+    for (int index = 0; index < names.length; index++) {
+      final ProjectionIndexFunction function = new ProjectionIndexFunction(index, points);
+      function.setAutoRefining(false);
+      function.setSinglePrecision(singlePrecision);
+      final int count = index == ProjectionIndexFunction.MIXED_PROJECTION_INDEX ?
+                        Math.max(1, evaluationCount / 20) : evaluationCount;
+
+      double checksum = 0.0;
+      for (int s = 0; s < count; s++)
+        checksum += function.evaluate(argumentSets[s]);
+      long start = System.nanoTime();
+      for (int s = 0; s < count; s++)
+        checksum += function.evaluate(argumentSets[s]);
+      final double evaluationTime = (System.nanoTime() - start) / 1e6 / count;
+
+      String line = pad(names[index], 16) + format(evaluationTime) + " ms";
+      if (function.isGradientAvailable()) {
+        final double[] gradient = new double[dimensionCount - 1];
+        for (int s = 0; s < count; s++)
+          checksum += function.evaluate(argumentSets[s], gradient);
+        start = System.nanoTime();
+        for (int s = 0; s < count; s++)
+          checksum += function.evaluate(argumentSets[s], gradient);
+        final double gradientTime = (System.nanoTime() - start) / 1e6 / count;
+        line += "   with gradient " + format(gradientTime) + " ms";
+      }
+      if (singlePrecision) {
+        final SinglePrecisionAccuracy accuracy = function.compareSinglePrecision(argumentSets[0]);
+        line += "   index drift " + String.format("%.1e", accuracy.getRelativeIndexError());
+        if (function.isGradientAvailable())
+          line += ", gradient drift " + String.format("%.1e", accuracy.relativeGradientError());
+      }
+      System.out.println(line + "   (checksum " + checksum + ")");
+    }
+  }
+
+  private static String pad(String text, int width) {
+    StringBuilder builder = new StringBuilder(text);
+    while (builder.length() < width)
+      builder.append(' ');
+    return builder.toString();
+  }
+
+  private static String format(double milliseconds) {
+    return String.format("%9.4f", milliseconds);
+  }
+}
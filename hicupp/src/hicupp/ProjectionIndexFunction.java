@@ -1,6 +1,7 @@
 package hicupp;
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A function that computes a projection index for projection pursuit
@@ -17,47 +18,144 @@ import java.util.Stack;
  * University of Florida<br />
  * Gainesville, FL 32611</p>
  */
-public class ProjectionIndexFunction implements Function {
-  private static final Distance entropyDistance = new Distance() {
+public class ProjectionIndexFunction implements DifferentiableFunction {
+  private static final class EntropyDistance extends Distance {
     public double evaluate(double fhat, double phi) {
       return (fhat < 1e-10 ? 0 : fhat * Math.log(fhat)) -
              phi * Math.log(phi);
     }
-  };
+    public double derivativeWithRespectToFhat(double fhat, double phi) {
+      return fhat < 1e-10 ? 0 : Math.log(fhat) + 1;
+    }
+    public double derivativeWithRespectToPhi(double fhat, double phi) {
+      return -(Math.log(phi) + 1);
+    }
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson) {
+      final int last = gridSize - 1;
+      double oddSum = 0.0;
+      for (int j = 1; j < last; j += 2)
+        oddSum += evaluate(fhat[j], Phi[j]);
+      double evenSum = 0.0;
+      for (int j = 2; j < last; j += 2)
+        evenSum += evaluate(fhat[j], Phi[j]);
+      return combine(evaluate(fhat[0], Phi[0]) + evaluate(fhat[last], Phi[last]), oddSum, evenSum, step, simpson);
+    }
+  }
   
-  private static final Distance l1Distance = new Distance() {
+  private static final class L1Distance extends Distance {
     public double evaluate(double fhat, double phi) {
       return Math.abs(fhat - phi);
     }
-  };
+    public double derivativeWithRespectToFhat(double fhat, double phi) {
+      return Math.signum(fhat - phi);
+    }
+    public double derivativeWithRespectToPhi(double fhat, double phi) {
+      return -Math.signum(fhat - phi);
+    }
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson) {
+      final int last = gridSize - 1;
+      double oddSum = 0.0;
+      for (int j = 1; j < last; j += 2)
+        oddSum += evaluate(fhat[j], Phi[j]);
+      double evenSum = 0.0;
+      for (int j = 2; j < last; j += 2)
+        evenSum += evaluate(fhat[j], Phi[j]);
+      return combine(evaluate(fhat[0], Phi[0]) + evaluate(fhat[last], Phi[last]), oddSum, evenSum, step, simpson);
+    }
+  }
   
-  private static final Distance hellingersDistance = new Distance() {
+  private static final class HellingersDistance extends Distance {
     public double evaluate(double fhat, double phi) {
       double d = Math.sqrt(fhat) - Math.sqrt(phi);
       return d * d;
     }
-  };
+    public double derivativeWithRespectToFhat(double fhat, double phi) {
+      return fhat == 0 ? 0 : 1 - Math.sqrt(phi / fhat);
+    }
+    public double derivativeWithRespectToPhi(double fhat, double phi) {
+      return 1 - Math.sqrt(fhat / phi);
+    }
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson) {
+      final int last = gridSize - 1;
+      double oddSum = 0.0;
+      for (int j = 1; j < last; j += 2)
+        oddSum += evaluate(fhat[j], Phi[j]);
+      double evenSum = 0.0;
+      for (int j = 2; j < last; j += 2)
+        evenSum += evaluate(fhat[j], Phi[j]);
+      return combine(evaluate(fhat[0], Phi[0]) + evaluate(fhat[last], Phi[last]), oddSum, evenSum, step, simpson);
+    }
+  }
   
-  private static final Distance friedmansDistance = new Distance() {
+  private static final class FriedmansDistance extends Distance {
     public double evaluate(double fhat, double phi) {
       double d = fhat - phi;
       return d * d / 2 / phi;
     }
-  };
+    public double derivativeWithRespectToFhat(double fhat, double phi) {
+      return (fhat - phi) / phi;
+    }
+    public double derivativeWithRespectToPhi(double fhat, double phi) {
+      return -(fhat - phi) * (fhat + phi) / 2 / phi / phi;
+    }
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson) {
+      final int last = gridSize - 1;
+      double oddSum = 0.0;
+      for (int j = 1; j < last; j += 2)
+        oddSum += evaluate(fhat[j], Phi[j]);
+      double evenSum = 0.0;
+      for (int j = 2; j < last; j += 2)
+        evenSum += evaluate(fhat[j], Phi[j]);
+      return combine(evaluate(fhat[0], Phi[0]) + evaluate(fhat[last], Phi[last]), oddSum, evenSum, step, simpson);
+    }
+  }
   
-  private static final Distance hallsDistance = new Distance() {
+  private static final class HallsDistance extends Distance {
     public double evaluate(double fhat, double phi) {
       double d = fhat - phi;
       return d * d;
     }
-  };
+    public double derivativeWithRespectToFhat(double fhat, double phi) {
+      return 2 * (fhat - phi);
+    }
+    public double derivativeWithRespectToPhi(double fhat, double phi) {
+      return -2 * (fhat - phi);
+    }
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson) {
+      final int last = gridSize - 1;
+      double oddSum = 0.0;
+      for (int j = 1; j < last; j += 2)
+        oddSum += evaluate(fhat[j], Phi[j]);
+      double evenSum = 0.0;
+      for (int j = 2; j < last; j += 2)
+        evenSum += evaluate(fhat[j], Phi[j]);
+      return combine(evaluate(fhat[0], Phi[0]) + evaluate(fhat[last], Phi[last]), oddSum, evenSum, step, simpson);
+    }
+  }
   
-  private static final Distance cooksDistance = new Distance() {
+  private static final class CooksDistance extends Distance {
     public double evaluate(double fhat, double phi) {
       double d = fhat - phi;
       return d * d * phi;
     }
-  };
+    public double derivativeWithRespectToFhat(double fhat, double phi) {
+      return 2 * (fhat - phi) * phi;
+    }
+    public double derivativeWithRespectToPhi(double fhat, double phi) {
+      double d = fhat - phi;
+      return d * d - 2 * d * phi;
+    }
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson) {
+      final int last = gridSize - 1;
+      double oddSum = 0.0;
+      for (int j = 1; j < last; j += 2)
+        oddSum += evaluate(fhat[j], Phi[j]);
+      double evenSum = 0.0;
+      for (int j = 2; j < last; j += 2)
+        evenSum += evaluate(fhat[j], Phi[j]);
+      return combine(evaluate(fhat[0], Phi[0]) + evaluate(fhat[last], Phi[last]), oddSum, evenSum, step, simpson);
+    }
+  }
   
   private static final String[] projectionIndices = {
     "Shape",
@@ -67,173 +165,1436 @@ public class ProjectionIndexFunction implements Function {
     "Hellinger's",
     "Friedman's",
     "Hall's",
-    "Cook's"
+    "Cook's",
+    "Legendre",
+    "Hermite",
+    "Friedman-Tukey"
   };
   
   public static final int MIXED_PROJECTION_INDEX = 1;
+  private static final int MIXED_COMPONENT_COUNT = 2;
+  private static final int MIXED_RESTART_COUNT = 4;
+  
+  /**
+   * A warm-started fit of the Mixed index whose AIC is worse than the previous
+   * fit's by more than this fraction of it, or that has a component with less
+   * than the minimum weight, is followed by random restarts.
+   */
+  private static final double MIXED_WARM_START_TOLERANCE = 0.05;
+  private static final double MIXED_MINIMUM_WEIGHT = 1e-3;
   public static final int FRIEDMANS_PROJECTION_INDEX = 5;
+  
+  /**
+   * The orthogonal polynomial indices, computed in one pass over the points
+   * without sorting or estimating a density; see {@link PolynomialIndex}.
+   */
+  public static final int LEGENDRE_PROJECTION_INDEX = 8;
+  public static final int HERMITE_PROJECTION_INDEX = 9;
+  
+  /** The highest degree of the basis functions of the polynomial indices. */
+  private static final int POLYNOMIAL_INDEX_ORDER = 6;
+  
+  /**
+   * The original index of Friedman and Tukey: the trimmed standard deviation of
+   * the projection times the sum over all pairs of values of
+   * <code>max(0, R - |distance|)</code>, divided by the squared number of points.
+   */
+  public static final int FRIEDMAN_TUKEY_PROJECTION_INDEX = 10;
+  
+  /** The horizon <code>R</code> of the Friedman-Tukey index, in standard deviations. */
+  private static final double FRIEDMAN_TUKEY_HORIZON = 0.1;
+  
+  /**
+   * The number of bins per horizon onto which the Friedman-Tukey index bins
+   * the values in binned mode, times the binning oversampling.
+   */
+  private static final int FRIEDMAN_TUKEY_BINS_PER_HORIZON = 8;
 
   public static String[] getProjectionIndexNames() {
     return projectionIndices;
   }
   
   private static final Distance[] distances = {
-    entropyDistance,
-    l1Distance,
-    hellingersDistance,
-    friedmansDistance,
-    hallsDistance,
-    cooksDistance
+    new EntropyDistance(),
+    new L1Distance(),
+    new HellingersDistance(),
+    new FriedmansDistance(),
+    new HallsDistance(),
+    new CooksDistance()
+  };
+  
+  /**
+   * The default number of intervals per kernel bandwidth of the grid on which
+   * the density indices estimate the density of the projection; see
+   * {@link #setGridResolution(double)}.
+   */
+  public static final double DEFAULT_GRID_RESOLUTION = 4.0;
+  
+  /**
+   * The fraction of the grid resolution at which the density indices are
+   * evaluated until the grid is refined; see {@link #setAutoRefining(boolean)}.
+   */
+  private static final double COARSE_GRID_RESOLUTION_FRACTION = 0.5;
+  
+  /** Bounds on half the number of intervals of the grid. */
+  private static final int MINIMUM_GRID_HALF_SIZE = 16;
+  private static final int MAXIMUM_GRID_HALF_SIZE = 1024;
+  
+  /**
+   * The density indices integrate over the grid by the trapezoidal rule.
+   */
+  public static final int TRAPEZOIDAL_QUADRATURE = 0;
+  /**
+   * The density indices integrate over the grid by Simpson's rule, which is
+   * more accurate for a smooth integrand on the same grid.
+   */
+  public static final int SIMPSON_QUADRATURE = 1;
+  
+  private static final String[] quadratures = {
+    "Trapezoidal rule",
+    "Simpson's rule"
   };
   
+  public static String[] getQuadratureNames() {
+    return quadratures;
+  }
+  
+  /**
+   * The number of axes onto which {@link #evaluate(double[][], double[])}
+   * projects the points per pass over them.
+   */
+  public static final int BATCH_SIZE = 8;
+  
+  /**
+   * The density indices compute the kernel density estimate exactly, summing
+   * the kernel over every value within four bandwidths of each grid point.
+   */
+  public static final int EXACT_DENSITY_ESTIMATION = 0;
+  /**
+   * The density indices bin the projected values linearly onto the grid and
+   * convolve the bins with the kernel by FFT. The Friedman-Tukey index bins
+   * them too, and selects the trimmed values instead of sorting.
+   */
+  public static final int BINNED_DENSITY_ESTIMATION = 1;
+  
   private int projectionIndex;
-  private SetOfPoints points;
+  private final IndexEvaluator indexEvaluator;
+  private final SetOfPoints points;
+  private int densityEstimation = EXACT_DENSITY_ESTIMATION;
+  private int binningOversampling = 1;
+  private boolean warmStarting;
+  private long mixedSeed = MixedModel.DEFAULT_SEED;
+  private double gridResolution = DEFAULT_GRID_RESOLUTION;
+  private int quadrature = TRAPEZOIDAL_QUADRATURE;
+  private boolean autoRefining;
+  private boolean singlePrecision;
+  
+  /** Whether {@link #refine()} has switched the density indices to the full grid resolution. */
+  private volatile boolean refined;
+  
+  /**
+   * A copy of the points laid out for fast projection, created when first needed.
+   */
+  private volatile PointBlocks pointBlocks;
+  
+  /**
+   * The moment tensors of the points, created for the Shape index once they
+   * pay for themselves; see {@link #getMomentTensors()}.
+   */
+  private volatile MomentTensors momentTensors;
+  
+  /**
+   * The Mixed index's most recent fit to these points, from which the next
+   * fit starts if warm starting.
+   */
+  private volatile MixedModel mixedModel;
+  
+  /** The state of the polynomial indices, created when first needed. */
+  private volatile PolynomialIndex polynomialIndex;
+  private final AtomicLong shapePassCount = new AtomicLong();
+  
+  /**
+   * The scratch arrays of each thread that evaluates this function. Several
+   * optimizer threads may evaluate the same function at once; each gets its
+   * own workspace. A workspace holds no reference to this function, so that
+   * the workspaces left on long-lived pool threads do not keep it alive.
+   */
+  private final ThreadLocal<Workspace> workspaces;
+  
+  /**
+   * Scratch arrays for one evaluating thread. They are sized for the set of
+   * points when the workspace is created, and the grid arrays for the largest
+   * grid yet, so that a steady-state evaluation allocates nothing.
+   */
+  private static final class Workspace {
+    final double[] axis;
+    /** The axis rounded to single precision, if the points are stored so. */
+    final float[] singleAxis;
+    /** The projected values from which the index is computed. */
+    double[] values;
+    /**
+     * The weights of the values, moved along with them when they are
+     * reordered, or <code>null</code> if the points are unweighted; set by
+     * {@link #standardize(Workspace)}.
+     */
+    double[] weights;
+    /** The total weight of the points: their number if they are unweighted. */
+    int totalWeight;
+    /** The number of points of the most recent grid; the grid arrays are grown as needed. */
+    int gridSize;
+    double[] fhat = new double[0];
+    double[] Phi = new double[0];
+    /** The kernel values of one projected value at successive grid points. */
+    double[] kernelRow = new double[0];
+    BinnedDensityEstimator binnedDensityEstimator;
+    
+    /** The bin counts of the Friedman-Tukey index in binned mode, grown as needed. */
+    double[] pairCounts = new double[0];
+    
+    /**
+     * The posterior probability arrays of the Mixed index's restarts, and of
+     * its warm-started fit last.
+     */
+    final double[][] mixtureBuffers = new double[MIXED_RESTART_COUNT + 1][];
+    
+    /**
+     * The evaluators of {@link #evaluateIndices(int[], double[])}, by
+     * projection index, created as first needed.
+     */
+    final IndexEvaluator[] indexEvaluators = new IndexEvaluator[projectionIndices.length];
+    
+    /** The central moments of a projection, set by {@link MomentTensors#project(double[], double[])}. */
+    final double[] centralMoments = new double[3];
+    
+    /** Statistics of the projection, set by {@link #project(double[], Workspace)}. */
+    double variance;
+    double minimum;
+    double maximum;
+    
+    /**
+     * Returns whether the projection cannot be standardized: its variance is
+     * zero, as when all points coincide, or not finite, as when a projected
+     * value is NaN. The density indices are then zero, with a zero gradient.
+     */
+    boolean isDegenerate() {
+      return !(variance > 0 && variance < Double.POSITIVE_INFINITY);
+    }
+    
+    /** The quartiles of the projection, set by {@link #selectBandwidth(double[], Workspace)}. */
+    double lowerQuartile;
+    double upperQuartile;
+    
+    /** Scratch arrays for the gradient, allocated when first needed. */
+    double[] sortedValues;
+    double[] sortedWeights;
+    double[] valueGradient;
+    double[] kernelMoment1;
+    double[] kernelMoment2;
+    double[] gradientWeight;
+    final double[] axisGradient;
+    
+    Workspace(int dimensionCount, int pointCount) {
+      axis = new double[dimensionCount];
+      singleAxis = new float[dimensionCount];
+      values = new double[pointCount];
+      axisGradient = new double[dimensionCount];
+    }
+    
+    void allocateGradient() {
+      if (sortedValues == null) {
+        sortedValues = new double[values.length];
+        sortedWeights = weights == null ? null : new double[values.length];
+        valueGradient = new double[values.length];
+        kernelMoment1 = new double[0];
+        kernelMoment2 = new double[0];
+        gradientWeight = new double[0];
+      }
+    }
+    
+    /**
+     * Sets the number of grid points, growing the grid arrays, and the
+     * gradient's if allocated, to hold them.
+     */
+    void allocateGrid(int size) {
+      gridSize = size;
+      if (fhat.length < size) {
+        fhat = new double[size];
+        Phi = new double[size];
+        kernelRow = new double[size];
+      }
+      if (kernelMoment1 != null && kernelMoment1.length < size) {
+        kernelMoment1 = new double[size];
+        kernelMoment2 = new double[size];
+        gradientWeight = new double[size];
+      }
+    }
+    
+    /** The axes and projected values of a batch; the first values array is {@link #values}. */
+    double[][] batchAxes;
+    float[][] singleBatchAxes;
+    double[][] batchValues;
+    /** The positions among the argument sets of the axes of a batch. */
+    int[] batchMembers;
+    
+    void allocateBatch() {
+      if (batchAxes == null) {
+        batchAxes = new double[BATCH_SIZE][axis.length];
+        batchMembers = new int[BATCH_SIZE];
+        singleBatchAxes = new float[BATCH_SIZE][axis.length];
+        batchValues = new double[BATCH_SIZE][];
+        batchValues[0] = values;
+        for (int b = 1; b < BATCH_SIZE; b++)
+          batchValues[b] = new double[values.length];
+      }
+    }
+    
+    BinnedDensityEstimator getBinnedDensityEstimator(int gridSize, int oversampling) {
+      if (binnedDensityEstimator == null || binnedDensityEstimator.getOversampling() != oversampling ||
+          binnedDensityEstimator.getMaximumGridSize() < gridSize)
+        binnedDensityEstimator = new BinnedDensityEstimator(gridSize, oversampling);
+      return binnedDensityEstimator;
+    }
+  }
   
   public ProjectionIndexFunction(int projectionIndex, SetOfPoints points) {
     this.projectionIndex = projectionIndex;
     this.points = points;
+    this.workspaces = ThreadLocal.withInitial(() -> new Workspace(points.getDimensionCount(),
+                                                                  points.getPointCount()));
+    this.indexEvaluator = createIndexEvaluator(projectionIndex);
+  }
+  
+  /**
+   * Returns the moment tensors from which the Shape index is evaluated without
+   * a pass over the points, or <code>null</code> if they are not worth building
+   * yet. Building them costs about as much as {@link MomentTensors#getTotalSize(int)}
+   * divided by <code>d + 4</code> passes; they are built once the Shape index
+   * has made that many passes, and never if evaluating from them would cost
+   * more than a pass.
+   */
+  private MomentTensors getMomentTensors() {
+    MomentTensors tensors = momentTensors;
+    if (tensors == null) {
+      // Costs in multiply-adds per point.
+      final int d = points.getDimensionCount();
+      final long tensorCost = MomentTensors.getTotalSize(d);
+      final long passCost = d + 4;
+      if (tensorCost >= passCost * points.getPointCount() ||
+          shapePassCount.get() * passCost < tensorCost)
+        return null;
+      synchronized (this) {
+        tensors = momentTensors;
+        if (tensors == null) {
+          // The tensors are summed in double precision, from a temporary copy
+          // of the points if they are projected in single precision.
+          final PointBlocks blocks = getPointBlocks();
+          momentTensors = tensors = new MomentTensors(blocks.isSinglePrecision() ?
+                                                      new PointBlocks(points) : blocks);
+        }
+      }
+    }
+    return tensors;
+  }
+  
+  private PolynomialIndex getPolynomialIndex() {
+    PolynomialIndex index = polynomialIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = polynomialIndex;
+        if (index == null)
+          polynomialIndex = index = new PolynomialIndex(getPointBlocks(),
+                                                        projectionIndex == LEGENDRE_PROJECTION_INDEX ?
+                                                        PolynomialIndex.LEGENDRE : PolynomialIndex.HERMITE,
+                                                        POLYNOMIAL_INDEX_ORDER);
+      }
+    }
+    return index;
+  }
+  
+  private boolean isDensityIndex() {
+    return projectionIndex >= 2 && projectionIndex < 2 + distances.length;
+  }
+  
+  private boolean isPolynomialIndex() {
+    return projectionIndex == LEGENDRE_PROJECTION_INDEX || projectionIndex == HERMITE_PROJECTION_INDEX;
+  }
+  
+  /**
+   * Returns the points laid out for projection, in single precision if so
+   * chosen, except for the polynomial indices.
+   */
+  private PointBlocks getPointBlocks() {
+    PointBlocks blocks = pointBlocks;
+    if (blocks == null) {
+      synchronized (this) {
+        blocks = pointBlocks;
+        if (blocks == null)
+          pointBlocks = blocks = new PointBlocks(points, singlePrecision && !isPolynomialIndex());
+      }
+    }
+    return blocks;
   }
   
   public int getArgumentCount() {
     return points.getDimensionCount() - 1;
   }
   
+  /**
+   * Chooses how the density indices estimate the density of the projection.
+   * @param densityEstimation {@link #EXACT_DENSITY_ESTIMATION} or
+   *                          {@link #BINNED_DENSITY_ESTIMATION}.
+   * @param binningOversampling The number of bins per grid step in binned mode
+   *                            (for the Friedman-Tukey index, a multiple of
+   *                            {@value #FRIEDMAN_TUKEY_BINS_PER_HORIZON} bins per horizon).
+   *                            Higher values are more accurate; see
+   *                            {@link #compareDensityEstimation(double[])}.
+   */
+  public void setDensityEstimation(int densityEstimation, int binningOversampling) {
+    if (binningOversampling < 1)
+      throw new IllegalArgumentException("binningOversampling must be positive.");
+    this.densityEstimation = densityEstimation;
+    this.binningOversampling = binningOversampling;
+  }
+  
+  public int getDensityEstimation() {
+    return densityEstimation;
+  }
+  
+  public int getBinningOversampling() {
+    return binningOversampling;
+  }
+  
+  /**
+   * Chooses whether the Mixed index starts fitting its model from the model
+   * most recently fitted to these points, which is much faster when
+   * successive axes are close together. The index then depends slightly on
+   * the order of evaluation, which varies from run to run when an optimizer
+   * evaluates concurrently; without warm starting it depends only on the axis
+   * and the seed. Off by default; {@link Clusterer#createFunction} turns it
+   * on.
+   */
+  public void setWarmStarting(boolean warmStarting) {
+    this.warmStarting = warmStarting;
+  }
+  
+  public boolean isWarmStarting() {
+    return warmStarting;
+  }
+  
+  /**
+   * Sets the seed from which the Mixed index draws the random starts of its
+   * fits, {@link MixedModel#DEFAULT_SEED} by default. With the same seed, the
+   * index at an axis is the same from run to run.
+   */
+  public void setMixedSeed(long seed) {
+    mixedSeed = seed;
+  }
+  
+  public long getMixedSeed() {
+    return mixedSeed;
+  }
+  
+  /**
+   * Chooses whether the points are stored and projected in single precision,
+   * which halves the memory they take and the memory traffic of projecting
+   * them, for large sets of points. The projected values, the density
+   * estimate and the index are still computed in double precision from the
+   * rounded projection; see {@link #compareSinglePrecision(double[])}. The
+   * polynomial indices always use double precision. Off by default; to be
+   * chosen before evaluating.
+   */
+  public synchronized void setSinglePrecision(boolean singlePrecision) {
+    if (this.singlePrecision != singlePrecision) {
+      this.singlePrecision = singlePrecision;
+      pointBlocks = null;
+    }
+  }
+  
+  public boolean isSinglePrecision() {
+    return singlePrecision;
+  }
+  
+  /**
+   * Sets the number of grid intervals per kernel bandwidth on which the
+   * density indices estimate the density of the projection. The grid spans
+   * the projected values, so a small bandwidth, as with many points, gives a
+   * large grid. Half the number of intervals is kept between
+   * {@value #MINIMUM_GRID_HALF_SIZE} and {@value #MAXIMUM_GRID_HALF_SIZE}.
+   */
+  public void setGridResolution(double intervalsPerBandwidth) {
+    if (!(intervalsPerBandwidth > 0))
+      throw new IllegalArgumentException("intervalsPerBandwidth must be positive.");
+    gridResolution = intervalsPerBandwidth;
+  }
+  
+  public double getGridResolution() {
+    return gridResolution;
+  }
+  
+  /**
+   * Chooses how the density indices integrate over the grid.
+   * @param quadrature {@link #TRAPEZOIDAL_QUADRATURE} or {@link #SIMPSON_QUADRATURE}.
+   */
+  public void setQuadrature(int quadrature) {
+    if (quadrature != TRAPEZOIDAL_QUADRATURE && quadrature != SIMPSON_QUADRATURE)
+      throw new IllegalArgumentException("Unknown quadrature: " + quadrature);
+    this.quadrature = quadrature;
+  }
+  
+  public int getQuadrature() {
+    return quadrature;
+  }
+  
+  /**
+   * Chooses whether the density indices start on a grid of
+   * {@value #COARSE_GRID_RESOLUTION_FRACTION} times the grid resolution,
+   * until {@link #refine()} is called, so that the early iterations of an
+   * optimizer, far from the maximum, cost less. Off by default;
+   * {@link Clusterer#createFunction} turns it on.
+   */
+  public void setAutoRefining(boolean autoRefining) {
+    this.autoRefining = autoRefining;
+  }
+  
+  public boolean isAutoRefining() {
+    return autoRefining;
+  }
+  
+  /**
+   * If auto-refining and the density indices are still on the coarse grid,
+   * switches them to the full grid resolution.
+   * @return <code>true</code> if the values of this function changed.
+   */
+  public synchronized boolean refine() {
+    if (!autoRefining || refined || !isDensityIndex())
+      return false;
+    refined = true;
+    return true;
+  }
+  
+  public int getRefinementCount() {
+    return refined ? 1 : 0;
+  }
+  
   public double evaluate(double[] arguments) {
+    final Workspace workspace = workspaces.get();
     
-    final double HFACT  = 0.1;
-    
-    // Constrain the axis to be a unit vector.
+    if (projectionIndex == 0) {
+      MomentTensors tensors = getMomentTensors();
+      if (tensors != null)
+        return evaluateShapeIndex(tensors, getPointBlocks().getTotalWeight(), arguments, workspace);
+    } else if (isPolynomialIndex()) {
+      if (!formAxis(arguments, workspace.axis))
+        return -3.4e38;
+      return getPolynomialIndex().evaluate(workspace.axis, null);
+    }
     
-    double sumOfSquares = 0.0;
-    for (int i = 0; i < arguments.length; i++) {
-      double argument = arguments[i];
-      sumOfSquares += argument * argument;
+    if (project(arguments, workspace))
+      return computeIndex(workspace);
+    else
+      return -3.4e38;
+  }
+  
+  /**
+   * Evaluates this function at each of the argument sets, projecting the
+   * points onto up to {@link #BATCH_SIZE} axes per pass over them.
+   */
+  public void evaluate(double[][] argumentSets, double[] values) {
+    if (isPolynomialIndex() || projectionIndex == 0 && getMomentTensors() != null) {
+      for (int s = 0; s < argumentSets.length; s++)
+        values[s] = evaluate(argumentSets[s]);
+      return;
     }
-    if (sumOfSquares <= 1.0) {
-      
-      final double[] axis = new double[points.getDimensionCount()];
-      for (int i = 0; i < arguments.length; i++)
-        axis[i] = arguments[i];
-      axis[arguments.length] = Math.sqrt(1.0 - sumOfSquares);
-      
-      // Project each data point onto the axis, giving a list of values.
-      
-      final double[] values = Projector.project(points, axis);
-      
-      final double mean;
-      final double variance;
-      final double standardDeviation;
-      {
-        double sum = 0.0;
-        double sumsq = 0.0;
-        for (int i = 0; i < values.length; i++) {
-          sum += values[i];
-          sumsq += values[i] * values[i];
+    
+    final Workspace workspace = workspaces.get();
+    workspace.allocateBatch();
+    final double[][] axes = workspace.batchAxes;
+    final int[] members = workspace.batchMembers;
+    
+    try {
+      int count = 0;
+      for (int s = 0; s < argumentSets.length; s++) {
+        if (formAxis(argumentSets[s], axes[count]))
+          members[count++] = s;
+        else
+          values[s] = -3.4e38;
+        
+        if (count == BATCH_SIZE || count > 0 && s == argumentSets.length - 1) {
+          getPointBlocks().project(axes, count, workspace.batchValues, workspace.singleBatchAxes);
+          for (int b = 0; b < count; b++) {
+            workspace.values = workspace.batchValues[b];
+            standardize(workspace);
+            values[members[b]] = computeIndex(workspace);
+          }
+          count = 0;
         }
-        mean = sum / values.length;
-        variance = sumsq / values.length - mean * mean;
-        standardDeviation = Math.sqrt(variance);
       }
+    } finally {
+      workspace.values = workspace.batchValues[0];
+    }
+  }
+  
+  /**
+   * Computes this function's projection index from the standardized values in
+   * <code>workspace</code>.
+   */
+  private double computeIndex(Workspace workspace) {
+    return indexEvaluator.computeIndex(workspace);
+  }
+  
+  /**
+   * Computes one projection index from the standardized values in a
+   * workspace. Each kind of index has its own final subclass, created once
+   * per function by {@link #createIndexEvaluator(int)}, so that the call from
+   * {@link #computeIndex(Workspace)} sees a single class, and once per thread
+   * for {@link #evaluateIndices(int[], double[])}.
+   */
+  private abstract class IndexEvaluator {
+    abstract double computeIndex(Workspace workspace);
+    
+    /** Returns whether {@link #computeIndex(Workspace)} reorders the values. */
+    boolean reordersValues() {
+      return false;
+    }
+  }
+  
+  private final class ShapeIndexEvaluator extends IndexEvaluator {
+    double computeIndex(Workspace workspace) {
+      final double[] values = workspace.values;
+      final double[] weights = workspace.weights;
+      final int n = values.length;
       
-			// if (projectionIndex != MIXED_PROJECTION_INDEX)
-			for (int i = 0; i < values.length; i++)
-			  values[i] = (values[i] - mean) / standardDeviation;
+      double sum3 = 0.0;
+      double sum4 = 0.0;
       
-      if (projectionIndex == 0) {    // "Shape"
-        final int n = values.length;
-        
-        double sum3 = 0.0;
-        double sum4 = 0.0;
-        
+      if (weights == null) {
         for (int i = 0; i < n; i++) {
           double z = values[i];
           double z3 = z * z * z;
           sum3 += z3;
           sum4 += z3 * z;
         }
-        
-        final double skewness = sum3 * n / (n - 1) / (n - 2);
-        final double kurtosis = sum4 * n * (n + 1) / (n - 1) / (n - 2) / (n - 3) -
-                                3 * (n - 1) * (n - 1) / (n - 2) / (n - 3);
-      
-        final double k2 = variance;
-        final double k3 = skewness;
-        final double k4 = kurtosis;
-        
-        final double k2_3 = k2 * k2 * k2;
-        
-        return (k3 * k3 / k2_3 + k4 * k4 / k2_3 / k2 / 4) / 12;
-			} else if (projectionIndex == 1) { // Mixed
-				final int mixcomp = 2;
-				final int iterationCount = 4;
-				MixedModel mixedModel = MixedModel.iterate(mixcomp, values, iterationCount);
-				mixedModel.dump();
-				return -mixedModel.aic;
       } else {
-          
-        // Sort the projected points in ascending order. (Using QuickSort.)
+        for (int i = 0; i < n; i++) {
+          double z = values[i];
+          double z3 = weights[i] * z * z * z;
+          sum3 += z3;
+          sum4 += z3 * z;
+        }
+      }
       
-        Sorter.quickSort(values);
-
-        final double lowerQuantile = values[values.length / 4];
-        final double upperQuantile = values[values.length * 3 / 4];
-        final double interQuantileRange = upperQuantile - lowerQuantile;
+      shapePassCount.incrementAndGet();
+      return computeShapeIndex(workspace.totalWeight, workspace.variance, sum3, sum4);
+    }
+  }
+  
+  private final class MixedIndexEvaluator extends IndexEvaluator {
+    double computeIndex(Workspace workspace) {
+      MixedModel model = fitMixedModel(workspace);
+      return -model.aic;
+    }
+  }
+  
+  private final class FriedmanTukeyIndexEvaluator extends IndexEvaluator {
+    double computeIndex(Workspace workspace) {
+      return computeFriedmanTukeyIndex(workspace);
+    }
+    
+    boolean reordersValues() {
+      return true;
+    }
+  }
+  
+  /**
+   * Evaluates a polynomial index from the projected values rather than by
+   * its own pass over the points, for {@link #evaluateIndices(int[], double[])}.
+   */
+  private final class PolynomialIndexEvaluator extends IndexEvaluator {
+    private final PolynomialIndex index;
+    
+    PolynomialIndexEvaluator(int kind) {
+      index = new PolynomialIndex(kind, POLYNOMIAL_INDEX_ORDER);
+    }
+    
+    double computeIndex(Workspace workspace) {
+      return index.evaluate(workspace.values, workspace.weights, workspace.totalWeight);
+    }
+  }
+  
+  /**
+   * A density index: the integral over the grid of a distance between the
+   * density estimate and the standard normal density.
+   */
+  private final class DensityIndexEvaluator extends IndexEvaluator {
+    private final Distance distance;
+    
+    DensityIndexEvaluator(Distance distance) {
+      this.distance = distance;
+    }
+    
+    double computeIndex(Workspace workspace) {
+      if (workspace.isDegenerate())
+        return 0.0;
+      final double step = estimateDensity(workspace, densityEstimation);
+      return integrate(workspace.fhat, workspace.Phi, workspace.gridSize, step);
+    }
+    
+    boolean reordersValues() {
+      return true;
+    }
+    
+    /**
+     * Integrates the distance between the density estimate <code>fhat</code>
+     * and the standard normal density <code>Phi</code> over the first
+     * <code>gridSize</code> grid points by the quadrature rule; see
+     * {@link #setQuadrature(int)} and {@link Distance#integrate}.
+     */
+    double integrate(double[] fhat, double[] Phi, int gridSize, double step) {
+      return distance.integrate(fhat, Phi, gridSize, step, quadrature == SIMPSON_QUADRATURE);
+    }
+  }
+  
+  /**
+   * Returns a new evaluator for the given projection index.
+   */
+  private IndexEvaluator createIndexEvaluator(int projectionIndex) {
+    switch (projectionIndex) {
+      case 0: return new ShapeIndexEvaluator();
+      case MIXED_PROJECTION_INDEX: return new MixedIndexEvaluator();
+      case 2: case 3: case 4: case FRIEDMANS_PROJECTION_INDEX: case 6: case 7:
+        return new DensityIndexEvaluator(distances[projectionIndex - 2]);
+      case LEGENDRE_PROJECTION_INDEX: return new PolynomialIndexEvaluator(PolynomialIndex.LEGENDRE);
+      case HERMITE_PROJECTION_INDEX: return new PolynomialIndexEvaluator(PolynomialIndex.HERMITE);
+      case FRIEDMAN_TUKEY_PROJECTION_INDEX: return new FriedmanTukeyIndexEvaluator();
+      default: throw new IllegalArgumentException("Unknown projection index: " + projectionIndex);
+    }
+  }
+  
+  /**
+   * Evaluates each of the given projection indices at <code>arguments</code>
+   * from a single projection of the points. The density indices share one
+   * density estimate, so evaluating all the indices costs about as much as
+   * evaluating the most expensive one. This function's own projection index
+   * does not matter.
+   * @return <code>null</code> if <code>arguments</code> lies outside the unit ball.
+   */
+  double[] evaluateIndices(int[] projectionIndices, double[] arguments) {
+    final Workspace workspace = workspaces.get();
+    if (!project(arguments, workspace))
+      return null;
+    
+    final IndexEvaluator[] evaluators = workspace.indexEvaluators;
+    for (int index : projectionIndices)
+      if (evaluators[index] == null)
+        evaluators[index] = createIndexEvaluator(index);
+    final double[] results = new double[projectionIndices.length];
+    
+    // The density indices and the Friedman-Tukey index reorder the values, so
+    // they come after the indices whose rounding depends on the order.
+    
+    for (int k = 0; k < projectionIndices.length; k++) {
+      final IndexEvaluator evaluator = evaluators[projectionIndices[k]];
+      if (!evaluator.reordersValues())
+        results[k] = evaluator.computeIndex(workspace);
+    }
+    
+    double step = 0.0;
+    for (int k = 0; k < projectionIndices.length; k++) {
+      final IndexEvaluator evaluator = evaluators[projectionIndices[k]];
+      if (evaluator instanceof DensityIndexEvaluator) {
+        if (workspace.isDegenerate())
+          continue;
+        if (step == 0.0)
+          step = estimateDensity(workspace, densityEstimation);
+        results[k] = ((DensityIndexEvaluator) evaluator).integrate(workspace.fhat, workspace.Phi,
+                                                                   workspace.gridSize, step);
+      }
+    }
+    
+    for (int k = 0; k < projectionIndices.length; k++) {
+      final IndexEvaluator evaluator = evaluators[projectionIndices[k]];
+      if (evaluator.reordersValues() && !(evaluator instanceof DensityIndexEvaluator))
+        results[k] = evaluator.computeIndex(workspace);
+    }
+    
+    return results;
+  }
+  
+  /**
+   * Fits the Mixed index's model to the values in <code>workspace</code>. If
+   * warm starting, the fit starts from the most recent fit to these points,
+   * and is only followed by random restarts if it degrades; the better fit is
+   * kept.
+   */
+  private MixedModel fitMixedModel(Workspace workspace) {
+    final double[] values = workspace.values;
+    final double[][] buffers = workspace.mixtureBuffers;
+    
+    MixedModel warm = null;
+    final MixedModel previous = mixedModel;
+    if (warmStarting && previous != null) {
+      final int last = MIXED_RESTART_COUNT;
+      if (buffers[last] == null || buffers[last].length < values.length * MIXED_COMPONENT_COUNT)
+        buffers[last] = new double[values.length * MIXED_COMPONENT_COUNT];
+      warm = new MixedModel(values, workspace.weights, buffers[last],
+                            previous.mixprob, previous.mugg, previous.covgg);
       
-        final double bandwidth = 1.06 *
-                                 Math.min(1.0, interQuantileRange / 1.34) *
-                                 Math.pow(values.length, -1d/5);
+      boolean degraded = warm.aic > previous.aic + MIXED_WARM_START_TOLERANCE * Math.abs(previous.aic);
+      for (int j = 0; j < MIXED_COMPONENT_COUNT; j++)
+        degraded |= warm.mixprob[j] < MIXED_MINIMUM_WEIGHT;
+      if (!degraded) {
+        mixedModel = warm;
+        return warm;
+      }
+    }
+    
+    MixedModel model = MixedModel.iterate(MIXED_COMPONENT_COUNT, values, workspace.weights,
+                                          MIXED_RESTART_COUNT, mixedSeed, buffers);
+    if (warm != null && warm.aic < model.aic)
+      model = warm;
+    if (warmStarting)
+      mixedModel = model;
+    return model;
+  }
+  
+  /**
+   * Evaluates this function's density index at <code>arguments</code> both
+   * exactly and with binned density estimation at the current oversampling,
+   * and reports how far the binned results are from the exact ones.
+   * @return <code>null</code> if <code>arguments</code> lies outside the unit ball.
+   */
+  public DensityEstimationAccuracy compareDensityEstimation(double[] arguments) {
+    if (!isDensityIndex())
+      throw new RuntimeException("The " + projectionIndices[projectionIndex] +
+                                 " projection index does not estimate a density.");
+    
+    final Workspace workspace = workspaces.get();
+    if (!project(arguments, workspace))
+      return null;
+    
+    final double binnedIndex = computeDensityIndex(workspace, BINNED_DENSITY_ESTIMATION);
+    final double[] binnedFhat = Arrays.copyOf(workspace.fhat, workspace.gridSize);
+    final double exactIndex = computeDensityIndex(workspace, EXACT_DENSITY_ESTIMATION);
+    
+    double maximumDensity = 0.0;
+    double maximumError = 0.0;
+    for (int j = 0; j < binnedFhat.length; j++) {
+      maximumDensity = Math.max(maximumDensity, workspace.fhat[j]);
+      maximumError = Math.max(maximumError, Math.abs(binnedFhat[j] - workspace.fhat[j]));
+    }
+    
+    return new DensityEstimationAccuracy(binningOversampling, exactIndex, binnedIndex,
+                                         maximumError / maximumDensity);
+  }
+  
+  /**
+   * Evaluates this function's projection index at <code>arguments</code> with
+   * the points in single and in double precision, with the same settings but
+   * without warm starting, and reports how far the single precision results
+   * are from the double precision ones, including the gradient where it is
+   * available.
+   * @return <code>null</code> if <code>arguments</code> lies outside the unit ball.
+   */
+  public SinglePrecisionAccuracy compareSinglePrecision(double[] arguments) {
+    final ProjectionIndexFunction single = copy(true);
+    final ProjectionIndexFunction exact = copy(false);
+    final Workspace singleWorkspace = single.workspaces.get();
+    final Workspace exactWorkspace = exact.workspaces.get();
+    if (!single.project(arguments, singleWorkspace) || !exact.project(arguments, exactWorkspace))
+      return null;
+    
+    double maximumValueError = 0.0;
+    for (int i = 0; i < exactWorkspace.values.length; i++)
+      maximumValueError = Math.max(maximumValueError,
+                                   Math.abs(singleWorkspace.values[i] - exactWorkspace.values[i]));
+    
+    final double singleIndex = single.computeIndex(singleWorkspace);
+    final double exactIndex = exact.computeIndex(exactWorkspace);
+    
+    double relativeGradientError = Double.NaN;
+    if (isGradientAvailable()) {
+      final double[] singleGradient = new double[getArgumentCount()];
+      final double[] exactGradient = new double[getArgumentCount()];
+      single.evaluate(arguments, singleGradient);
+      exact.evaluate(arguments, exactGradient);
+      double errorSumOfSquares = 0.0;
+      double sumOfSquares = 0.0;
+      for (int i = 0; i < exactGradient.length; i++) {
+        final double error = singleGradient[i] - exactGradient[i];
+        errorSumOfSquares += error * error;
+        sumOfSquares += exactGradient[i] * exactGradient[i];
+      }
+      relativeGradientError = Math.sqrt(errorSumOfSquares / sumOfSquares);
+    }
+    
+    return new SinglePrecisionAccuracy(exactIndex, singleIndex, maximumValueError, relativeGradientError);
+  }
+  
+  /**
+   * Returns a new function for the same projection index and points, with
+   * the same settings except for the precision, and without warm starting.
+   */
+  private ProjectionIndexFunction copy(boolean singlePrecision) {
+    final ProjectionIndexFunction copy = new ProjectionIndexFunction(projectionIndex, points);
+    copy.densityEstimation = densityEstimation;
+    copy.binningOversampling = binningOversampling;
+    copy.warmStarting = false;
+    copy.mixedSeed = mixedSeed;
+    copy.gridResolution = gridResolution;
+    copy.quadrature = quadrature;
+    copy.autoRefining = autoRefining;
+    copy.refined = refined;
+    copy.singlePrecision = singlePrecision;
+    return copy;
+  }
+  
+  /**
+   * Computes the Shape index from the variance of the projection and the sums
+   * of the third and fourth powers of the <code>n</code> standardized values,
+   * counting weighted values as many times as their weights.
+   */
+  private static double computeShapeIndex(int n, double variance, double sum3, double sum4) {
+    final double skewness = sum3 * n / (n - 1) / (n - 2);
+    final double kurtosis = sum4 * n * (n + 1) / (n - 1) / (n - 2) / (n - 3) -
+                            3 * (n - 1) * (n - 1) / (n - 2) / (n - 3);
+  
+    final double k2 = variance;
+    final double k3 = skewness;
+    final double k4 = kurtosis;
+    
+    final double k2_3 = k2 * k2 * k2;
+    
+    return (k3 * k3 / k2_3 + k4 * k4 / k2_3 / k2 / 4) / 12;
+  }
+  
+  /**
+   * Computes the Shape index at <code>arguments</code> from the central moments
+   * of the projection, which <code>tensors</code> give without a pass over the
+   * points.
+   */
+  private static double evaluateShapeIndex(MomentTensors tensors, int n, double[] arguments, Workspace workspace) {
+    final double[] axis = workspace.axis;
+    if (!formAxis(arguments, axis))
+      return -3.4e38;
+    
+    final double[] centralMoments = workspace.centralMoments;
+    tensors.project(axis, centralMoments);
+    final double variance = centralMoments[0];
+    final double sum3 = n * centralMoments[1] / (variance * Math.sqrt(variance));
+    final double sum4 = n * centralMoments[2] / (variance * variance);
+    return computeShapeIndex(n, variance, sum3, sum4);
+  }
+  
+  /**
+   * Projects the points onto the axis given by <code>arguments</code> and
+   * standardizes the projected values, storing them and their statistics into
+   * <code>workspace</code>.
+   * @return <code>false</code> if <code>arguments</code> lies outside the unit ball.
+   */
+  private boolean project(double[] arguments, Workspace workspace) {
+    final double[] axis = workspace.axis;
+    if (!formAxis(arguments, axis))
+      return false;
+    
+    // Project each data point onto the axis, giving a list of values.
+    
+    getPointBlocks().project(axis, workspace.values, workspace.singleAxis);
+    standardize(workspace);
+    return true;
+  }
+  
+  /**
+   * Stores the unit axis whose first coordinates are <code>arguments</code>
+   * and whose last coordinate is positive into <code>axis</code>.
+   * @return <code>false</code> if <code>arguments</code> lies outside the unit ball.
+   */
+  private static boolean formAxis(double[] arguments, double[] axis) {
+    
+    // Constrain the axis to be a unit vector.
+    
+    double sumOfSquares = 0.0;
+    for (int i = 0; i < arguments.length; i++) {
+      double argument = arguments[i];
+      sumOfSquares += argument * argument;
+    }
+    if (!(sumOfSquares <= 1.0))
+      return false;
+    
+    for (int i = 0; i < arguments.length; i++)
+      axis[i] = arguments[i];
+    axis[arguments.length] = Math.sqrt(1.0 - sumOfSquares);
+    return true;
+  }
+  
+  /**
+   * Standardizes the projected values in <code>workspace</code>, which are in
+   * point order, and stores their statistics and the weights of the points
+   * into it. Weighted values count as many times as their weights.
+   */
+  private void standardize(Workspace workspace) {
+    final double[] values = workspace.values;
+    final PointBlocks blocks = getPointBlocks();
+    final double[] pointWeights = blocks.getWeights();
+    final double[] weights;
+    if (pointWeights == null)
+      weights = null;
+    else {
+      if (workspace.weights == null)
+        workspace.weights = new double[values.length];
+      weights = workspace.weights;
+      System.arraycopy(pointWeights, 0, weights, 0, values.length);
+    }
+    workspace.totalWeight = blocks.getTotalWeight();
+    
+    final double mean;
+    final double variance;
+    final double standardDeviation;
+    double minimum = Double.POSITIVE_INFINITY;
+    double maximum = Double.NEGATIVE_INFINITY;
+    {
+      double sum = 0.0;
+      double sumsq = 0.0;
+      if (weights == null) {
+        for (int i = 0; i < values.length; i++) {
+          sum += values[i];
+          sumsq += values[i] * values[i];
+          minimum = Math.min(minimum, values[i]);
+          maximum = Math.max(maximum, values[i]);
+        }
+      } else {
+        for (int i = 0; i < values.length; i++) {
+          final double weighted = weights[i] * values[i];
+          sum += weighted;
+          sumsq += weighted * values[i];
+          minimum = Math.min(minimum, values[i]);
+          maximum = Math.max(maximum, values[i]);
+        }
+      }
+      mean = sum / workspace.totalWeight;
+      variance = sumsq / workspace.totalWeight - mean * mean;
+      standardDeviation = Math.sqrt(variance);
+    }
+    
+		// if (projectionIndex != MIXED_PROJECTION_INDEX)
+		for (int i = 0; i < values.length; i++)
+		  values[i] = (values[i] - mean) / standardDeviation;
+    
+    workspace.variance = variance;
+    workspace.minimum = (minimum - mean) / standardDeviation;
+    workspace.maximum = (maximum - mean) / standardDeviation;
+  }
+  
+  /**
+   * Computes this function's density index from the standardized values in
+   * <code>workspace</code>, estimating the density into the workspace.
+   */
+  private double computeDensityIndex(Workspace workspace, int densityEstimation) {
+    final double step = estimateDensity(workspace, densityEstimation);
+    return ((DensityIndexEvaluator) indexEvaluator).integrate(workspace.fhat, workspace.Phi,
+                                                              workspace.gridSize, step);
+  }
+  
+  /**
+   * Returns half the number of grid intervals for the given extent of the
+   * grid and kernel bandwidth: the grid resolution times the number of
+   * bandwidths in <code>xl</code>, within bounds. While the grid is coarse,
+   * the resolution is multiplied by {@value #COARSE_GRID_RESOLUTION_FRACTION}.
+   */
+  private int getGridHalfSize(double xl, double bandwidth) {
+    final double resolution = autoRefining && !refined ?
+                              gridResolution * COARSE_GRID_RESOLUTION_FRACTION : gridResolution;
+    final double m = Math.ceil(resolution * xl / bandwidth);
+    if (!(m > MINIMUM_GRID_HALF_SIZE))
+      return MINIMUM_GRID_HALF_SIZE;
+    return (int) Math.min(m, MAXIMUM_GRID_HALF_SIZE);
+  }
+  
+  /**
+   * Estimates the density of the standardized values in <code>workspace</code>
+   * on the grid, reordering the values, and stores it, the standard normal
+   * density on the grid and the number of grid points into the workspace.
+   * @return The step of the grid.
+   */
+  private double estimateDensity(Workspace workspace, int densityEstimation) {
+    final double[] values = workspace.values;
+    final double[] weights = workspace.weights;
+    
+    // Select the quartiles; this reorders the values.
+    
+    final double bandwidth = selectBandwidth(values, weights, workspace);
+    
+    final double xl = Math.max(Math.abs(workspace.minimum), Math.abs(workspace.maximum));
+    final int m = getGridHalfSize(xl, bandwidth);
+    final int M = 2 * m + 1;
+    final double step = xl / m;
+    // As in the original method, the grid starts half a step below -xl.
+    final double x0 = -xl - step / 2;
+    workspace.allocateGrid(M);
+    final double[] fhat = workspace.fhat;
+    
+    if (densityEstimation == BINNED_DENSITY_ESTIMATION) {
+      final BinnedDensityEstimator estimator = workspace.getBinnedDensityEstimator(M, binningOversampling);
+      estimator.bin(values, weights, values.length, x0, step, M);
+      estimator.estimate(bandwidth, fhat);
+    } else {
       
-        final double xl = Math.max(Math.abs(values[0]),
-                                   Math.abs(values[values.length - 1]));
+      // Add each value's kernel to the grid points within four bandwidths of it.
       
-        final int m = 100;
-        final int M = 2 * m + 1;
-        final double[] fhat = new double[M];
-        final double[] Phi = new double[M];
-        final double step = xl / m;
-        final double x0 = -xl - step / 2;
+      for (int j = 0; j < M; j++)
+        fhat[j] = 0.0;
       
-        {
-          double x = x0;
-          int i0 = 0;
-          
-          for (int j = 0; j < M; j++) {
-            
-            while (i0 < values.length && values[i0] < x - 4 * bandwidth)
-              i0++;
-            
-            double sum = 0.0;
-            for (int i = i0; i < values.length && values[i] <= x + 4 * bandwidth; i++)
-              sum += kernel((x - values[i]) / bandwidth);
-            
-            fhat[j] = sum / bandwidth;
-            Phi[j] = kernel(x);
-            
-            x += step;
-            
-          }
+      final double reach = 4 * bandwidth;
+      final double delta = step / bandwidth;
+      final double decay = Math.exp(-delta * delta);
+      final double[] row = workspace.kernelRow;
+      for (int i = 0; i < values.length; i++) {
+        final double value = values[i];
+        final int first = Math.max(0, (int) Math.ceil((value - reach - x0) / step));
+        final int last = Math.min(M - 1, (int) Math.floor((value + reach - x0) / step));
+        final int count = last - first + 1;
+        kernelRow((x0 + first * step - value) / bandwidth, delta, decay, count, row);
+        if (weights == null) {
+          for (int t = 0; t < count; t++)
+            fhat[first + t] += row[t];
+        } else {
+          final double weight = weights[i];
+          for (int t = 0; t < count; t++)
+            fhat[first + t] += weight * row[t];
         }
+      }
       
-        final Distance distance = distances[projectionIndex - 2];
-        final double[] integrand = new double[M];
-        for (int j = 0; j < M; j++)
-          integrand[j] = distance.evaluate(fhat[j], Phi[j]);
-      
-        return computeIntegral(M, step, integrand);
+      for (int j = 0; j < M; j++)
+        fhat[j] /= bandwidth;
+    }
+    
+    final double[] Phi = workspace.Phi;
+    {
+      double x = x0;
+      for (int j = 0; j < M; j++) {
+        Phi[j] = kernel(x);
+        x += step;
       }
-    } else
+    }
+    
+    return step;
+  }
+  
+  /**
+   * Selects the quartiles of <code>values</code>, reordering them along with
+   * their <code>weights</code> if these are not <code>null</code>, stores
+   * them into <code>workspace</code> and returns the kernel bandwidth derived
+   * from the interquartile range.
+   */
+  private static double selectBandwidth(double[] values, double[] weights, Workspace workspace) {
+    final int n = workspace.totalWeight;
+    final int lowerRank = n / 4;
+    final int upperRank = n * 3 / 4;
+    final double lowerQuantile;
+    final double upperQuantile;
+    if (weights == null) {
+      lowerQuantile = Sorter.select(values, 0, values.length, lowerRank);
+      upperQuantile = upperRank == lowerRank ? lowerQuantile :
+                      Sorter.select(values, lowerRank + 1, values.length, upperRank);
+    } else {
+      lowerQuantile = Sorter.select(values, weights, 0, values.length, lowerRank);
+      upperQuantile = Sorter.select(values, weights, 0, values.length, upperRank);
+    }
+    final double interQuantileRange = upperQuantile - lowerQuantile;
+    
+    workspace.lowerQuartile = lowerQuantile;
+    workspace.upperQuartile = upperQuantile;
+    return 1.06 *
+           Math.min(1.0, interQuantileRange / 1.34) *
+           Math.pow(n, -1d/5);
+  }
+  
+  /**
+   * Returns whether {@link #evaluate(double[], double[])} can compute the
+   * gradient, which it can for the density indices with exact density
+   * estimation and for the polynomial indices.
+   */
+  public boolean isGradientAvailable() {
+    return isDensityIndex() && densityEstimation == EXACT_DENSITY_ESTIMATION ||
+           isPolynomialIndex();
+  }
+  
+  /**
+   * Evaluates this function and its gradient at <code>arguments</code>, at
+   * about the cost of three evaluations.
+   * <p>The gradient is exact for the index as computed, including the
+   * dependence of the grid on the extreme values and of the bandwidth on the
+   * quartiles, but not the truncation of the kernel at four bandwidths.
+   * Outside the unit ball the gradient is zero. For the polynomial indices the
+   * gradient is exact and costs about one more evaluation.</p>
+   * @exception RuntimeException If the gradient is not available; see
+   * {@link #isGradientAvailable()}.
+   */
+  public double evaluate(double[] arguments, double[] gradient) {
+    if (!isGradientAvailable())
+      throw new RuntimeException("The gradient of the " + projectionIndices[projectionIndex] +
+                                 " projection index is not available.");
+    
+    final Workspace workspace = workspaces.get();
+    if (isPolynomialIndex()) {
+      if (!formAxis(arguments, workspace.axis)) {
+        for (int i = 0; i < gradient.length; i++)
+          gradient[i] = 0.0;
+        return -3.4e38;
+      }
+      final double index = getPolynomialIndex().evaluate(workspace.axis, workspace.axisGradient);
+      mapAxisGradient(workspace.axis, workspace.axisGradient, 1.0, gradient);
+      return index;
+    }
+    
+    if (!project(arguments, workspace)) {
+      for (int i = 0; i < gradient.length; i++)
+        gradient[i] = 0.0;
       return -3.4e38;
+    }
+    if (workspace.isDegenerate()) {
+      for (int i = 0; i < gradient.length; i++)
+        gradient[i] = 0.0;
+      return 0.0;
+    }
+    workspace.allocateGradient();
+    
+    final double[] values = workspace.values;
+    final double[] weights = workspace.weights;
+    final int n = values.length;
+    
+    // Select the quartiles from a copy, so that the values stay in point order.
+    
+    System.arraycopy(values, 0, workspace.sortedValues, 0, n);
+    if (weights != null)
+      System.arraycopy(weights, 0, workspace.sortedWeights, 0, n);
+    final double bandwidth = selectBandwidth(workspace.sortedValues, workspace.sortedWeights, workspace);
+    final double reach = 4 * bandwidth;
+    
+    // The grid size is piecewise constant in xl and the bandwidth, so it
+    // contributes nothing to the gradient.
+    
+    final double xl = Math.max(Math.abs(workspace.minimum), Math.abs(workspace.maximum));
+    final int m = getGridHalfSize(xl, bandwidth);
+    final int M = 2 * m + 1;
+    final double step = xl / m;
+    final double x0 = -xl - step / 2;
+    workspace.allocateGrid(M);
+    
+    // Add each value's kernel to the grid points within four bandwidths of it,
+    // along with the moments needed for the derivatives with respect to the
+    // grid and the bandwidth.
+    
+    final double[] fhat = workspace.fhat;
+    final double[] moment1 = workspace.kernelMoment1;
+    final double[] moment2 = workspace.kernelMoment2;
+    for (int j = 0; j < M; j++) {
+      fhat[j] = 0.0;
+      moment1[j] = 0.0;
+      moment2[j] = 0.0;
+    }
+    
+    final double delta = step / bandwidth;
+    final double decay = Math.exp(-delta * delta);
+    final double[] row = workspace.kernelRow;
+    for (int i = 0; i < n; i++) {
+      final double value = values[i];
+      final int first = Math.max(0, (int) Math.ceil((value - reach - x0) / step));
+      final int last = Math.min(M - 1, (int) Math.floor((value + reach - x0) / step));
+      final int count = last - first + 1;
+      final double weight = weights == null ? 1.0 : weights[i];
+      kernelRow((x0 + first * step - value) / bandwidth, delta, decay, count, row);
+      for (int t = 0; t < count; t++) {
+        final int j = first + t;
+        final double u = (x0 + j * step - value) / bandwidth;
+        final double k = weight * row[t];
+        fhat[j] += k;
+        moment1[j] += u * k;
+        moment2[j] += (u * u - 1) * k;
+      }
+    }
+    
+    for (int j = 0; j < M; j++)
+      fhat[j] /= bandwidth;
+    
+    final double[] Phi = workspace.Phi;
+    {
+      double x = x0;
+      for (int j = 0; j < M; j++) {
+        Phi[j] = kernel(x);
+        x += step;
+      }
+    }
+    
+    final Distance distance = distances[projectionIndex - 2];
+    final double index = ((DensityIndexEvaluator) indexEvaluator).integrate(fhat, Phi, M, step);
+    
+    // The index is sum(weight[j] * D(fhat[j], Phi[j])), with quadrature
+    // weights and grid points x0 + j * step proportional to xl.
+    
+    final double h2 = bandwidth * bandwidth;
+    final double[] G = workspace.gradientWeight;
+    double dIndexdXl = index / xl;
+    double dIndexdBandwidth = 0.0;
+    {
+      double x = x0;
+      for (int j = 0; j < M; j++) {
+        final double weight = getQuadratureWeight(j, M, step);
+        G[j] = weight * distance.derivativeWithRespectToFhat(fhat[j], Phi[j]);
+        dIndexdXl -= (weight * distance.derivativeWithRespectToPhi(fhat[j], Phi[j]) * x * Phi[j] +
+                      G[j] * moment1[j] / h2) * x / xl;
+        dIndexdBandwidth += G[j] * moment2[j] / h2;
+        x += step;
+      }
+    }
+    
+    // The derivative with respect to each value, through its kernel, which
+    // for a weighted value is the sum over its copies.
+    
+    final double[] g = workspace.valueGradient;
+    for (int i = 0; i < n; i++) {
+      final double value = values[i];
+      final int first = Math.max(0, (int) Math.ceil((value - reach - x0) / step));
+      final int last = Math.min(M - 1, (int) Math.floor((value + reach - x0) / step));
+      final int count = last - first + 1;
+      kernelRow((x0 + first * step - value) / bandwidth, delta, decay, count, row);
+      double sum = 0.0;
+      for (int t = 0; t < count; t++) {
+        final int j = first + t;
+        final double u = (x0 + j * step - value) / bandwidth;
+        sum += G[j] * u * row[t];
+      }
+      g[i] = weights == null ? sum / h2 : weights[i] * sum / h2;
+    }
+    
+    // Through xl, the value of largest magnitude, and through the bandwidth,
+    // the quartiles.
+    
+    if (Math.abs(workspace.minimum) >= Math.abs(workspace.maximum))
+      g[indexOf(values, workspace.minimum)] -= dIndexdXl;
+    else
+      g[indexOf(values, workspace.maximum)] += dIndexdXl;
+    
+    if (workspace.upperQuartile - workspace.lowerQuartile < 1.34) {
+      final double dBandwidthdRange = 1.06 / 1.34 * Math.pow(workspace.totalWeight, -1d/5);
+      g[indexOf(values, workspace.upperQuartile)] += dIndexdBandwidth * dBandwidthdRange;
+      g[indexOf(values, workspace.lowerQuartile)] -= dIndexdBandwidth * dBandwidthdRange;
+    }
+    
+    // Through the standardization: the gradient with respect to the axis is
+    // sum(c[i] * x[i]) / sigma with c[i] = g[i] - mean(g) - mean(g * z) * z[i],
+    // the means taken over the total weight and the last two terms multiplied
+    // by the weight of value i.
+    
+    double sumG = 0.0;
+    double sumGZ = 0.0;
+    for (int i = 0; i < n; i++) {
+      sumG += g[i];
+      sumGZ += g[i] * values[i];
+    }
+    final double meanG = sumG / workspace.totalWeight;
+    final double meanGZ = sumGZ / workspace.totalWeight;
+    if (weights == null) {
+      for (int i = 0; i < n; i++)
+        g[i] = g[i] - meanG - meanGZ * values[i];
+    } else {
+      for (int i = 0; i < n; i++)
+        g[i] = g[i] - weights[i] * (meanG + meanGZ * values[i]);
+    }
+    
+    final double[] axisGradient = workspace.axisGradient;
+    getPointBlocks().accumulate(g, axisGradient);
+    
+    mapAxisGradient(workspace.axis, axisGradient, Math.sqrt(workspace.variance), gradient);
+    return index;
   }
   
-  private double computeIntegral(int n, double step, double[] f) {
-    double sum = 0.0;
-    for (int i = 1; i < n - 1; i++)
-      sum += f[i];
-    return (sum + (f[0] + f[n - 1]) / 2) * step;
+  /**
+   * Stores the gradient with respect to the arguments into <code>gradient</code>,
+   * given the gradient with respect to the axis times <code>scale</code>.
+   */
+  private static void mapAxisGradient(double[] axis, double[] axisGradient, double scale, double[] gradient) {
+    
+    // Through the last axis coordinate, sqrt(1 - sum(arguments[i]^2)). On the
+    // boundary of the unit ball its derivative is infinite, so that path is
+    // left out there.
+    
+    final int last = gradient.length;
+    for (int i = 0; i < last; i++)
+      gradient[i] = (axis[last] == 0.0 ? axisGradient[i] :
+                     axisGradient[i] - axisGradient[last] * axis[i] / axis[last]) / scale;
+  }
+  
+  /**
+   * Returns the weight of grid point <code>j</code> of <code>gridSize</code>
+   * in the quadrature rule.
+   */
+  private double getQuadratureWeight(int j, int gridSize, double step) {
+    if (quadrature == SIMPSON_QUADRATURE)
+      return (j == 0 || j == gridSize - 1 ? 1 : j % 2 == 1 ? 4 : 2) * step / 3;
+    return j == 0 || j == gridSize - 1 ? step / 2 : step;
+  }
+  
+  private static int indexOf(double[] values, double value) {
+    for (int i = 0; i < values.length; i++)
+      if (values[i] == value)
+        return i;
+    throw new RuntimeException("Value not found.");
   }
   
+  private static final double NORMAL_DENSITY_SCALE = 1 / Math.sqrt(2 * Math.PI);
+  
   private static double kernel(double z) {
-    return 1 / Math.sqrt(2 * Math.PI) * Math.exp(z * z / -2);
+    return NORMAL_DENSITY_SCALE * Math.exp(z * z / -2);
+  }
+  
+  /**
+   * Stores <code>kernel(u0 + t * delta)</code> into <code>row[t]</code> for
+   * <code>t</code> less than <code>count</code>, with only two calls to
+   * <code>Math.exp</code>: successive kernel values differ by the factor
+   * <code>exp(-u delta - delta^2 / 2)</code>, which itself changes by the
+   * factor <code>decay = exp(-delta^2)</code> from one grid point to the next.
+   * The recurrence loses about one rounding error per step.
+   */
+  private static void kernelRow(double u0, double delta, double decay, int count, double[] row) {
+    double k = kernel(u0);
+    double ratio = Math.exp(-u0 * delta - delta * delta / 2);
+    for (int t = 0; t < count; t++) {
+      row[t] = k;
+      k *= ratio;
+      ratio *= decay;
+    }
+  }
+  
+  /**
+   * Computes the Friedman-Tukey index from the standardized values in
+   * <code>workspace</code>, reordering them. Weighted values are sorted in
+   * either mode, to trim them by weight.
+   */
+  private double computeFriedmanTukeyIndex(Workspace workspace) {
+    final double[] values = workspace.values;
+    final double[] weights = workspace.weights;
+    final double n = workspace.totalWeight;
+    final double horizon = FRIEDMAN_TUKEY_HORIZON;
+    
+    final double spread;
+    final double density;
+    if (weights != null) {
+      Sorter.sort(values, weights);
+      spread = calculateTrimmedStandardDeviation(values, weights, workspace.totalWeight);
+      density = densityEstimation == BINNED_DENSITY_ESTIMATION ?
+                calculateBinnedDensity(values, weights, horizon, workspace.minimum, workspace.maximum,
+                                       FRIEDMAN_TUKEY_BINS_PER_HORIZON * binningOversampling, workspace) :
+                calculateDensity(values, weights, horizon);
+    } else if (densityEstimation == BINNED_DENSITY_ESTIMATION) {
+      spread = selectTrimmedStandardDeviation(values);
+      density = calculateBinnedDensity(values, null, horizon, workspace.minimum, workspace.maximum,
+                                       FRIEDMAN_TUKEY_BINS_PER_HORIZON * binningOversampling, workspace);
+    } else {
+      Sorter.sort(values);
+      spread = calculateTrimmedStandardDeviation(values);
+      density = calculateDensity(values, horizon);
+    }
+    return spread * density / n / n;
   }
   
   private static double calculateTrimmedStandardDeviation(double[] values) {
@@ -258,6 +1619,69 @@ public class ProjectionIndexFunction implements Function {
     return Math.sqrt(sumsq / nleft - q * q);
   }
   
+  /**
+   * Computes the trimmed standard deviation of the sorted list
+   * <code>values</code> as {@link #calculateTrimmedStandardDeviation(double[])},
+   * counting each value as many times as its weight, of which there are
+   * <code>n</code> in all.
+   */
+  private static double calculateTrimmedStandardDeviation(double[] values, double[] weights, int n) {
+    final double TFACT  = 0.1;
+    
+    int ntrim = (int) (TFACT * n);
+    double nleft = n - 2.0 * ntrim;
+    double sum = 0.0;
+    double sumsq = 0.0;
+    double position = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      
+      // The copies of value i occupy the positions from position on; keep
+      // those between the trimmed ends.
+      
+      double kept = Math.min(position + weights[i], n - ntrim) - Math.max(position, ntrim);
+      position += weights[i];
+      if (kept > 0) {
+        double value = values[i];
+        sum += kept * value;
+        sumsq += kept * value * value;
+      }
+    }
+    double q = sum / nleft;
+    return Math.sqrt(sumsq / nleft - q * q);
+  }
+  
+  /**
+   * Computes the same trimmed standard deviation as
+   * {@link #calculateTrimmedStandardDeviation(double[])} without sorting
+   * <code>values</code>, by selecting the trimmed order statistics; reorders
+   * <code>values</code>.
+   */
+  private static double selectTrimmedStandardDeviation(double[] values) {
+    final double TFACT  = 0.1;
+    
+    int ntrim = (int) (TFACT * values.length);
+    int first = ntrim;
+    int last = values.length - ntrim - 1;
+    
+    // Afterwards no element before first is greater than an element from
+    // first to last, and none after last is less.
+    
+    Sorter.select(values, 0, values.length, first);
+    if (last > first)
+      Sorter.select(values, first + 1, values.length, last);
+    
+    double nleft = values.length - 2.0 * ntrim;
+    double sum = 0.0;
+    double sumsq = 0.0;
+    for (int i = first; i <= last; i++) {
+      double value = values[i];
+      sum += value;
+      sumsq += value * value;
+    }
+    double q = sum / nleft;
+    return Math.sqrt(sumsq / nleft - q * q);
+  }
+  
   private static double calculateDensity(double[] list, double horzn) {
     
     /* Compute the weighted nearness of list items within the horizon
@@ -267,45 +1691,137 @@ public class ProjectionIndexFunction implements Function {
      * for all possible pairings of points.
      */
     
-    // First, set up the vector of discrete "values" of "list".
+    // Slide a window over the sorted list, keeping the number and the sum of
+    // the items after item i that lie within the horizon of it, so that the
+    // weights of the pairs of item i with the later items add up to
+    // count * (horzn + list[i]) - sum.
     
-    double[] value = new double[list.length];
-    int[] noccur = new int[list.length];
+    final int n = list.length;
+    double dense = 0.0;
+    double sum = 0.0;
+    int end = 1;
+    for (int i = 0; i < n; i++) {
+      if (end <= i) {
+        end = i + 1;
+        sum = 0.0;
+      } else if (i > 0)
+        sum -= list[i];
+      while (end < n && list[end] - list[i] <= horzn)
+        sum += list[end++];
+      final int count = end - i - 1;
+      dense += count * (horzn + list[i]) - sum;
+    }
     
-    int count = 0;
-    double curval = list[0];
-    value[0] = list[0];
-    noccur[0] = 1;
+    return 2.0 * dense + n * horzn;
+  }
+  
+  /**
+   * Computes {@link #calculateDensity(double[], double)} for a sorted list
+   * of weighted items, counting each item as many times as its weight: the
+   * window keeps the weight and the weighted sum of the items in it, and the
+   * copies of an item pair with each other at distance zero.
+   */
+  private static double calculateDensity(double[] list, double[] weights, double horzn) {
+    final int n = list.length;
+    double dense = 0.0;
+    double selfWeight = 0.0;
+    double count = 0.0;
+    double sum = 0.0;
+    int end = 1;
+    for (int i = 0; i < n; i++) {
+      if (end <= i) {
+        end = i + 1;
+        count = 0.0;
+        sum = 0.0;
+      } else if (i > 0) {
+        count -= weights[i];
+        sum -= weights[i] * list[i];
+      }
+      while (end < n && list[end] - list[i] <= horzn) {
+        count += weights[end];
+        sum += weights[end] * list[end];
+        end++;
+      }
+      dense += weights[i] * (count * (horzn + list[i]) - sum);
+      selfWeight += weights[i] * weights[i];
+    }
+    
+    return 2.0 * dense + selfWeight * horzn;
+  }
+  
+  /**
+   * Approximates {@link #calculateDensity(double[], double)} in time linear in
+   * the number of values, without sorting them: the values, which lie between
+   * <code>minimum</code> and <code>maximum</code>, are binned linearly onto a
+   * grid with <code>binsPerHorizon</code> bins per horizon, and the weights
+   * are summed over the pairs of bins. Values with <code>weights</code>, if
+   * not <code>null</code>, are binned as that many values.
+   */
+  private static double calculateBinnedDensity(double[] values, double[] weights, double horzn,
+                                               double minimum, double maximum, int binsPerHorizon,
+                                               Workspace workspace) {
+    final double step = horzn / binsPerHorizon;
+    final int binCount = (int) Math.ceil((maximum - minimum) / step) + 2;
+    if (workspace.pairCounts.length < binCount)
+      workspace.pairCounts = new double[binCount];
+    final double[] counts = workspace.pairCounts;
+    for (int t = 0; t < binCount; t++)
+      counts[t] = 0.0;
     
-    for (int i = 1; i < list.length; i++) {
-      if (list[i] != curval) {
-        count++;
-        value[count] = list[i];
-        curval = list[i];
-        noccur[count] = 1;
+    for (int i = 0; i < values.length; i++) {
+      double position = (values[i] - minimum) / step;
+      int t = Math.min((int) position, binCount - 2);
+      double fraction = position - t;
+      if (weights == null) {
+        counts[t] += 1.0 - fraction;
+        counts[t + 1] += fraction;
       } else {
-        noccur[count]++;
+        counts[t] += weights[i] * (1.0 - fraction);
+        counts[t + 1] += weights[i] * fraction;
       }
     }
     
+    // Each pair of values is counted in both orders, and each value with itself.
+    
     double dense = 0.0;
-    for (int i = 0; i < count; i++) {
-      for (int j = i + 1; j <= count; j++) {
-        double dist = value[j] - value[i];
-        if (dist > horzn)
-          break;
-        dense += noccur[i] * noccur[j] * (horzn - dist);
-      }
+    for (int t = 0; t < binCount; t++) {
+      final double count = counts[t];
+      if (count == 0.0)
+        continue;
+      double near = 0.0;
+      for (int s = 1; s < binsPerHorizon && t + s < binCount; s++)
+        near += counts[t + s] * (horzn - s * step);
+      dense += count * (count * horzn + 2.0 * near);
     }
-    for (int i = 0; i <= count; i++)
-      dense += 0.5 * (noccur[i] * (noccur[i] - 1)) * horzn;
-    
-    return 2.0 * dense + list.length * horzn;
+    return dense;
   }
 }
 
-interface Distance {
-  double evaluate(double fhat, double phi);
+abstract class Distance {
+  abstract double evaluate(double fhat, double phi);
+  abstract double derivativeWithRespectToFhat(double fhat, double phi);
+  abstract double derivativeWithRespectToPhi(double fhat, double phi);
+  
+  /**
+   * Integrates the distance between <code>fhat</code> and <code>Phi</code>
+   * over the first <code>gridSize</code> grid points, an odd number, by
+   * Simpson's rule or else the trapezoidal rule.
+   * <p>Each distance has its own copy of the loop, calling its own
+   * {@link #evaluate(double, double)}, so that the call is bound to a single
+   * class and inlined even when several distances are in use in the same
+   * JVM.</p>
+   */
+  abstract double integrate(double[] fhat, double[] Phi, int gridSize, double step, boolean simpson);
+  
+  /**
+   * Returns the integral given the sum of the distances at the two ends, at
+   * the odd and at the even interior grid points.
+   */
+  static double combine(double endSum, double oddSum, double evenSum, double step, boolean simpson) {
+    return simpson ?
+           (endSum + 4 * oddSum + 2 * evenSum) * step / 3 :
+           (endSum / 2 + oddSum + evenSum) * step;
+  }
 }
 
 interface TabularFunction {
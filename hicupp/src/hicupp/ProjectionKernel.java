@@ -0,0 +1,23 @@
+package hicupp;
+
+/**
+ * Projects a block of points, stored column by column, onto an axis.
+ */
+interface ProjectionKernel {
+  /**
+   * For each <code>k</code> less than <code>count</code>, stores the dot product
+   * of point <code>k</code> of the block and <code>axis</code> into
+   * <code>values[valuesOffset + k]</code>. Coordinate <code>i</code> of point
+   * <code>k</code> is at <code>coordinates[offset + i * stride + k]</code>.
+   */
+  void project(double[] coordinates, int offset, int stride, int count, int dimensionCount,
+               double[] axis, double[] values, int valuesOffset);
+
+  /**
+   * Like {@link #project(double[], int, int, int, int, double[], double[], int)},
+   * but with the coordinates and the axis in single precision. Each dot
+   * product is computed in single precision and stored widened to double.
+   */
+  void project(float[] coordinates, int offset, int stride, int count, int dimensionCount,
+               float[] axis, double[] values, int valuesOffset);
+}
@@ -1,16 +1,69 @@
 package hicupp;
 
 public class Projector {
+  private static final ProjectionKernel kernel = createKernel();
+
+  /**
+   * Uses the Vector API kernel if the <code>jdk.incubator.vector</code> module
+   * is present (for example, through <code>--add-modules jdk.incubator.vector</code>)
+   * and the <code>hicupp.projector.scalar</code> system property is not set,
+   * and the scalar kernel otherwise.
+   */
+  private static ProjectionKernel createKernel() {
+    if (!Boolean.getBoolean("hicupp.projector.scalar") &&
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (ProjectionKernel) Class.forName("hicupp.VectorProjectionKernel")
+                                       .getDeclaredConstructor()
+                                       .newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // Fall back to the scalar kernel.
+      }
+    }
+    return new ScalarProjectionKernel();
+  }
+
+  static ProjectionKernel getKernel() {
+    return kernel;
+  }
+
+  /**
+   * Returns a description of the kernel used to project {@link PointBlocks}.
+   */
+  public static String getKernelName() {
+    return kernel.toString();
+  }
+
   public static double[] project(SetOfPoints points, double[] axis) {
     double[] values = new double[points.getPointCount()];
+    project(points, axis, values);
+    return values;
+  }
+
+  /**
+   * Projects the points onto the axis, storing the projected values into
+   * <code>values</code>, which must hold at least as many elements as there are points.
+   * Uses the set's own projection, {@link SetOfPoints#project(double[], double[])}.
+   */
+  public static void project(SetOfPoints points, double[] axis, double[] values) {
+    points.project(axis, values);
+  }
+
+  /**
+   * Returns the weights of the points, in the order in which
+   * {@link #project(SetOfPoints, double[])} stores their values, or
+   * <code>null</code> if the points are unweighted.
+   */
+  public static double[] getWeights(SetOfPoints points) {
+    if (!points.isWeighted())
+      return null;
+    final int pointCount = points.getPointCount();
+    final double[] weights = new double[pointCount];
     PointIterator iterator = points.createIterator();
-    for (int k = 0; k < points.getPointCount(); k++) {
+    for (int k = 0; k < pointCount; k++) {
       iterator.next();
-      double value = 0.0;
-      for (int i = 0; i < points.getDimensionCount(); i++)
-        value += iterator.getCoordinate(i) * axis[i];
-      values[k] = value;
+      weights[k] = iterator.getWeight();
     }
-    return values;
+    return weights;
   }
 }
@@ -0,0 +1,33 @@
+package hicupp;
+
+/**
+ * The projection kernel used if the Vector API is not available.
+ */
+final class ScalarProjectionKernel implements ProjectionKernel {
+  public void project(double[] coordinates, int offset, int stride, int count, int dimensionCount,
+                      double[] axis, double[] values, int valuesOffset) {
+    final double a0 = axis[0];
+    for (int k = 0; k < count; k++)
+      values[valuesOffset + k] = coordinates[offset + k] * a0;
+    for (int i = 1; i < dimensionCount; i++) {
+      final int column = offset + i * stride;
+      final double a = axis[i];
+      for (int k = 0; k < count; k++)
+        values[valuesOffset + k] += coordinates[column + k] * a;
+    }
+  }
+
+  public void project(float[] coordinates, int offset, int stride, int count, int dimensionCount,
+                      float[] axis, double[] values, int valuesOffset) {
+    for (int k = 0; k < count; k++) {
+      float value = coordinates[offset + k] * axis[0];
+      for (int i = 1; i < dimensionCount; i++)
+        value += coordinates[offset + i * stride + k] * axis[i];
+      values[valuesOffset + k] = value;
+    }
+  }
+
+  public String toString() {
+    return "Scalar";
+  }
+}
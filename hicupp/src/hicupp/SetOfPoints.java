@@ -4,4 +4,54 @@ public interface SetOfPoints {
   int getDimensionCount();
   int getPointCount();
   PointIterator createIterator();
+
+  /**
+   * Returns whether the points carry weights other than one; see
+   * {@link PointIterator#getWeight()}. The projection indices and the class
+   * statistics then treat each point as that many copies of it, so a set with
+   * many repeated points, such as the colors of an image, can be given as its
+   * distinct points and their counts. <code>false</code> by default.
+   */
+  default boolean isWeighted() {
+    return false;
+  }
+
+  /**
+   * Returns the array that holds the coordinates of the points, without
+   * copying it, or <code>null</code> if there is none; coordinate
+   * <code>i</code> of point <code>k</code> is at index
+   * <code>k * {@link #getCoordinateStride()} + i</code>. <code>null</code>
+   * by default.
+   */
+  default double[] getCoordinateArray() {
+    return null;
+  }
+
+  /**
+   * Returns the distance between successive points in
+   * {@link #getCoordinateArray()}; the dimension count by default.
+   */
+  default int getCoordinateStride() {
+    return getDimensionCount();
+  }
+
+  /**
+   * Projects the points onto <code>axis</code>, storing the value of each
+   * point, in iteration order, into <code>values</code>, which must hold at
+   * least as many elements as there are points. Sets that can project their
+   * points faster than through {@link #createIterator()} override this; see
+   * {@link Projector#project(SetOfPoints, double[], double[])}.
+   */
+  default void project(double[] axis, double[] values) {
+    final int pointCount = getPointCount();
+    final int dimensionCount = getDimensionCount();
+    PointIterator iterator = createIterator();
+    for (int k = 0; k < pointCount; k++) {
+      iterator.next();
+      double value = 0.0;
+      for (int i = 0; i < dimensionCount; i++)
+        value += iterator.getCoordinate(i) * axis[i];
+      values[k] = value;
+    }
+  }
 }
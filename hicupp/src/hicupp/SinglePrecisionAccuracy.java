@@ -0,0 +1,25 @@
+package hicupp;
+
+/**
+ * Reports how far a projection index computed from points in single precision
+ * is from the one computed in double precision; see
+ * {@link ProjectionIndexFunction#compareSinglePrecision(double[])}.
+ * @param exactIndex The index value computed in double precision.
+ * @param singleIndex The index value computed in single precision.
+ * @param maximumValueError The largest difference between the standardized
+ *                          projected values of the two, in standard deviations.
+ * @param relativeGradientError The length of the difference between the two
+ *                              gradients relative to the length of the double
+ *                              precision gradient; <code>NaN</code> if the
+ *                              gradient is not available. It stands in for the
+ *                              drift of the axis an optimizer chooses, which is
+ *                              not measured: it shows how far single precision
+ *                              turns an optimizer at these arguments, not where
+ *                              the optimizer ends up.
+ */
+public record SinglePrecisionAccuracy(double exactIndex, double singleIndex, double maximumValueError,
+                                      double relativeGradientError) {
+  public double getRelativeIndexError() {
+    return Math.abs(singleIndex - exactIndex) / Math.abs(exactIndex);
+  }
+}
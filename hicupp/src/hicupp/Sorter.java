@@ -1,116 +1,377 @@
 package hicupp;
 
+import java.util.Arrays;
+
+/**
+ * Holds methods for sorting lists of values and for selecting order statistics
+ * from them.
+ * <p>{@link #sort(double[])} picks the fastest method for the size of the list:
+ * the library sort for short lists, an LSD radix sort on the IEEE-754 bit
+ * patterns for longer ones, and a parallel sort for very long ones.
+ * {@link #select(double[], int, int, int)} finds a single order statistic,
+ * such as a quartile, in linear time without sorting. Both have variants for
+ * weighted values, which move the weights along with the values.</p>
+ * <p>Checking that a sorted list is indeed sorted costs a pass over the list,
+ * so it is only done if enabled through {@link #setPostconditionChecking(boolean)}
+ * or the <code>hicupp.sorter.checkPostconditions</code> system property.</p>
+ */
 public class Sorter {
-  public static void quickSort(double[] values) {
-    final int stackCapacity = 1024;
-    final int bubbleSortThreshold = 10;
-  
-    final double fa = 2.11e2;
-    final double fc = 1.663e3;
-    final double fm = 7.875e3;
-    final double fmi = 1.0 / fm;
-    
-    int stackPointer = 0;
-    final int[] stack = new int[stackCapacity];
-    double fxx = 0.0;
-    int l = 0;
-    int r = values.length - 1;
-    
-    while (true) {
-      if (r - l < bubbleSortThreshold) {
-        
-        // Partition is small enough to sort by straight insertion.
-        
-        for (int j = l + 1; j <= r; j++) {
-          double item = values[j];
-          int i;
-          for (i = j - 1; i >= l && values[i] > item; i--)
-            values[i + 1] = values[i];
-          values[i + 1] = item;
-        }
-    
-        // An empty stack means we are finished.
-        
-        if (stackPointer == 0) {
-          if (!sorted(values))
-            throw new RuntimeException("Postcondition check failed.");
-          return;
-        }
-        
-        // Pop the next partition off the stack.
-        
-        r = stack[--stackPointer];
-        l = stack[--stackPointer];
-      } else {
-        
-        // Partition the next sublist.
-        
-        int i = l;
-        int j = r;
-        fxx = Math.IEEEremainder(fxx * fa + fc, fm);
-        if (fxx < 0.0)
-          fxx += fm;
-        int pivot = l + (int) ((r - l + 1) * (fxx * fmi));
-        double item = values[pivot];
-        values[pivot] = values[l];
-        
-        while (true) {
-          
-          // Scan the list from the right.
-          
-          while (j >= 0 && item < values[j])
-            j--;
-          
-          if (j <= i) {
-            
-            // Our pointers have crossed.
-            // Place the element into its final (sorted) position.
-            
-            values[i] = item;
-            break;
-          }
-          
-          // Exchange list elements.
-          
-          values[i] = values[j];
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+  private static final int RADIX_SORT_THRESHOLD = 1 << 10;
+  private static final int PARALLEL_SORT_THRESHOLD = 1 << 18;
+
+  private static final int RADIX_BITS = 11;
+  private static final int RADIX_SIZE = 1 << RADIX_BITS;
+  private static final int RADIX_MASK = RADIX_SIZE - 1;
+  private static final int RADIX_PASSES = (Long.SIZE + RADIX_BITS - 1) / RADIX_BITS;
+
+  private static volatile boolean postconditionChecking =
+      Boolean.getBoolean("hicupp.sorter.checkPostconditions");
+
+  public static void setPostconditionChecking(boolean value) {
+    postconditionChecking = value;
+  }
+
+  public static boolean isPostconditionChecking() {
+    return postconditionChecking;
+  }
+
+  /**
+   * Sorts <code>values</code> in ascending order.
+   */
+  public static void sort(double[] values) {
+    if (values.length >= PARALLEL_SORT_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1)
+      parallelSort(values);
+    else if (values.length >= RADIX_SORT_THRESHOLD)
+      radixSort(values, new double[values.length]);
+    else {
+      Arrays.sort(values);
+      checkPostcondition(values);
+    }
+  }
+
+  /**
+   * Sorts <code>values</code> in ascending order using the fork/join common pool.
+   */
+  public static void parallelSort(double[] values) {
+    Arrays.parallelSort(values);
+    checkPostcondition(values);
+  }
+
+  /**
+   * Sorts <code>values</code> in ascending order by a least significant digit
+   * radix sort on their IEEE-754 bit patterns, using <code>scratch</code>
+   * (at least as long as <code>values</code>) as the second buffer.
+   * <p>Takes at most {@value #RADIX_PASSES} passes over the values; passes in
+   * which all values share the same digit, such as most exponent digits of
+   * standardized values, are skipped.</p>
+   */
+  public static void radixSort(double[] values, double[] scratch) {
+    final int n = values.length;
+    if (n < 2)
+      return;
+
+    // Count the digits of every pass at once.
+
+    final int[][] counts = new int[RADIX_PASSES][RADIX_SIZE];
+    for (int i = 0; i < n; i++) {
+      long key = sortableBits(values[i]);
+      for (int pass = 0; pass < RADIX_PASSES; pass++)
+        counts[pass][(int) (key >>> (pass * RADIX_BITS)) & RADIX_MASK]++;
+    }
+
+    double[] source = values;
+    double[] target = scratch;
+    for (int pass = 0; pass < RADIX_PASSES; pass++) {
+      final int shift = pass * RADIX_BITS;
+      final int[] offsets = counts[pass];
+      if (offsets[(int) (sortableBits(source[0]) >>> shift) & RADIX_MASK] == n)
+        continue;
+
+      int sum = 0;
+      for (int digit = 0; digit < RADIX_SIZE; digit++) {
+        int count = offsets[digit];
+        offsets[digit] = sum;
+        sum += count;
+      }
+
+      for (int i = 0; i < n; i++) {
+        double value = source[i];
+        target[offsets[(int) (sortableBits(value) >>> shift) & RADIX_MASK]++] = value;
+      }
+
+      double[] swap = source;
+      source = target;
+      target = swap;
+    }
+
+    if (source != values)
+      System.arraycopy(source, 0, values, 0, n);
+    checkPostcondition(values);
+  }
+
+  /**
+   * Sorts <code>values</code> in ascending order, moving each element of
+   * <code>weights</code> along with the value at the same index.
+   */
+  public static void sort(double[] values, double[] weights) {
+    radixSort(values, weights, 0, values.length);
+    checkPostcondition(values);
+  }
+
+  /**
+   * Sorts the elements of <code>values</code> from index <code>from</code>
+   * (inclusive) to index <code>to</code> (exclusive), and the weights along
+   * with them, by the radix sort of {@link #radixSort(double[], double[])}.
+   */
+  private static void radixSort(double[] values, double[] weights, int from, int to) {
+    final int n = to - from;
+    if (n < INSERTION_SORT_THRESHOLD) {
+      insertionSort(values, weights, from, to - 1);
+      return;
+    }
+
+    final int[][] counts = new int[RADIX_PASSES][RADIX_SIZE];
+    for (int i = from; i < to; i++) {
+      long key = sortableBits(values[i]);
+      for (int pass = 0; pass < RADIX_PASSES; pass++)
+        counts[pass][(int) (key >>> (pass * RADIX_BITS)) & RADIX_MASK]++;
+    }
+
+    double[] sourceValues = values;
+    double[] sourceWeights = weights;
+    int sourceOffset = from;
+    double[] targetValues = new double[n];
+    double[] targetWeights = new double[n];
+    int targetOffset = 0;
+    for (int pass = 0; pass < RADIX_PASSES; pass++) {
+      final int shift = pass * RADIX_BITS;
+      final int[] offsets = counts[pass];
+      if (offsets[(int) (sortableBits(sourceValues[sourceOffset]) >>> shift) & RADIX_MASK] == n)
+        continue;
+
+      int sum = targetOffset;
+      for (int digit = 0; digit < RADIX_SIZE; digit++) {
+        int count = offsets[digit];
+        offsets[digit] = sum;
+        sum += count;
+      }
+
+      for (int i = sourceOffset; i < sourceOffset + n; i++) {
+        double value = sourceValues[i];
+        int t = offsets[(int) (sortableBits(value) >>> shift) & RADIX_MASK]++;
+        targetValues[t] = value;
+        targetWeights[t] = sourceWeights[i];
+      }
+
+      double[] swap = sourceValues;
+      sourceValues = targetValues;
+      targetValues = swap;
+      swap = sourceWeights;
+      sourceWeights = targetWeights;
+      targetWeights = swap;
+      int swapOffset = sourceOffset;
+      sourceOffset = targetOffset;
+      targetOffset = swapOffset;
+    }
+
+    if (sourceValues != values) {
+      System.arraycopy(sourceValues, 0, values, from, n);
+      System.arraycopy(sourceWeights, 0, weights, from, n);
+    }
+  }
+
+  /**
+   * Maps the bit pattern of <code>value</code> to a key whose unsigned order is
+   * the numeric order of the values.
+   */
+  private static long sortableBits(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+  }
+
+  /**
+   * Rearranges the elements of <code>values</code> from index <code>from</code>
+   * (inclusive) to index <code>to</code> (exclusive) such that the element at
+   * index <code>k</code> is the one that would be there if the range were
+   * sorted, no element before it is greater and no element after it is less.
+   * <p>Uses quickselect with median-of-three pivots, and switches to
+   * median-of-medians pivots if the partitions do not shrink fast enough,
+   * so that it always takes linear time.</p>
+   * @return The element at index <code>k</code>.
+   */
+  public static double select(double[] values, int from, int to, int k) {
+    if (k < from || k >= to)
+      throw new IllegalArgumentException("k is out of range.");
+
+    int left = from;
+    int right = to - 1;
+    int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(to - from));
+
+    while (right - left >= INSERTION_SORT_THRESHOLD) {
+      final int pivotIndex = depthLimit-- > 0 ?
+                             medianOfThree(values, left, (left + right) >>> 1, right) :
+                             medianOfMedians(values, left, right);
+      final double pivot = values[pivotIndex];
+
+      // Partition the range around the pivot value. Elements equal to the
+      // pivot stop both scans, so runs of equal elements split evenly.
+
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (values[i] < pivot)
           i++;
-          
-          // Scan the list from the left.
-          
-          while (i < values.length && item > values[i])
-            i++;
-          
-          if (j <= i) {
-            // Our pointers have crossed.
-            // Place the element into its final (sorted) position.
-          
-            values[j] = item;
-            i = j;
-            break;
-          }
-          
-          // Exchange list elements.
-          
-          values[j] = values[i];
+        while (values[j] > pivot)
           j--;
+        if (i <= j) {
+          double swap = values[i];
+          values[i++] = values[j];
+          values[j--] = swap;
         }
-        
-        // Increment the stack pointer and stack the largest
-        // partition for future processing.
-        
-        if (r - i >= i - l) {
-          stack[stackPointer++] = i + 1;
-          stack[stackPointer++] = r;
-          r = i - 1;
-        } else {
-          stack[stackPointer++] = l;
-          stack[stackPointer++] = i - 1;
-          l = i + 1;
+      }
+
+      if (k <= j)
+        right = j;
+      else if (k >= i)
+        left = i;
+      else
+        return values[k];
+    }
+
+    insertionSort(values, left, right);
+    return values[k];
+  }
+
+  /**
+   * Rearranges the elements of <code>values</code> from index <code>from</code>
+   * (inclusive) to index <code>to</code> (exclusive), and the weights along
+   * with them, and returns the element that would be at index
+   * <code>rank</code> if each element were repeated as many times as its
+   * weight and the range were sorted. With weights of one, this is the
+   * element that {@link #select(double[], int, int, int)} returns for
+   * <code>k = from + rank</code>.
+   * <p>Uses quickselect with median-of-three pivots, summing the weights of
+   * the elements below the pivot, and sorts the rest of the range if the
+   * partitions do not shrink fast enough.</p>
+   */
+  public static double select(double[] values, double[] weights, int from, int to, double rank) {
+    if (!(rank >= 0))
+      throw new IllegalArgumentException("rank is out of range.");
+
+    int left = from;
+    int right = to - 1;
+    int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(to - from));
+
+    while (right - left >= INSERTION_SORT_THRESHOLD) {
+      if (depthLimit-- == 0) {
+        radixSort(values, weights, left, right + 1);
+        break;
+      }
+      final double pivot = values[medianOfThree(values, left, (left + right) >>> 1, right)];
+
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (values[i] < pivot)
+          i++;
+        while (values[j] > pivot)
+          j--;
+        if (i <= j) {
+          double swap = values[i];
+          values[i] = values[j];
+          values[j] = swap;
+          swap = weights[i];
+          weights[i++] = weights[j];
+          weights[j--] = swap;
         }
       }
+
+      // No element up to j is greater than the pivot, none from i on is
+      // less, and any element between them equals it.
+
+      double leftWeight = 0.0;
+      for (int t = left; t <= j; t++)
+        leftWeight += weights[t];
+      if (rank < leftWeight) {
+        right = j;
+        continue;
+      }
+      rank -= leftWeight;
+      for (int t = j + 1; t < i; t++) {
+        rank -= weights[t];
+        if (rank < 0)
+          return values[t];
+      }
+      left = i;
+    }
+
+    insertionSort(values, weights, left, right);
+    for (int t = left; t <= right; t++) {
+      rank -= weights[t];
+      if (rank < 0)
+        return values[t];
+    }
+    throw new IllegalArgumentException("rank is out of range.");
+  }
+
+  private static int medianOfThree(double[] values, int a, int b, int c) {
+    double va = values[a], vb = values[b], vc = values[c];
+    if (va < vb)
+      return vb < vc ? b : (va < vc ? c : a);
+    else
+      return va < vc ? a : (vb < vc ? c : b);
+  }
+
+  /**
+   * Moves the medians of groups of five elements to the front of the range and
+   * returns the index of their median.
+   */
+  private static int medianOfMedians(double[] values, int left, int right) {
+    int medianCount = 0;
+    for (int group = left; group <= right; group += 5) {
+      int groupRight = Math.min(group + 4, right);
+      insertionSort(values, group, groupRight);
+      int median = (group + groupRight) >>> 1;
+      double swap = values[median];
+      values[median] = values[left + medianCount];
+      values[left + medianCount] = swap;
+      medianCount++;
     }
+    int mid = left + medianCount / 2;
+    select(values, left, left + medianCount, mid);
+    return mid;
   }
-  
+
+  private static void insertionSort(double[] values, int left, int right) {
+    for (int j = left + 1; j <= right; j++) {
+      double item = values[j];
+      int i;
+      for (i = j - 1; i >= left && values[i] > item; i--)
+        values[i + 1] = values[i];
+      values[i + 1] = item;
+    }
+  }
+
+  private static void insertionSort(double[] values, double[] weights, int left, int right) {
+    for (int j = left + 1; j <= right; j++) {
+      double item = values[j];
+      double weight = weights[j];
+      int i;
+      for (i = j - 1; i >= left && values[i] > item; i--) {
+        values[i + 1] = values[i];
+        weights[i + 1] = weights[i];
+      }
+      values[i + 1] = item;
+      weights[i + 1] = weight;
+    }
+  }
+
+  private static void checkPostcondition(double[] values) {
+    if (postconditionChecking && !sorted(values))
+      throw new RuntimeException("Postcondition check failed.");
+  }
+
   public static boolean sorted(double[] values) {
     for (int i = 1; i < values.length; i++)
       if (values[i - 1] > values[i])
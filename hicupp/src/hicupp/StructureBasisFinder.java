@@ -9,9 +9,19 @@ public class StructureBasisFinder {
                                              Monitor monitor)
       throws NoConvergenceException, CancellationException {
     Matrix pointsMatrix = MatrixTools.setOfPointsToMatrix(points);
-    double[] center = MatrixTools.computeCenter(pointsMatrix);
+    double[] weights = Projector.getWeights(points);
+    double[] center = MatrixTools.computeCenter(pointsMatrix, weights);
     MatrixTools.subtractFromRows(pointsMatrix, center);
-    return computeStructureBasisIter(projectionIndex, pointsMatrix,
+    
+    // The points in each subspace are weighted by the same counts.
+    
+    int[] counts = null;
+    if (weights != null) {
+      counts = new int[weights.length];
+      for (int k = 0; k < weights.length; k++)
+        counts[k] = (int) weights[k];
+    }
+    return computeStructureBasisIter(projectionIndex, pointsMatrix, counts,
                                      Math.min(maxDimensionCount,
                                               points.getDimensionCount()),
                                      monitor);
@@ -19,6 +29,7 @@ public class StructureBasisFinder {
   
   private static Matrix computeStructureBasisIter(int projectionIndex,
                                                   Matrix points,
+                                                  int[] counts,
                                                   int dimensionCount,
                                                   Monitor monitor)
       throws NoConvergenceException, CancellationException {
@@ -26,7 +37,7 @@ public class StructureBasisFinder {
       return new Matrix(1, 1, 1);
     
     double[] axis = Clusterer.findAxis(projectionIndex,
-                                       new MatrixSetOfPoints(points),
+                                       new MatrixSetOfPoints(points, counts),
                                        monitor);
     if (dimensionCount > 1) {
       Matrix basis = OrthogonalBasisComputer.computeOrthogonalBasis(axis, points);
@@ -43,6 +54,7 @@ public class StructureBasisFinder {
     
       Matrix subspaceBasis = computeStructureBasisIter(projectionIndex,
                                                        pointsInSubspace,
+                                                       counts,
                                                        dimensionCount - 1,
                                                        monitor);
       Matrix subspaceBasis2 = subspaceBasis.times(t);
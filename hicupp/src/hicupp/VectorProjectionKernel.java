@@ -0,0 +1,72 @@
+package hicupp;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The projection kernel that uses the Vector API, with the widest vector shape
+ * the platform prefers. It projects as many points at once as fit in a vector.
+ * <p>This class is only loaded if the <code>jdk.incubator.vector</code> module
+ * is present; see {@link Projector}.</p>
+ */
+final class VectorProjectionKernel implements ProjectionKernel {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+  public void project(double[] coordinates, int offset, int stride, int count, int dimensionCount,
+                      double[] axis, double[] values, int valuesOffset) {
+    final int length = SPECIES.length();
+    final int vectorCount = count - count % length;
+
+    // Multiply and add rather than fuse, so that the results are the same as
+    // those of the scalar kernel.
+
+    int k = 0;
+    for (; k < vectorCount; k += length) {
+      DoubleVector sum = DoubleVector.fromArray(SPECIES, coordinates, offset + k).mul(axis[0]);
+      for (int i = 1; i < dimensionCount; i++)
+        sum = sum.add(DoubleVector.fromArray(SPECIES, coordinates, offset + i * stride + k).mul(axis[i]));
+      sum.intoArray(values, valuesOffset + k);
+    }
+
+    for (; k < count; k++) {
+      double value = coordinates[offset + k] * axis[0];
+      for (int i = 1; i < dimensionCount; i++)
+        value += coordinates[offset + i * stride + k] * axis[i];
+      values[valuesOffset + k] = value;
+    }
+  }
+
+  /**
+   * Projects twice as many points per vector as in double precision, and
+   * widens each vector of sums into two vectors of doubles.
+   */
+  public void project(float[] coordinates, int offset, int stride, int count, int dimensionCount,
+                      float[] axis, double[] values, int valuesOffset) {
+    final int length = FLOAT_SPECIES.length();
+    final int half = length / 2;
+    final int vectorCount = count - count % length;
+
+    int k = 0;
+    for (; k < vectorCount; k += length) {
+      FloatVector sum = FloatVector.fromArray(FLOAT_SPECIES, coordinates, offset + k).mul(axis[0]);
+      for (int i = 1; i < dimensionCount; i++)
+        sum = sum.add(FloatVector.fromArray(FLOAT_SPECIES, coordinates, offset + i * stride + k).mul(axis[i]));
+      ((DoubleVector) sum.convert(VectorOperators.F2D, 0)).intoArray(values, valuesOffset + k);
+      ((DoubleVector) sum.convert(VectorOperators.F2D, 1)).intoArray(values, valuesOffset + k + half);
+    }
+
+    for (; k < count; k++) {
+      float value = coordinates[offset + k] * axis[0];
+      for (int i = 1; i < dimensionCount; i++)
+        value += coordinates[offset + i * stride + k] * axis[i];
+      values[valuesOffset + k] = value;
+    }
+  }
+
+  public String toString() {
+    return "Vector API (" + SPECIES + ")";
+  }
+}
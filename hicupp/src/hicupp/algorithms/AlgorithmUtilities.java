@@ -5,8 +5,58 @@ import hicupp.ProjectionIndexFunction;
 import hicupp.SetOfPoints;
 import interactivehicupp.TextTools;
 
+import java.util.concurrent.ForkJoinPool;
+
 public final class AlgorithmUtilities {
 
+    private static volatile ForkJoinPool evaluationPool = ForkJoinPool.commonPool();
+
+    /**
+     * Sets the pool on which the algorithms evaluate independent arguments
+     * concurrently. The common pool by default.
+     */
+    public static void setEvaluationPool(ForkJoinPool pool) {
+        if (pool == null)
+            throw new IllegalArgumentException("pool must not be null.");
+        evaluationPool = pool;
+    }
+
+    public static ForkJoinPool getEvaluationPool() {
+        return evaluationPool;
+    }
+
+    private static final ThreadLocal<double[]> startingArguments = new ThreadLocal<>();
+
+    /**
+     * Sets the arguments from which the next algorithm run on the calling thread starts, or <code>null</code> to
+     * let it start from random arguments; see {@link #generateStartingArguments(int)}.
+     */
+    public static void setStartingArguments(double[] x) {
+        startingArguments.set(x);
+    }
+
+    /**
+     * Returns the arguments set through {@link #setStartingArguments(double[])} on the calling thread and not yet
+     * used, or <code>null</code>.
+     */
+    public static double[] getStartingArguments() {
+        return startingArguments.get();
+    }
+
+    /**
+     * Returns the arguments from which an algorithm starts: those set through
+     * {@link #setStartingArguments(double[])} on the calling thread, which are used only once, or else random
+     * arguments as {@link #generateRandomArguments(int, double)} with a scalar of one.
+     * @param n number of arguments
+     */
+    public static double[] generateStartingArguments(int n) {
+        double[] x = startingArguments.get();
+        startingArguments.remove();
+        if (x != null && x.length == n)
+            return x.clone();
+        return generateRandomArguments(n, 1);
+    }
+
     /**
      * Generate a random number between -scalar and scalar to an array sized n
      * @param n number of arguments
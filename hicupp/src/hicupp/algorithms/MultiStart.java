@@ -0,0 +1,287 @@
+package hicupp.algorithms;
+
+import hicupp.*;
+import interactivehicupp.TextTools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs an algorithm several times, concurrently, from starting arguments spread evenly over the axes, and keeps
+ * the best maximum found.
+ * <p>An axis is a unit vector in one dimension more than there are arguments, whose last coordinate is not
+ * negative; the arguments are its other coordinates. The starting axes are the points of a low-discrepancy
+ * sequence in the cube, the <i>R<sub>d</sub></i> sequence of M. Roberts, mapped onto the sphere through the
+ * inverse normal distribution and folded onto the half with a non-negative last coordinate. Unlike a Sobol
+ * sequence, it needs no table of direction numbers, so it serves any number of dimensions.</p>
+ */
+public final class MultiStart {
+
+    /**
+     * Runs one start of the algorithm; the algorithm takes its starting arguments from
+     * {@link AlgorithmUtilities#generateStartingArguments(int)}.
+     */
+    public interface Algorithm {
+        double[] maximize(Function function, Monitor monitor) throws NoConvergenceException, CancellationException;
+    }
+
+    /**
+     * The outcome of the starts.
+     * @param x The best arguments found.
+     * @param fx The value of the function at <code>x</code>.
+     * @param optima The arguments found by each start that converged, in descending order of value.
+     * @param values The values of the function at <code>optima</code>.
+     * @param startCount The number of starts run.
+     */
+    public record Result(double[] x, double fx, double[][] optima, double[] values, int startCount) {
+
+        /**
+         * Returns the number of starts that found a value within <code>tolerance</code> times its magnitude of
+         * the best one.
+         */
+        public int countNearBest(double tolerance) {
+            int count = 0;
+            for (double value : values)
+                if (fx - value <= tolerance * Math.abs(fx))
+                    count++;
+            return count;
+        }
+    }
+
+    /**
+     * Runs <code>startCount</code> starts of the algorithm concurrently, on as many threads as the
+     * {@link AlgorithmUtilities#getEvaluationPool() evaluation pool} has, or fewer, each from the next of
+     * {@link #spreadArguments(int, int)}. The function must allow concurrent evaluation; the starts refine it
+     * one at a time.
+     * <p>The monitor is notified of the evaluations of all starts and given a chance to cancel them whenever any
+     * start checks; the log lines of each start are prefixed with its number. A summary of the optima found is
+     * written to it at the end.</p>
+     * @exception NoConvergenceException If no start converges.
+     * @exception CancellationException Passed through from the <code>monitor</code>'s
+     * {@link Monitor#continuing()} method.
+     */
+    public static Result maximize(Function function, final Algorithm algorithm, final Monitor monitor,
+                                  int startCount) throws NoConvergenceException, CancellationException {
+        if (startCount < 1)
+            throw new IllegalArgumentException("startCount must be positive.");
+        final Function shared = new SharedFunction(function);
+        final double[][] starts = spreadArguments(startCount, function.getArgumentCount());
+        final double[][] results = new double[startCount][];
+
+        final int threadCount = Math.min(startCount, AlgorithmUtilities.getEvaluationPool().getParallelism());
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        final List<Future<double[]>> futures = new ArrayList<>(startCount);
+        for (int s = 0; s < startCount; s++) {
+            final int start = s;
+            futures.add(executor.submit(() -> {
+                AlgorithmUtilities.setStartingArguments(starts[start]);
+                try {
+                    return algorithm.maximize(shared, new StartMonitor(monitor, start + 1));
+                } catch (NoConvergenceException e) {
+                    if (monitor != null)
+                        synchronized (monitor) {
+                            monitor.writeLine("(start " + (start + 1) + ") did not converge.");
+                        }
+                    return null;
+                } finally {
+                    AlgorithmUtilities.setStartingArguments(null);
+                }
+            }));
+        }
+
+        try {
+            for (int s = 0; s < startCount; s++)
+                results[s] = futures.get(s).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException cancellation)
+                throw cancellation;
+            if (e.getCause() instanceof RuntimeException runtime)
+                throw runtime;
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Evaluated again, as the function may have been refined while the starts ran.
+        final List<double[]> optima = new ArrayList<>(startCount);
+        for (double[] x : results)
+            if (x != null)
+                optima.add(x);
+        if (optima.isEmpty())
+            throw new NoConvergenceException("No start converged.");
+        final double[] values = new double[optima.size()];
+        final Integer[] order = new Integer[optima.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = function.evaluate(optima.get(i).clone());
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> values[i]).reversed());
+
+        final double[][] sortedOptima = new double[order.length][];
+        final double[] sortedValues = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedOptima[i] = optima.get(order[i]);
+            sortedValues[i] = values[order[i]];
+        }
+        final Result result = new Result(sortedOptima[0], sortedValues[0], sortedOptima, sortedValues, startCount);
+
+        if (monitor != null)
+            monitor.writeLine("Multi-start: " + sortedValues.length + " of " + startCount + " starts converged; " +
+                    "best fx = " + TextTools.formatScientific(sortedValues[0]) + ", " +
+                    "worst fx = " + TextTools.formatScientific(sortedValues[sortedValues.length - 1]) + ", " +
+                    result.countNearBest(1e-4) + " within 0.01% of the best");
+        return result;
+    }
+
+    /**
+     * Returns <code>count</code> argument lists of length <code>n</code> whose axes are spread evenly over the
+     * half sphere; see the class description. The lists are the same for the same <code>count</code> and
+     * <code>n</code>.
+     */
+    public static double[][] spreadArguments(int count, int n) {
+        final int d = n + 1;
+
+        // The generalized golden ratio: the positive root of x^(d+1) = x + 1.
+        double phi = 2.0;
+        for (int i = 0; i < 64; i++)
+            phi -= (Math.pow(phi, d + 1) - phi - 1) / ((d + 1) * Math.pow(phi, d) - 1);
+        final double[] alpha = new double[d];
+        for (int j = 0; j < d; j++)
+            alpha[j] = Math.pow(1 / phi, j + 1) % 1.0;
+
+        final double[][] arguments = new double[count][n];
+        final double[] z = new double[d];
+        for (int k = 0; k < count; k++) {
+            double sumsq = 0;
+            for (int j = 0; j < d; j++) {
+                double u = (0.5 + (k + 1) * alpha[j]) % 1.0;
+                z[j] = inverseNormal(u);
+                sumsq += z[j] * z[j];
+            }
+            final double norm = Math.sqrt(sumsq);
+            for (int j = 0; j < n; j++)
+                arguments[k][j] = z[j] / norm * (z[n] < 0 ? -1 : 1);
+        }
+        return arguments;
+    }
+
+    /**
+     * Returns the quantile of the standard normal distribution at probability <code>p</code>, by the rational
+     * approximation of P. J. Acklam, whose relative error is below 1.2e-9.
+     */
+    private static double inverseNormal(double p) {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                            6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] e = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                            3.754408661907416e+00};
+        final double low = 0.02425;
+
+        p = Math.min(Math.max(p, 1e-300), 1 - 1e-16);
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                   ((((e[0] * q + e[1]) * q + e[2]) * q + e[3]) * q + 1);
+        } else if (p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                    ((((e[0] * q + e[1]) * q + e[2]) * q + e[3]) * q + 1);
+        } else {
+            double q = p - 0.5;
+            double r = q * q;
+            return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q /
+                   (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+        }
+    }
+
+    /**
+     * The monitor of one start, which forwards to the caller's monitor.
+     */
+    private static final class StartMonitor implements Monitor {
+        private final Monitor monitor;
+        private final int start;
+
+        StartMonitor(Monitor monitor, int start) {
+            this.monitor = monitor;
+            this.start = start;
+        }
+
+        public void continuing() throws CancellationException {
+            if (monitor != null)
+                synchronized (monitor) {
+                    monitor.continuing();
+                }
+        }
+
+        public void iterationStarted(int iterationNumber) {
+        }
+
+        public void evaluationStarted() {
+            if (monitor != null)
+                synchronized (monitor) {
+                    monitor.evaluationStarted();
+                }
+        }
+
+        public void writeLine(String text) {
+            if (monitor != null)
+                synchronized (monitor) {
+                    monitor.writeLine("(start " + start + ") " + text);
+                }
+        }
+    }
+
+    /**
+     * The function as the starts see it, which refines it one start at a time.
+     */
+    private static final class SharedFunction implements DifferentiableFunction {
+        private final Function function;
+
+        SharedFunction(Function function) {
+            this.function = function;
+        }
+
+        public int getArgumentCount() {
+            return function.getArgumentCount();
+        }
+
+        public double evaluate(double[] arguments) {
+            return function.evaluate(arguments);
+        }
+
+        public void evaluate(double[][] argumentSets, double[] values) {
+            function.evaluate(argumentSets, values);
+        }
+
+        public synchronized boolean refine() {
+            return function.refine();
+        }
+
+        public int getRefinementCount() {
+            return function.getRefinementCount();
+        }
+
+        public boolean isGradientAvailable() {
+            return function instanceof DifferentiableFunction differentiable &&
+                    differentiable.isGradientAvailable();
+        }
+
+        public double evaluate(double[] arguments, double[] gradient) {
+            if (!isGradientAvailable())
+                throw new RuntimeException("The gradient is not available.");
+            return ((DifferentiableFunction) function).evaluate(arguments, gradient);
+        }
+    }
+}
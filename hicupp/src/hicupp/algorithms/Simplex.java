@@ -3,6 +3,8 @@ package hicupp.algorithms;
 import hicupp.*;
 import interactivehicupp.TextTools;
 
+import java.util.concurrent.ForkJoinPool;
+
 public final class Simplex {
     /**
      * Maximize a function using the Simplex method of Nelder and Mead.
@@ -39,6 +41,8 @@ public final class Simplex {
                 new MonitoringFunctionWrapper(new CloningFunctionWrapper(function), monitor);
         final int n = function.getArgumentCount();
         final int np1 = n + 1;
+        final ForkJoinPool pool = AlgorithmUtilities.getEvaluationPool();
+        final boolean speculative = pool.getParallelism() > 1;
 
         double cscale = CFACT;
         double done = PFACT1;
@@ -59,9 +63,10 @@ public final class Simplex {
         if (side <= 0.0)
             side = 0.1;
 
-        // Compute initial simplex.
+        // Compute initial simplex, with the starting arguments as its first vertex.
         final double[][] x = new double[np1][n];
-        for (int i = 0; i < np1; i++) {
+        x[0] = AlgorithmUtilities.generateStartingArguments(n);
+        for (int i = 1; i < np1; i++) {
 			/*
       double xlim = 1;
       for (int j = 0; j < n; j++) {
@@ -83,9 +88,7 @@ public final class Simplex {
 
         // Compute function values.
 
-        double[] fx = new double[np1];
-        for (int i = 0; i < np1; i++)
-            fx[i] = wrapper.evaluate(x[i]);
+        double[] fx = wrapper.evaluate(x);
 
         int iter = 0;
         while (true) {
@@ -109,6 +112,11 @@ public final class Simplex {
                 monitor.iterationStarted(iter);
             }
 
+            // If another algorithm sharing the function has refined it, the values of the simplex are stale.
+
+            if (wrapper.wasRefined())
+                fx = wrapper.evaluate(x);
+
             // Determine minimum and maximum values.
 
             double fxmax = fx[0];
@@ -137,24 +145,37 @@ public final class Simplex {
                 sum -= x[low][j];
                 xcent[j] = sum / n;
             }
-            double fxcent = wrapper.evaluate(xcent);
 
-            // Compute the reflected point.
+            // Compute the reflected point, and the points that may be tried after it: the expansion point, and
+            // the contraction points towards the reflected and towards the worst point.
 
             double[] xref = new double[n];
-            for (int j = 0; j < n; j++)
+            double[] xexp = new double[n];
+            double[] xconref = new double[n];
+            double[] xconlow = new double[n];
+            for (int j = 0; j < n; j++) {
                 xref[j] = xcent[j] + rscale * (xcent[j] - x[low][j]);
-            double fxref = wrapper.evaluate(xref);
+                xexp[j] = xcent[j] + escale * (xref[j] - xcent[j]);
+                xconref[j] = xcent[j] + cscale * (xref[j] - xcent[j]);
+                xconlow[j] = xcent[j] + cscale * (x[low][j] - xcent[j]);
+            }
+
+            // With more than one thread, all are evaluated together up front, and the branch taken below reads
+            // their values; otherwise each is evaluated only once the branch needs it.
+
+            double[] ftrial = null;
+            if (speculative) {
+                ftrial = new double[4];
+                wrapper.evaluate(new double[][] {xref, xexp, xconref, xconlow}, ftrial, pool);
+            }
+            double fxref = speculative ? ftrial[0] : wrapper.evaluate(xref);
 
             // Replace worst point x[low][j] with best new point.
 
             if (fxref > fxmax) {
 
-                // Compute an expansion point.
-                double[] xexp = new double[n];
-                for (int j = 0; j < n; j++)
-                    xexp[j] = xcent[j] + escale * (xref[j] - xcent[j]);
-                double fxexp = wrapper.evaluate(xexp);
+                // Try the expansion point.
+                double fxexp = speculative ? ftrial[1] : wrapper.evaluate(xexp);
 
                 if (fxexp > fxref) {
                     for (int j = 0; j < n; j++)
@@ -178,7 +199,8 @@ public final class Simplex {
                         x[low][j] = xref[j];
                     fx[low] = fxref;
                 } else {
-                    if (fxref > fxmin) {
+                    final boolean towardsReflected = fxref > fxmin;
+                    if (towardsReflected) {
 
                         // We have a new worst point.
 
@@ -188,12 +210,10 @@ public final class Simplex {
                         fxmin = fxref;
                     }
 
-                    // Compute a contraction point.
+                    // Try a contraction point, between the centroid and the worst point.
 
-                    double[] xcon = new double[n];
-                    for (int j = 0; j < n; j++)
-                        xcon[j] = xcent[j] + cscale * (x[low][j] - xcent[j]);
-                    double fxcon = wrapper.evaluate(xcon);
+                    double[] xcon = towardsReflected ? xconref : xconlow;
+                    double fxcon = speculative ? ftrial[towardsReflected ? 2 : 3] : wrapper.evaluate(xcon);
 
                     if (fxcon < fxmin) {
                         for (int j = 0; j < n; j++) {
@@ -202,9 +222,15 @@ public final class Simplex {
                                     x[i][j] = (x[i][j] + x[high][j]) * 0.5;
                             }
                         }
-                        for (int i = 0; i < np1; i++) {
+                        final double[][] xshrunk = new double[n][];
+                        for (int i = 0, k = 0; i < np1; i++) {
                             if (i != high)
-                                fx[i] = wrapper.evaluate(x[i]);
+                                xshrunk[k++] = x[i];
+                        }
+                        final double[] fxshrunk = wrapper.evaluate(xshrunk);
+                        for (int i = 0, k = 0; i < np1; i++) {
+                            if (i != high)
+                                fx[i] = fxshrunk[k++];
                         }
                     } else {
                         for (int j = 0; j < n; j++)
@@ -226,8 +252,13 @@ public final class Simplex {
                         ") (convrg = " + TextTools.formatScientific(convrg) +
                         ") (x[high] = {" + AlgorithmUtilities.argumentArrayToString(x[high]) + "})");
 
-            if (convrg <= 1e-4)
-                break;
+            if (convrg <= 1e-4) {
+                if (!wrapper.refine())
+                    break;
+
+                // The function has switched to a finer approximation; continue from the current simplex.
+                fx = wrapper.evaluate(x);
+            }
         }
 
         int k = 1;
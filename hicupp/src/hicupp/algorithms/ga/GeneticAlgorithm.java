@@ -14,7 +14,8 @@ public final class GeneticAlgorithm {
 
     /**
      * Maximize a function using the Genetic Algorithm method. A random population will
-     * cross over, mutate, spawn, and selected.
+     * cross over, mutate, spawn, and selected. The new chromosomes of each generation are
+     * evaluated concurrently on the {@link AlgorithmUtilities#getEvaluationPool() evaluation pool}.
      * @param monitor If not <code>null</code>, this object will be notified
      *                of milestones within the computation. The object is also
      *                given a chance to cancel the computation.
@@ -66,6 +67,16 @@ public final class GeneticAlgorithm {
                 monitor.iterationStarted(generation);
             }
 
+            // If another algorithm sharing the function has refined it, the values of the population are stale.
+            if (wrapper.wasRefined()) {
+                GeneticAlgorithmFunctions.evaluate(wrapper, population);
+                population.sort(Comparator.comparingDouble(Chromosome::getFx).reversed());
+                fittest = population.get(0).clone();
+            }
+
+            // the children, mutants and spawns of this generation, generated first and then evaluated concurrently
+            ArrayList<Chromosome> unevaluated = new ArrayList<>();
+
             // crossover population
             System.out.println("Crossover population.");
             for (int j = 0; j < populationSize; j++) {
@@ -80,24 +91,34 @@ public final class GeneticAlgorithm {
 
                 if (father.equals(mother)) {
                     System.out.println("Could not find another unique chromosome, generating a random child.");
-                    population.addAll(GeneticAlgorithmFunctions.generateChromosomes(1, n, wrapper));
+                    unevaluated.add(GeneticAlgorithmFunctions.generateChromosome(n));
                 } else {
-                    Chromosome child = GeneticAlgorithmFunctions.crossover(father, mother, wrapper);
-                    population.add(child);
+                    Chromosome child = GeneticAlgorithmFunctions.crossover(father, mother);
+                    unevaluated.add(child);
                 }
             }
+            population.addAll(unevaluated);
             System.out.println("Population size " + population.size());
 
             // mutate
             for (int j = 0; j < mutationsPerGen; j++) {
-                GeneticAlgorithmFunctions.mutate(wrapper, population.get(random.nextInt(populationSize)));
+                Chromosome mutant = population.get(random.nextInt(populationSize));
+                GeneticAlgorithmFunctions.mutate(mutant);
+                unevaluated.add(mutant);
             }
             System.out.println("Mutated " + mutationsPerGen + " chromosomes.");
 
             // spawn
-            population.addAll(GeneticAlgorithmFunctions.generateChromosomes(spawnsPerGen, n, wrapper));
+            for (int j = 0; j < spawnsPerGen; j++) {
+                Chromosome spawn = GeneticAlgorithmFunctions.generateChromosome(n);
+                population.add(spawn);
+                unevaluated.add(spawn);
+            }
             System.out.println("Spawned new chromosomes. Now population " + population.size());
 
+            // evaluate
+            GeneticAlgorithmFunctions.evaluate(wrapper, unevaluated);
+
             // selection
             population.sort(Comparator.comparingDouble(Chromosome::getFx).reversed());  // sort in descending fx
             population = population.stream()
@@ -125,8 +146,16 @@ public final class GeneticAlgorithm {
             else noOfEquals = 0;
 
             if ((noOfEquals == maxEquals && convergeAtMaxEquals) || // fittest stayed the same after multiple generations
-                    (!equal) && (Math.abs(delta) <= 1e-4))    // converged
-                break;
+                    (!equal) && (Math.abs(delta) <= 1e-4)) {  // converged
+                if (!wrapper.refine())
+                    break;
+
+                // The function has switched to a finer approximation; re-evaluate the population and continue.
+                GeneticAlgorithmFunctions.evaluate(wrapper, population);
+                population.sort(Comparator.comparingDouble(Chromosome::getFx).reversed());
+                fittest = population.get(0).clone();
+                noOfEquals = 0;
+            }
         }
 
         System.out.println("\nOptimal value: " + fittest.getFx());
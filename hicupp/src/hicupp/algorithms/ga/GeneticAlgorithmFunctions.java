@@ -5,11 +5,13 @@ import hicupp.MonitoringFunctionWrapper;
 import hicupp.algorithms.AlgorithmUtilities;
 
 import java.util.ArrayList;
+import java.util.List;
 
 final class GeneticAlgorithmFunctions {
 
     /**
-     * Generate random chromosomes
+     * Generate random chromosomes, the first from the starting arguments, see
+     * {@link AlgorithmUtilities#generateStartingArguments(int)}
      * @param amount number of chromosomes generated
      * @param n argument
      * @param wrapper wrapper of function
@@ -20,56 +22,64 @@ final class GeneticAlgorithmFunctions {
             throws CancellationException {
         ArrayList<Chromosome> population = new ArrayList<>();
 
-        for (int i = 0; i < amount; i++) {
-            double[] x_new = AlgorithmUtilities.generateRandomArguments(n, 1);
-
-            Chromosome chromosome = new Chromosome(x_new);
-            evaluate(wrapper, chromosome);
-
-            population.add(chromosome);
-        }
+        for (int i = 0; i < amount; i++)
+            population.add(i == 0 ? new Chromosome(AlgorithmUtilities.generateStartingArguments(n)) :
+                                    generateChromosome(n));
+        evaluate(wrapper, population);
 
         return population;
     }
 
     /**
-     * Crossover 2 chromosomes at random point
+     * Generate a random chromosome without evaluating it
+     * @param n argument
+     * @return random chromosome
+     */
+    public static Chromosome generateChromosome(int n) {
+        return new Chromosome(AlgorithmUtilities.generateRandomArguments(n, 1));
+    }
+
+    /**
+     * Crossover 2 chromosomes at random point. The child is not evaluated.
      * @param father chromosome 1
      * @param mother chromosome 2
      * @return child chromosome
-     * @throws CancellationException thrown when monitor is cancelled / cannot create child
      */
-    public static Chromosome crossover(Chromosome father, Chromosome mother, MonitoringFunctionWrapper wrapper)
-            throws CancellationException {
+    public static Chromosome crossover(Chromosome father, Chromosome mother) {
         int n = father.getX().length;
         if (n != mother.getX().length) throw new RuntimeException("Mismatch gene length.");
 
         Chromosome child = father.clone();
 
         System.arraycopy(mother.getX(), 0, child.getX(), 0, n / 2);
-        evaluate(wrapper, child);
 
         return child;
     }
 
     /**
-     * Evaluates arguments and set fx via {@link Chromosome#setFx(double)}
+     * Evaluates the arguments of the chromosomes concurrently, in chunks, on the
+     * {@link AlgorithmUtilities#getEvaluationPool() evaluation pool} and sets fx via {@link Chromosome#setFx(double)}
      * @param wrapper Function wrapper to evaluate
-     * @param chromosome Chromosome in question
+     * @param chromosomes Chromosomes in question
      * @throws CancellationException thrown when monitor is cancelled
      */
-    public static void evaluate(MonitoringFunctionWrapper wrapper, Chromosome chromosome) throws CancellationException {
-        chromosome.setFx(wrapper.evaluate(chromosome.getX()));
+    public static void evaluate(MonitoringFunctionWrapper wrapper, List<Chromosome> chromosomes)
+            throws CancellationException {
+        final double[][] x = new double[chromosomes.size()][];
+        for (int i = 0; i < x.length; i++)
+            x[i] = chromosomes.get(i).getX();
+
+        final double[] fx = new double[x.length];
+        wrapper.evaluate(x, fx, AlgorithmUtilities.getEvaluationPool());
+        for (int i = 0; i < x.length; i++)
+            chromosomes.get(i).setFx(fx[i]);
     }
 
     /**
-     * Create new random axis for chromosome
-     * @param wrapper Function wrapper to evaluate after mutation
-     * @throws CancellationException thrown when monitor is cancelled
+     * Create new random axis for chromosome. The chromosome is not evaluated.
      */
-    public static void mutate(MonitoringFunctionWrapper wrapper, Chromosome chromosome) throws CancellationException {
+    public static void mutate(Chromosome chromosome) {
         chromosome.setX(AlgorithmUtilities.generateRandomArguments(chromosome.getX().length, 1));
-        evaluate(wrapper, chromosome);
     }
 
 }
@@ -2,6 +2,7 @@ package hicupp.algorithms.gd;
 
 import hicupp.*;
 import hicupp.algorithms.AlgorithmParameters;
+import hicupp.algorithms.AlgorithmUtilities;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -9,7 +10,9 @@ import java.util.Comparator;
 public final class GradientDescent {
 
     /**
-     * Maximize a function using the Gradient Descent method.
+     * Maximize a function using the Gradient Descent method. The solutions are stepped concurrently, and
+     * the probes of their gradients are evaluated concurrently, on the
+     * {@link AlgorithmUtilities#getEvaluationPool() evaluation pool}.
      * @param monitor If not <code>null</code>, this object will be notified
      *                of milestones within the computation. The object is also
      *                given a chance to cancel the computation.
@@ -54,16 +57,23 @@ public final class GradientDescent {
                 monitor.iterationStarted(iteration);
             }
 
+            // If another algorithm sharing the function has refined it, the values of the solutions are stale.
+            if (wrapper.wasRefined()) {
+                GradientDescentFunctions.reevaluateSolutions(solutions, wrapper);
+                bestSolution = solutions.stream()
+                        .max(Comparator.comparingDouble(Solution::getFx))
+                        .orElseThrow()
+                        .clone();
+            }
+
             solutions.stream()
                      .filter(solution -> !solution.isConverged())
                      .forEach(System.out::println);
             System.out.println("Converges: " + solutions.stream().filter(Solution::isConverged).count() + "\n");
 
-            for (Solution solution : solutions)
-                GradientDescentFunctions.findGradient(solution, wrapper, n, h);
+            GradientDescentFunctions.findGradients(solutions, wrapper, n, h);
 
-            for (Solution solution : solutions)
-                GradientDescentFunctions.findNewSolution(solution, wrapper, n, precision);
+            GradientDescentFunctions.findNewSolutions(solutions, wrapper, n, precision);
 
             // find best solution
             Solution newBest = solutions.stream()
@@ -84,9 +94,22 @@ public final class GradientDescent {
                 monitor.writeLine("(iter = " + iteration + ") " + bestSolution);
 
             // check stop condition
+            boolean stopping = false;
             if (solutions.stream().allMatch(Solution::isConverged))         // all solutions converged
                 allConverged = true;
             else if (convergeAtMaxEquals && numberOfEquals >= maxEquals)    // has not improved in a while
+                stopping = true;
+
+            if ((allConverged || stopping) && wrapper.refine()) {
+                // The function has switched to a finer approximation; re-evaluate the solutions and continue.
+                GradientDescentFunctions.reevaluateSolutions(solutions, wrapper);
+                bestSolution = solutions.stream()
+                        .max(Comparator.comparingDouble(Solution::getFx))
+                        .orElseThrow()
+                        .clone();
+                allConverged = false;
+                numberOfEquals = 0;
+            } else if (stopping)
                 break;
 
             iteration++;
@@ -5,14 +5,22 @@ import hicupp.MonitoringFunctionWrapper;
 import hicupp.algorithms.AlgorithmUtilities;
 
 import java.util.ArrayList;
+import java.util.List;
 
 final class GradientDescentFunctions {
     public static ArrayList<Solution> generateRandomSolutions(int numberOfSolutions, int n, MonitoringFunctionWrapper wrapper)
             throws CancellationException {
         ArrayList<Solution> solutions = new ArrayList<>(numberOfSolutions);
 
+        final double[][] x = new double[numberOfSolutions][];
         for (int i = 0; i < numberOfSolutions; i++)
-            solutions.add(generateRandomSolution(n, wrapper));
+            x[i] = i == 0 ? AlgorithmUtilities.generateStartingArguments(n) :
+                            AlgorithmUtilities.generateRandomArguments(n, 1);
+
+        final double[] fx = new double[numberOfSolutions];
+        wrapper.evaluate(x, fx, AlgorithmUtilities.getEvaluationPool());
+        for (int i = 0; i < numberOfSolutions; i++)
+            solutions.add(new Solution(x[i], fx[i]));
 
         return solutions;
     }
@@ -33,75 +41,196 @@ final class GradientDescentFunctions {
         solution.setFx(newSolution.getFx());
         solution.setGradient(new double[n]);
         solution.setDelta(Double.MAX_VALUE);
+        solution.setGradientCurrent(false);
     }
 
-    public static void findGradient(Solution solution, MonitoringFunctionWrapper wrapper, int n, double h)
+    /**
+     * Re-evaluates the solutions concurrently after the function has been refined, and marks them as not
+     * converged, with their gradients out of date.
+     */
+    public static void reevaluateSolutions(List<Solution> solutions, MonitoringFunctionWrapper wrapper)
             throws CancellationException {
-        if (!solution.isConverged()) {
-            final double[] x_current = solution.getX().clone();
-            final double fx_current = solution.getFx();
-            double[] gradient_current = new double[n];
+        final double[][] x = new double[solutions.size()][];
+        for (int i = 0; i < x.length; i++)
+            x[i] = solutions.get(i).getX();
+
+        final double[] fx = new double[x.length];
+        wrapper.evaluate(x, fx, AlgorithmUtilities.getEvaluationPool());
+        for (int i = 0; i < x.length; i++) {
+            final Solution solution = solutions.get(i);
+            solution.setFx(fx[i]);
+            solution.setDelta(Double.MAX_VALUE);
+            solution.setConverged(false);
+            solution.setGradientCurrent(false);
+        }
+    }
 
-            for (int j = 0; j < n; j++) { // each axis
-                double[] x_new = x_current.clone();
+    /**
+     * Finds the gradient of each solution that has not converged. If the function provides its gradient, it is
+     * computed analytically, unless {@link #findNewSolutions} already did so. Otherwise it is estimated by
+     * forward differences,
+     * or by backward differences along axes where the function decreases or the forward step
+     * leaves the unit ball. The probes of all solutions are evaluated as one batch, and the
+     * backward probes as a second; the gradients and each batch of probes are evaluated concurrently on the
+     * {@link AlgorithmUtilities#getEvaluationPool() evaluation pool}, so that the solutions that have
+     * converged leave the threads to those that have not.
+     */
+    public static void findGradients(List<Solution> solutions, MonitoringFunctionWrapper wrapper, int n, double h)
+            throws CancellationException {
+        final List<Solution> active = solutions.stream()
+                .filter(solution -> !solution.isConverged())
+                .toList();
+        if (wrapper.isGradientAvailable()) {
+            final List<Solution> stale = active.stream()
+                    .filter(solution -> !solution.isGradientCurrent())
+                    .toList();
+            final double[][] x = new double[stale.size()][];
+            final double[][] gradients = new double[stale.size()][n];
+            for (int s = 0; s < x.length; s++)
+                x[s] = stale.get(s).getX();
+            wrapper.evaluate(x, new double[x.length], gradients, AlgorithmUtilities.getEvaluationPool());
+            for (int s = 0; s < x.length; s++) {
+                stale.get(s).setGradient(gradients[s]);
+                stale.get(s).setGradientCurrent(true);
+            }
+            return;
+        }
+
+        final int probeCount = active.size() * n;
+        if (probeCount == 0)
+            return;
 
+        // forward probes, each axis of each solution
+        final double[][] x_probe = new double[probeCount][];
+        for (int s = 0; s < active.size(); s++) {
+            final double[] x_current = active.get(s).getX();
+            for (int j = 0; j < n; j++) {
+                double[] x_new = x_current.clone();
                 x_new[j] += h;
-                double fx_new = wrapper.evaluate(x_new);
-                if (fx_new < fx_current || Math.abs(x_new[j]) > 1) {  // go opposite
-                    x_new[j] -= h * 2;
-                    fx_new = wrapper.evaluate(x_new);
-                }
+                x_probe[s * n + j] = x_new;
+            }
+        }
 
-                double gradient_axis = (fx_new - fx_current) / h;
-                gradient_current[j] = gradient_axis;
+        // a forward probe outside the bounds would be replaced anyway, so it is not evaluated
+        final List<double[]> inBounds = new ArrayList<>(probeCount);
+        for (int p = 0; p < probeCount; p++)
+            if (Math.abs(x_probe[p][p % n]) <= 1)
+                inBounds.add(x_probe[p]);
+        final double[] fx_inBounds = new double[inBounds.size()];
+        wrapper.evaluate(inBounds.toArray(new double[0][]), fx_inBounds, AlgorithmUtilities.getEvaluationPool());
+
+        final double[] fx_probe = new double[probeCount];
+        final List<Integer> opposite = new ArrayList<>();
+        for (int p = 0, q = 0; p < probeCount; p++) {
+            final int j = p % n;
+            if (Math.abs(x_probe[p][j]) <= 1) {
+                fx_probe[p] = fx_inBounds[q++];
+                if (!(fx_probe[p] < active.get(p / n).getFx()))
+                    continue;
             }
+            x_probe[p][j] -= h * 2;   // go opposite
+            opposite.add(p);
+        }
 
+        // backward probes
+        final double[][] x_opposite = new double[opposite.size()][];
+        for (int o = 0; o < x_opposite.length; o++)
+            x_opposite[o] = x_probe[opposite.get(o)];
+        final double[] fx_opposite = new double[x_opposite.length];
+        wrapper.evaluate(x_opposite, fx_opposite, AlgorithmUtilities.getEvaluationPool());
+        for (int o = 0; o < x_opposite.length; o++)
+            fx_probe[opposite.get(o)] = fx_opposite[o];
+
+        for (int s = 0; s < active.size(); s++) {
+            final Solution solution = active.get(s);
+            double[] gradient_current = new double[n];
+            for (int j = 0; j < n; j++)
+                gradient_current[j] = (fx_probe[s * n + j] - solution.getFx()) / h;
             solution.setGradient(gradient_current);
         }
     }
 
-    public static void findNewSolution(Solution solution, MonitoringFunctionWrapper wrapper,
-                                       int n, double precision)
-            throws  CancellationException {
-        if (!solution.isConverged()) {
-            final double[] gradient = solution.getGradient().clone();
-            double[] x = solution.getX().clone();
-
-            // add gradients
-            for (int i = 0; i < n; i++) {
-                double newAxis = x[i] + gradient[i] * solution.getLearningRate();
-                int counter = 0;
-
-                while (Math.abs(newAxis) > 1 && counter < 1000) {     // keep trying until in bounds
-                    solution.setLearningRate(solution.getLearningRate() / 2);
-                    newAxis = x[i] + gradient[i] * solution.getLearningRate();
-                    counter++;
-                }
-
-                if (Math.abs(newAxis) > 1) {        // still out of bounds
+    /**
+     * Steps each solution that has not converged along its gradient. The steps are taken first, and the new
+     * arguments, with their gradients if the function provides them, are then evaluated concurrently on the
+     * {@link AlgorithmUtilities#getEvaluationPool() evaluation pool}.
+     */
+    public static void findNewSolutions(List<Solution> solutions, MonitoringFunctionWrapper wrapper,
+                                        int n, double precision)
+            throws CancellationException {
+        final List<Solution> stepped = new ArrayList<>(solutions.size());
+        final List<double[]> steps = new ArrayList<>(solutions.size());
+        for (Solution solution : solutions) {
+            if (!solution.isConverged()) {
+                final double[] x = step(solution, n);
+                if (x == null) {        // still out of bounds
                     System.out.println("Out of bounds");
                     resetSolution(solution, n, wrapper);
-                    return;
-                } else
-                    x[i] = newAxis;
+                } else {
+                    stepped.add(solution);
+                    steps.add(x);
+                }
             }
+        }
 
-            double newFx = wrapper.evaluate(x);
-            solution.setDelta(Math.abs(newFx - solution.getFx()));
+        // with an analytic gradient, compute the next step's gradient along with the value
+        final double[][] x = steps.toArray(new double[0][]);
+        final double[] newFx = new double[x.length];
+        final double[][] newGradients = wrapper.isGradientAvailable() ? new double[x.length][n] : null;
+        if (newGradients != null)
+            wrapper.evaluate(x, newFx, newGradients, AlgorithmUtilities.getEvaluationPool());
+        else
+            wrapper.evaluate(x, newFx, AlgorithmUtilities.getEvaluationPool());
+
+        for (int s = 0; s < x.length; s++) {
+            final Solution solution = stepped.get(s);
+            solution.setDelta(Math.abs(newFx[s] - solution.getFx()));
 
             if (solution.getDelta() < precision) {   // converged
                 System.out.println("Solution converged");
                 solution.setConverged(true);
             }
 
-            if (newFx < 0) resetSolution(solution, n, wrapper);    // error
+            if (newFx[s] < 0) resetSolution(solution, n, wrapper);    // error
             else {
-                if (newFx < solution.getFx())   // overstepped
+                if (newFx[s] < solution.getFx())   // overstepped
                     solution.setLearningRate(solution.getLearningRate() / 2);
 
-                solution.setX(x);
-                solution.setFx(newFx);
+                solution.setX(x[s]);
+                solution.setFx(newFx[s]);
+                if (newGradients != null) {
+                    solution.setGradient(newGradients[s]);
+                    solution.setGradientCurrent(true);
+                }
             }
         }
     }
+
+    /**
+     * Adds the gradient of the solution, times its learning rate, to its arguments, halving the learning rate
+     * until they stay within bounds.
+     * @return The new arguments, or <code>null</code> if they do not stay within bounds.
+     */
+    private static double[] step(Solution solution, int n) {
+        final double[] gradient = solution.getGradient().clone();
+        double[] x = solution.getX().clone();
+
+        // add gradients
+        for (int i = 0; i < n; i++) {
+            double newAxis = x[i] + gradient[i] * solution.getLearningRate();
+            int counter = 0;
+
+            while (Math.abs(newAxis) > 1 && counter < 1000) {     // keep trying until in bounds
+                solution.setLearningRate(solution.getLearningRate() / 2);
+                newAxis = x[i] + gradient[i] * solution.getLearningRate();
+                counter++;
+            }
+
+            if (Math.abs(newAxis) > 1)          // still out of bounds
+                return null;
+            else
+                x[i] = newAxis;
+        }
+        return x;
+    }
 }
@@ -12,6 +12,7 @@ class Solution implements Cloneable {
     private boolean converged;
     private double learningRate;
     private double delta;
+    private boolean gradientCurrent;
 
     public Solution (double[] x, double fx) {
         this.x = x;
@@ -71,6 +72,17 @@ class Solution implements Cloneable {
         this.learningRate = learningRate;
     }
 
+    /**
+     * Whether the gradient was computed analytically at the current x, so that it need not be computed again
+     */
+    public boolean isGradientCurrent() {
+        return gradientCurrent;
+    }
+
+    public void setGradientCurrent(boolean gradientCurrent) {
+        this.gradientCurrent = gradientCurrent;
+    }
+
     public double getDelta() {
         return delta;
     }
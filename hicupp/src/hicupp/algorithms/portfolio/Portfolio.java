@@ -0,0 +1,381 @@
+package hicupp.algorithms.portfolio;
+
+import hicupp.*;
+import hicupp.algorithms.AlgorithmParameters;
+import hicupp.algorithms.AlgorithmUtilities;
+import hicupp.algorithms.Simplex;
+import hicupp.algorithms.ga.GeneticAlgorithm;
+import hicupp.algorithms.gd.GradientDescent;
+import hicupp.algorithms.sa.SimulatedAnnealing;
+import interactivehicupp.TextTools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Portfolio {
+
+    /**
+     * The outcome of a race.
+     * @param x The arguments found.
+     * @param fx The value of the function at <code>x</code>.
+     * @param winnerIndex The {@link FunctionMaximizer} index of the algorithm that found <code>x</code>, or -1
+     *                    if no algorithm converged within the evaluation budget and <code>x</code> is the best
+     *                    argument list evaluated.
+     * @param evaluationCount The number of evaluations of all algorithms together.
+     */
+    public record Result(double[] x, double fx, int winnerIndex, long evaluationCount) {
+    }
+
+    /**
+     * Maximize a function by racing several algorithms on it concurrently; see {@link #race}.
+     * @param monitor If not <code>null</code>, this object will be notified
+     *                of milestones within the computation. The object is also
+     *                given a chance to cancel the computation.
+     * @param parameters must be type {@link PortfolioParameters}, or <code>null</code> for
+     *                   {@link PortfolioParameters#DEFAULT}
+     * @return An argument list for which the function is (sufficiently) maximal.
+     * @exception NoConvergenceException If no algorithm finds a maximum.
+     * @exception CancellationException Passed through from the <code>monitor</code>'s
+     * {@link Monitor#continuing()} method.
+     */
+    public static double[] maximize(Function function, Monitor monitor, AlgorithmParameters parameters)
+            throws NoConvergenceException, CancellationException {
+        return race(function, monitor, parameters).x();
+    }
+
+    /**
+     * Runs the simplex algorithm and each algorithm that has parameters concurrently, each on its own thread, on
+     * the same function, and returns the best maximum found, reporting to the <code>monitor</code> which
+     * algorithm won.
+     * <p>The race tracks the best value that each algorithm has evaluated. Once an algorithm converges, every
+     * algorithm whose best value so far is below the value it converged to is cancelled; the others run on, as
+     * they may still beat it. Once the algorithms together have spent the evaluation budget, all are cancelled,
+     * and if none converged, the best argument list evaluated is returned.</p>
+     * <p>The monitor is notified of the evaluations of all algorithms, and given a chance to cancel the race
+     * whenever any algorithm checks. The log lines of each algorithm are prefixed with its name.</p>
+     * @exception NoConvergenceException If no algorithm converges and none evaluated the function.
+     * @exception CancellationException Passed through from the <code>monitor</code>'s
+     * {@link Monitor#continuing()} method.
+     */
+    public static Result race(Function function, Monitor monitor, AlgorithmParameters parameters)
+            throws NoConvergenceException, CancellationException {
+        final PortfolioParameters portfolioParameters;
+        if (parameters == null)
+            portfolioParameters = PortfolioParameters.DEFAULT;
+        else if (parameters instanceof PortfolioParameters p)
+            portfolioParameters = p;
+        else
+            throw new RuntimeException("Wrong parameters type.");
+
+        // The algorithms run on threads of their own; they all start from the caller's starting arguments.
+        final double[] start = AlgorithmUtilities.getStartingArguments();
+        AlgorithmUtilities.setStartingArguments(null);
+
+        final Race race = new Race(function, monitor, portfolioParameters.evaluationBudget(), start);
+        race.add(FunctionMaximizer.SIMPLEX_ALGORITHM_INDEX, null);
+        if (portfolioParameters.annealingParameters() != null)
+            race.add(FunctionMaximizer.ANNEALING_ALGORITHM_INDEX, portfolioParameters.annealingParameters());
+        if (portfolioParameters.geneticParameters() != null)
+            race.add(FunctionMaximizer.GENETIC_ALGORITHM_INDEX, portfolioParameters.geneticParameters());
+        if (portfolioParameters.gradientParameters() != null)
+            race.add(FunctionMaximizer.GRADIENT_ALGORITHM_INDEX, portfolioParameters.gradientParameters());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(race.racers.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<>(race.racers.size());
+            for (Racer racer : race.racers)
+                futures.add(executor.submit(racer::run));
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted.");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Racers cancelled by shutdownNow may still be reporting to the monitor.
+        if (monitor != null)
+            synchronized (monitor) {
+                monitor.continuing();
+            }
+
+        // The function may have been refined during the race, so the candidates are evaluated again.
+        Racer winner = null;
+        double[] x = null;
+        double fx = Double.NEGATIVE_INFINITY;
+        for (Racer racer : race.racers) {
+            if (racer.x != null) {
+                double value = function.evaluate(racer.x.clone());
+                if (winner == null || value > fx) {
+                    winner = racer;
+                    x = racer.x;
+                    fx = value;
+                }
+            }
+        }
+        if (winner == null) {
+            for (Racer racer : race.racers) {
+                double[] best = racer.getBestX();
+                if (best != null) {
+                    double value = function.evaluate(best.clone());
+                    if (x == null || value > fx) {
+                        x = best;
+                        fx = value;
+                    }
+                }
+            }
+            if (x == null)
+                throw new NoConvergenceException("No algorithm converged.");
+        }
+
+        final String[] names = FunctionMaximizer.getAlgorithmNames();
+        if (monitor != null)
+            synchronized (monitor) {
+                if (winner != null) {
+                    monitor.iterationStarted(winner.iterations);
+                    monitor.writeLine("Portfolio winner: " + names[winner.algorithmIndex] +
+                            " (fx = " + TextTools.formatScientific(fx) + ")");
+                } else
+                    monitor.writeLine("Portfolio: no algorithm converged" +
+                            (race.budget > 0 ? " within " + race.budget + " evaluations" : "") +
+                            "; best value found " + TextTools.formatScientific(fx));
+            }
+
+        return new Result(x, fx, winner == null ? -1 : winner.algorithmIndex, race.evaluations.get());
+    }
+
+    /**
+     * The state shared by the algorithms of one race.
+     */
+    private static final class Race {
+        final Function function;
+        final Monitor monitor;
+        final int budget;
+        final List<Racer> racers = new ArrayList<>();
+        final AtomicLong evaluations = new AtomicLong();
+        /** The arguments from which the algorithms start, or <code>null</code> for random ones. */
+        final double[] start;
+        /** The best value to which an algorithm has converged. */
+        volatile double winningFx = Double.NEGATIVE_INFINITY;
+        /** The refinement count of the function to which the best values belong. */
+        volatile int refinementCount;
+
+        Race(Function function, Monitor monitor, int budget, double[] start) {
+            this.function = function;
+            this.monitor = monitor;
+            this.budget = budget;
+            this.start = start;
+            this.refinementCount = function.getRefinementCount();
+        }
+
+        void add(int algorithmIndex, AlgorithmParameters parameters) {
+            racers.add(new Racer(this, algorithmIndex, parameters));
+        }
+
+        synchronized void converged(double fx) {
+            if (fx > winningFx)
+                winningFx = fx;
+        }
+
+        void continuing(Racer racer) throws CancellationException {
+            if (monitor != null)
+                synchronized (monitor) {
+                    monitor.continuing();
+                }
+            if (budget > 0 && evaluations.get() >= budget)
+                throw new CancellationException("The evaluation budget is spent.");
+            checkRefinement();
+            if (racer.getBestFx() < winningFx)
+                throw new CancellationException("Outrun by an algorithm that converged.");
+        }
+
+        void evaluationStarted() {
+            evaluations.incrementAndGet();
+            if (monitor != null)
+                synchronized (monitor) {
+                    monitor.evaluationStarted();
+                }
+        }
+
+        void writeLine(String text) {
+            if (monitor != null)
+                synchronized (monitor) {
+                    monitor.writeLine(text);
+                }
+        }
+
+        /**
+         * Refines the function for all algorithms; each sees the change through the function's refinement count.
+         */
+        synchronized boolean refine() {
+            boolean refined = function.refine();
+            if (refined)
+                forgetBest();
+            else
+                checkRefinement();
+            return refined;
+        }
+
+        /**
+         * Forgets the best values if the function has been refined since they were evaluated, as they no longer
+         * compare with those evaluated after.
+         */
+        synchronized void checkRefinement() {
+            if (function.getRefinementCount() != refinementCount)
+                forgetBest();
+        }
+
+        private void forgetBest() {
+            refinementCount = function.getRefinementCount();
+            winningFx = Double.NEGATIVE_INFINITY;
+            for (Racer racer : racers)
+                racer.forgetBest();
+        }
+    }
+
+    /**
+     * One algorithm of a race, which it sees as its monitor and its function.
+     */
+    private static final class Racer implements Monitor, DifferentiableFunction {
+        final Race race;
+        final int algorithmIndex;
+        final AlgorithmParameters parameters;
+        final String name;
+
+        private double bestFx = Double.NEGATIVE_INFINITY;
+        private double[] bestX;
+
+        /** The result of the algorithm, or <code>null</code> if it did not converge. */
+        volatile double[] x;
+        volatile int iterations;
+
+        Racer(Race race, int algorithmIndex, AlgorithmParameters parameters) {
+            this.race = race;
+            this.algorithmIndex = algorithmIndex;
+            this.parameters = parameters;
+            this.name = FunctionMaximizer.getAlgorithmNames()[algorithmIndex];
+        }
+
+        void run() {
+            AlgorithmUtilities.setStartingArguments(race.start);
+            try {
+                double[] result = switch (algorithmIndex) {
+                    case FunctionMaximizer.ANNEALING_ALGORITHM_INDEX ->
+                            SimulatedAnnealing.maximize(this, this, parameters);
+                    case FunctionMaximizer.GENETIC_ALGORITHM_INDEX ->
+                            GeneticAlgorithm.maximize(this, this, parameters);
+                    case FunctionMaximizer.GRADIENT_ALGORITHM_INDEX ->
+                            GradientDescent.maximize(this, this, parameters);
+                    default -> Simplex.maximize(this, this);
+                };
+                x = result;
+                race.converged(race.function.evaluate(result.clone()));
+            } catch (CancellationException e) {
+                race.writeLine(name + ": stopped. " + (e.getMessage() != null ? e.getMessage() : ""));
+            } catch (NoConvergenceException e) {
+                race.writeLine(name + ": did not converge.");
+            } finally {
+                AlgorithmUtilities.setStartingArguments(null);
+            }
+        }
+
+        synchronized double getBestFx() {
+            return bestFx;
+        }
+
+        synchronized double[] getBestX() {
+            return bestX;
+        }
+
+        synchronized void forgetBest() {
+            bestFx = Double.NEGATIVE_INFINITY;
+            bestX = null;
+        }
+
+        /**
+         * Records a value that the algorithm evaluated, unless the function was refined after it started to,
+         * when it had been refined <code>refinementCount</code> times.
+         */
+        private synchronized void record(double[] arguments, double value, int refinementCount) {
+            if (refinementCount == race.refinementCount && value > bestFx) {
+                bestFx = value;
+                bestX = arguments;
+            }
+        }
+
+        // Monitor
+
+        public void continuing() throws CancellationException {
+            race.continuing(this);
+        }
+
+        public void iterationStarted(int iterationNumber) {
+            iterations = iterationNumber;
+        }
+
+        public void evaluationStarted() {
+            race.evaluationStarted();
+        }
+
+        public void writeLine(String text) {
+            race.writeLine(name + ": " + text);
+        }
+
+        // Function
+
+        public int getArgumentCount() {
+            return race.function.getArgumentCount();
+        }
+
+        // The arguments are copied before the function sees them, as it may modify them.
+
+        public double evaluate(double[] arguments) {
+            double[] copy = arguments.clone();
+            int refinementCount = race.refinementCount;
+            double value = race.function.evaluate(arguments);
+            record(copy, value, refinementCount);
+            return value;
+        }
+
+        public void evaluate(double[][] argumentSets, double[] values) {
+            double[][] copies = new double[argumentSets.length][];
+            for (int s = 0; s < argumentSets.length; s++)
+                copies[s] = argumentSets[s].clone();
+            int refinementCount = race.refinementCount;
+            race.function.evaluate(argumentSets, values);
+            for (int s = 0; s < argumentSets.length; s++)
+                record(copies[s], values[s], refinementCount);
+        }
+
+        public boolean refine() {
+            return race.refine();
+        }
+
+        public int getRefinementCount() {
+            return race.function.getRefinementCount();
+        }
+
+        public boolean isGradientAvailable() {
+            return race.function instanceof DifferentiableFunction differentiable &&
+                    differentiable.isGradientAvailable();
+        }
+
+        public double evaluate(double[] arguments, double[] gradient) {
+            if (!isGradientAvailable())
+                throw new RuntimeException("The gradient is not available.");
+            double[] copy = arguments.clone();
+            int refinementCount = race.refinementCount;
+            double value = ((DifferentiableFunction) race.function).evaluate(arguments, gradient);
+            record(copy, value, refinementCount);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hicupp.algorithms.portfolio;
+
+import hicupp.algorithms.AlgorithmParameters;
+import hicupp.algorithms.ga.GeneticAlgorithmParameters;
+import hicupp.algorithms.gd.GradientDescentParameters;
+import hicupp.algorithms.sa.SimulatedAnnealingParameters;
+
+/**
+ * The parameters of the algorithms that {@link Portfolio} races, each <code>null</code> to leave that algorithm
+ * out; the simplex algorithm always races. <code>evaluationBudget</code> bounds the number of evaluations of all
+ * algorithms together, or is zero for no bound.
+ */
+public record PortfolioParameters(SimulatedAnnealingParameters annealingParameters,
+                                  GeneticAlgorithmParameters geneticParameters,
+                                  GradientDescentParameters gradientParameters,
+                                  int evaluationBudget) implements AlgorithmParameters {
+
+    /**
+     * Races all algorithms with the default parameters of the configuration dialogs and no evaluation budget.
+     */
+    public static final PortfolioParameters DEFAULT = new PortfolioParameters(
+            new SimulatedAnnealingParameters(100, true, 20),
+            new GeneticAlgorithmParameters(20, 30, 5, 10, false, 5),
+            new GradientDescentParameters(100, 5, true, 20),
+            0);
+
+    public PortfolioParameters {
+        if (evaluationBudget < 0)
+            throw new IllegalArgumentException("evaluationBudget must not be negative.");
+    }
+}
@@ -36,7 +36,7 @@ public class SimulatedAnnealing {
         final int n = function.getArgumentCount();
 
         // Initial random
-        double[] x = AlgorithmUtilities.generateRandomArguments(n, 1);
+        double[] x = AlgorithmUtilities.generateStartingArguments(n);
 
         // Compute function values
         double fx = wrapper.evaluate(x);
@@ -56,6 +56,12 @@ public class SimulatedAnnealing {
                 monitor.iterationStarted(iteration);
             }
 
+            // If another algorithm sharing the function has refined it, the values of the guesses are stale.
+            if (wrapper.wasRefined()) {
+                fx = wrapper.evaluate(x);
+                fx_best = wrapper.evaluate(x_best);
+            }
+
             // Generate new vector from -temperature to temperature
             double[] vector = AlgorithmUtilities.generateRandomArguments(n, temperature);
 
@@ -98,7 +104,15 @@ public class SimulatedAnnealing {
                 if (delta <= 1e-4) numberOfEquals++;
                 else numberOfEquals = 0;
 
-                if (numberOfEquals >= maxEquals) break;
+                if (numberOfEquals >= maxEquals) {
+                    if (!wrapper.refine())
+                        break;
+
+                    // The function has switched to a finer approximation; continue from the current guesses.
+                    fx = wrapper.evaluate(x);
+                    fx_best = wrapper.evaluate(x_best);
+                    numberOfEquals = 0;
+                }
             }
 
             // log
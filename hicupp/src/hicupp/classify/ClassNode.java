@@ -11,6 +11,7 @@ public final class ClassNode extends Observable implements SetOfPoints {
   private ClassSplit child;
   private final Node node;
   private int pointCount;
+  private int totalWeight;
   private double[] sums;
   private double[] sumsOfSquares;
   private ProjectionStatistics projectionStatisticsLookasideBuffer;
@@ -67,6 +68,18 @@ public final class ClassNode extends Observable implements SetOfPoints {
     return pointCount;
   }
   
+  /**
+   * Returns the number of points in this class, counting weighted points as
+   * many times as their weights; see {@link SetOfPoints#isWeighted()}.
+   */
+  public int getTotalWeight() {
+    return totalWeight;
+  }
+  
+  public boolean isWeighted() {
+    return tree.getPoints().isWeighted();
+  }
+  
   private class NodePointIterator implements PointIterator {
     private PointIterator iter = tree.getPoints().createIterator();
     private int iterIndex = -1;
@@ -105,19 +118,84 @@ public final class ClassNode extends Observable implements SetOfPoints {
     public double getCoordinate(int index) {
       return iter.getCoordinate(index);
     }
+    
+    public int getWeight() {
+      return iter.getWeight();
+    }
+    
+    /**
+     * Copies the points straight from the coordinate array of the tree's
+     * points, if they have one.
+     */
+    public void nextPoints(int count, int ndims, double[] buffer, int offset, int[] weights) {
+      SetOfPoints points = tree.getPoints();
+      double[] array = points.getCoordinateArray();
+      if (array == null) {
+        PointIterator.super.nextPoints(count, ndims, buffer, offset, weights);
+        return;
+      }
+      int stride = points.getCoordinateStride();
+      for (int k = 0; k < count; k++, offset += ndims) {
+        while (iterIndex < nextIndex) {
+          iter.next();
+          iterIndex++;
+        }
+        System.arraycopy(array, iterIndex * stride, buffer, offset, ndims);
+        if (weights != null)
+          weights[k] = iter.getWeight();
+        step();
+      }
+    }
   }
 
   public hicupp.PointIterator createIterator() {
     return new NodePointIterator();
   }
   
+  /**
+   * Projects the points of this class straight from the coordinate array of
+   * the tree's points, if they have one, and otherwise projects all points of
+   * the tree through their set's own projection and keeps the values of the
+   * points in this class.
+   */
+  public void project(double[] axis, double[] values) {
+    SetOfPoints points = tree.getPoints();
+    double[] array = points.getCoordinateArray();
+    int ndims = points.getDimensionCount();
+    int stride = points.getCoordinateStride();
+    double[] allValues = null;
+    if (array == null) {
+      allValues = new double[points.getPointCount()];
+      points.project(axis, allValues);
+    }
+    
+    int serialNumber = node.getSerialNumber();
+    byte[] classes = tree.getClasses();
+    int k = 0;
+    for (int i = 0; i < classes.length; i++) {
+      int pointClass = classes[i] & 0xff;
+      while (pointClass > serialNumber)
+        pointClass >>>= 1;
+      if (pointClass == serialNumber) {
+        if (allValues != null)
+          values[k++] = allValues[i];
+        else {
+          double value = 0.0;
+          for (int j = 0, offset = i * stride; j < ndims; j++)
+            value += array[offset + j] * axis[j];
+          values[k++] = value;
+        }
+      }
+    }
+  }
+  
   public double getMean(int index) {
-    return sums[index] / pointCount;
+    return sums[index] / totalWeight;
   }
   
   public double getStandardDeviation(int index) {
     double mean = getMean(index);
-    return Math.sqrt(sumsOfSquares[index] / pointCount - mean * mean);
+    return Math.sqrt(sumsOfSquares[index] / totalWeight - mean * mean);
   }
 
   public ProjectionStatistics getProjectionStatisticsLookasideBuffer() {
@@ -136,6 +214,7 @@ public final class ClassNode extends Observable implements SetOfPoints {
   
   void newPoints() {
     pointCount = 0;
+    totalWeight = 0;
     projectionStatisticsLookasideBuffer = null;
     int ndims = tree.getPoints().getDimensionCount();
     sums = new double[ndims];
@@ -145,17 +224,18 @@ public final class ClassNode extends Observable implements SetOfPoints {
       child.newPoints();
   }
   
-  int addPointAndClassify(double[] point) {
+  int addPointAndClassify(double[] point, int weight) {
     pointCount++;
+    totalWeight += weight;
     for (int j = 0; j < point.length; j++) {
-      sums[j] += point[j];
-      sumsOfSquares[j] += point[j] * point[j];
+      sums[j] += weight * point[j];
+      sumsOfSquares[j] += weight * point[j] * point[j];
     }
     
     if (child == null)
       return node.getSerialNumber();
     else
-      return child.addPointAndClassify(point);
+      return child.addPointAndClassify(point, weight);
   }
 
   private void nodeChanged(Object typeOfChange) {
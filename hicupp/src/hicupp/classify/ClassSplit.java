@@ -84,9 +84,9 @@ public final class ClassSplit extends Observable {
     rightChild.newPoints();
   }
   
-  int addPointAndClassify(double[] point) {
-    return split.classify(point) ? leftChild.addPointAndClassify(point) :
-                                   rightChild.addPointAndClassify(point);
+  int addPointAndClassify(double[] point, int weight) {
+    return split.classify(point) ? leftChild.addPointAndClassify(point, weight) :
+                                   rightChild.addPointAndClassify(point, weight);
   }
   
   void addParentPointsToChildren() {
@@ -96,15 +96,20 @@ public final class ClassSplit extends Observable {
     byte[] classes = tree.getClasses();
     int serialNumber = parent.getNode().getSerialNumber();
     PointIterator iter = points.createIterator();
-    for (int i = 0; i < classes.length; i++) {
-      iter.next();
-      int pointClass = classes[i] & 0xff;
-      while (pointClass > serialNumber)
-        pointClass >>>= 1;
-      if (pointClass == serialNumber) {
-        for (int j = 0; j < ndims; j++)
-          point[j] = iter.getCoordinate(j);
-        classes[i] = (byte) addPointAndClassify(point);
+    final int B = PointBlocks.BLOCK_SIZE;
+    double[] buffer = new double[B * ndims];
+    int[] weights = new int[B];
+    for (int first = 0; first < classes.length; first += B) {
+      int count = Math.min(B, classes.length - first);
+      iter.nextPoints(count, ndims, buffer, 0, weights);
+      for (int k = 0; k < count; k++) {
+        int pointClass = classes[first + k] & 0xff;
+        while (pointClass > serialNumber)
+          pointClass >>>= 1;
+        if (pointClass == serialNumber) {
+          System.arraycopy(buffer, k * ndims, point, 0, ndims);
+          classes[first + k] = (byte) addPointAndClassify(point, weights[k]);
+        }
       }
     }
   }
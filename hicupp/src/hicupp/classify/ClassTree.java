@@ -39,12 +39,17 @@ public final class ClassTree {
     
     PointIterator iter = points.createIterator();
     
+    final int B = PointBlocks.BLOCK_SIZE;
+    double[] buffer = new double[B * ndims];
+    int[] weights = new int[B];
     double[] point = new double[ndims];
-    for (int i = 0; i < pointCount; i++) {
-      iter.next();
-      for (int j = 0; j < ndims; j++)
-        point[j] = iter.getCoordinate(j);
-      classes[i] = (byte) root.addPointAndClassify(point);
+    for (int first = 0; first < pointCount; first += B) {
+      int count = Math.min(B, pointCount - first);
+      iter.nextPoints(count, ndims, buffer, 0, weights);
+      for (int k = 0; k < count; k++) {
+        System.arraycopy(buffer, k * ndims, point, 0, ndims);
+        classes[first + k] = (byte) root.addPointAndClassify(point, weights[k]);
+      }
     }
     
     root.notifySubtreeNodeObservers("New Points");
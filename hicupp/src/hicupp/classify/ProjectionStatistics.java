@@ -10,9 +10,13 @@ public class ProjectionStatistics {
   public ProjectionStatistics(SetOfPoints points, double[] axis) {
     this.axis = (double[]) axis.clone();
     double[] values = Projector.project(points, this.axis);
-    Sorter.quickSort(values);
-    histogram = new Histogram(values);
-    bestThreshold = Clusterer.split(values);
+    double[] weights = Projector.getWeights(points);
+    if (weights == null)
+      Sorter.sort(values);
+    else
+      Sorter.sort(values, weights);
+    histogram = new Histogram(values, weights);
+    bestThreshold = Clusterer.split(values, weights);
   }
   
   public double getAxisElement(int index) {
@@ -0,0 +1,164 @@
+package hicupp.test;
+
+import hicupp.ArraySetOfPoints;
+import hicupp.ProjectionIndexFunction;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the grid on which the density projection indices of
+ * {@link ProjectionIndexFunction} integrate: as the grid is refined, the
+ * indices approach the integral of the distance between the kernel density
+ * estimate and the standard normal density over the range of the values,
+ * computed here on a far finer grid. As the grid starts half a step below
+ * the range, the relative error falls in proportion to the step, for either
+ * quadrature rule. Also tests that an auto-refining
+ * function evaluates on the coarse grid until it is refined, and on the grid
+ * of the set resolution after.
+ * <p>Run the test from the command line using</p>
+ * <pre>
+ *  java -p bin -m hicupp/hicupp.test.TestDensityGrid
+ * </pre>
+ * <p>The final output should be:</p>
+ * <pre>
+ *  TestDensityGrid completed.
+ *  Total errors reported: 0
+ * </pre>
+ */
+public class TestDensityGrid {
+  /** The grid resolutions, in intervals per bandwidth, in increasing order. */
+  private static final double[] RESOLUTIONS = {1.0, 4.0, 16.0, 64.0};
+
+  /** The number of intervals of the grid of the exact integral. */
+  private static final int EXACT_INTERVAL_COUNT = 1 << 17;
+
+  private static int errorCount;
+
+  public static void main(String[] args) {
+    Random random = new Random(1);
+    final int d = 2;
+    final int n = 400;
+    double[] coordinates = new double[d * n];
+    for (int k = 0; k < n; k++)
+      for (int i = 0; i < d; i++)
+        coordinates[k * d + i] = random.nextGaussian() + (i == 0 && k % 2 == 0 ? 3 : 0);
+    ArraySetOfPoints points = new ArraySetOfPoints(d, coordinates);
+
+    // Hall's index is the one after Friedman's.
+
+    int[] projectionIndices = {ProjectionIndexFunction.FRIEDMANS_PROJECTION_INDEX,
+                               ProjectionIndexFunction.FRIEDMANS_PROJECTION_INDEX + 1};
+    double[][] argumentSets = {{0.0}, {0.6}, {1.0}};
+
+    for (int projectionIndex : projectionIndices) {
+      String name = ProjectionIndexFunction.getProjectionIndexNames()[projectionIndex];
+      for (double[] arguments : argumentSets) {
+        String at = name + " at " + Arrays.toString(arguments);
+        double exact = computeExactIndex(projectionIndex, coordinates, d, arguments);
+
+        for (int quadrature : new int[] {ProjectionIndexFunction.TRAPEZOIDAL_QUADRATURE,
+                                         ProjectionIndexFunction.SIMPSON_QUADRATURE}) {
+          String rule = quadrature == ProjectionIndexFunction.SIMPSON_QUADRATURE ? "Simpson's rule" :
+                        "trapezoidal rule";
+          for (double resolution : RESOLUTIONS) {
+            ProjectionIndexFunction function = new ProjectionIndexFunction(projectionIndex, points);
+            function.setGridResolution(resolution);
+            function.setQuadrature(quadrature);
+            double error = Math.abs(function.evaluate(arguments.clone()) - exact);
+            check(error <= 0.01 / resolution * exact,
+                  "relative error below 1% / " + resolution + " intervals per bandwidth, " + rule, at);
+          }
+        }
+
+        ProjectionIndexFunction refining = new ProjectionIndexFunction(projectionIndex, points);
+        refining.setAutoRefining(true);
+        ProjectionIndexFunction coarse = new ProjectionIndexFunction(projectionIndex, points);
+        coarse.setGridResolution(ProjectionIndexFunction.DEFAULT_GRID_RESOLUTION / 2);
+        ProjectionIndexFunction fine = new ProjectionIndexFunction(projectionIndex, points);
+
+        check(refining.evaluate(arguments.clone()) == coarse.evaluate(arguments.clone()) && refining.getRefinementCount() == 0,
+              "auto-refining function on the coarse grid", at);
+        check(refining.refine() && !refining.refine() && refining.getRefinementCount() == 1,
+              "refining once", at);
+        check(refining.evaluate(arguments.clone()) == fine.evaluate(arguments.clone()),
+              "refined function on the grid of the set resolution", at);
+      }
+    }
+
+    print("\nTestDensityGrid completed.\n");
+    print("Total errors reported: " + errorCount + "\n");
+  }
+
+  /**
+   * Computes the index of the projection onto the axis given by
+   * <code>arguments</code> as the integral from <code>-xl</code> to
+   * <code>xl</code>, where <code>xl</code> is the largest absolute
+   * standardized value, by Simpson's rule on {@value #EXACT_INTERVAL_COUNT}
+   * intervals. The kernels reach four bandwidths, as in the function.
+   */
+  private static double computeExactIndex(int projectionIndex, double[] coordinates, int d, double[] arguments) {
+    double[] axis = new double[d];
+    double sumOfSquares = 0.0;
+    for (int i = 0; i < d - 1; i++) {
+      axis[i] = arguments[i];
+      sumOfSquares += arguments[i] * arguments[i];
+    }
+    axis[d - 1] = Math.sqrt(1.0 - sumOfSquares);
+
+    int n = coordinates.length / d;
+    double[] values = new double[n];
+    double sum = 0.0;
+    for (int k = 0; k < n; k++) {
+      for (int i = 0; i < d; i++)
+        values[k] += coordinates[k * d + i] * axis[i];
+      sum += values[k];
+    }
+    double mean = sum / n;
+    double sumsq = 0.0;
+    for (int k = 0; k < n; k++)
+      sumsq += (values[k] - mean) * (values[k] - mean);
+    double standardDeviation = Math.sqrt(sumsq / n);
+    for (int k = 0; k < n; k++)
+      values[k] = (values[k] - mean) / standardDeviation;
+    Arrays.sort(values);
+
+    double interQuartileRange = values[n * 3 / 4] - values[n / 4];
+    double bandwidth = 1.06 * Math.min(1.0, interQuartileRange / 1.34) * Math.pow(n, -1d/5);
+    double xl = Math.max(-values[0], values[n - 1]);
+
+    double step = 2 * xl / EXACT_INTERVAL_COUNT;
+    double integral = 0.0;
+    for (int j = 0; j <= EXACT_INTERVAL_COUNT; j++) {
+      double x = -xl + j * step;
+      double fhat = 0.0;
+      for (double value : values)
+        if (Math.abs(x - value) <= 4 * bandwidth)
+          fhat += normalDensity((x - value) / bandwidth);
+      fhat /= bandwidth;
+      double phi = normalDensity(x);
+      double distance = projectionIndex == ProjectionIndexFunction.FRIEDMANS_PROJECTION_INDEX ?
+                        (fhat - phi) * (fhat - phi) / 2 / phi :
+                        (fhat - phi) * (fhat - phi);
+      integral += (j == 0 || j == EXACT_INTERVAL_COUNT ? 1 : j % 2 == 1 ? 4 : 2) * distance;
+    }
+    return integral * step / 3;
+  }
+
+  private static double normalDensity(double z) {
+    return Math.exp(z * z / -2) / Math.sqrt(2 * Math.PI);
+  }
+
+  private static void check(boolean passed, String method, String at) {
+    if (passed)
+      print(">    " + method + " for " + at + "... success\n");
+    else {
+      errorCount++;
+      print(">    " + method + " for " + at + "... *** failure ***\n");
+    }
+  }
+
+  private static void print(String s) {
+    System.out.print(s);
+  }
+}
@@ -0,0 +1,142 @@
+package hicupp.test;
+
+import hicupp.ArraySetOfPoints;
+import hicupp.ProjectionIndexFunction;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the linear-time pair counting of the Friedman-Tukey projection index
+ * of {@link ProjectionIndexFunction} against its O(n<sup>2</sup>) definition,
+ * on points with and without repeated values, and on weighted points against
+ * the same points repeated as many times as their weights.
+ * <p>Run the test from the command line using</p>
+ * <pre>
+ *  java -p bin -m hicupp/hicupp.test.TestFriedmanTukeyIndex
+ * </pre>
+ * <p>The final output should be:</p>
+ * <pre>
+ *  TestFriedmanTukeyIndex completed.
+ *  Total errors reported: 0
+ * </pre>
+ */
+public class TestFriedmanTukeyIndex {
+  /** The horizon of the index, in standard deviations, as in the function. */
+  private static final double HORIZON = 0.1;
+
+  private static int errorCount;
+
+  public static void main(String[] args) {
+    Random random = new Random(1);
+    final int d = 2;
+    final int n = 800;
+
+    double[][] argumentSets = {{0.0}, {0.5}, {-0.8}, {1.0}};
+
+    for (boolean repeated : new boolean[] {false, true}) {
+      double[] coordinates = new double[d * n];
+      for (int k = 0; k < n; k++)
+        for (int i = 0; i < d; i++) {
+          double coordinate = random.nextGaussian() + (i == 0 && k % 3 == 0 ? 4 : 0);
+          coordinates[k * d + i] = repeated ? Math.rint(coordinate * 4) / 4 : coordinate;
+        }
+      int[] weights = new int[n];
+      int total = 0;
+      for (int k = 0; k < n; k++)
+        total += weights[k] = 1 + random.nextInt(3);
+      double[] expanded = new double[d * total];
+      for (int k = 0, offset = 0; k < n; k++)
+        for (int c = 0; c < weights[k]; c++, offset += d)
+          System.arraycopy(coordinates, k * d, expanded, offset, d);
+
+      String points = repeated ? "points with repeated values" : "distinct points";
+      ProjectionIndexFunction function =
+          new ProjectionIndexFunction(ProjectionIndexFunction.FRIEDMAN_TUKEY_PROJECTION_INDEX,
+                                      new ArraySetOfPoints(d, coordinates));
+      ProjectionIndexFunction weighted =
+          new ProjectionIndexFunction(ProjectionIndexFunction.FRIEDMAN_TUKEY_PROJECTION_INDEX,
+                                      new ArraySetOfPoints(d, coordinates, weights));
+
+      for (double[] arguments : argumentSets) {
+        String at = points + " at " + Arrays.toString(arguments);
+
+        double value = function.evaluate(arguments.clone());
+        double expected = computeIndex(coordinates, d, arguments);
+        check(value, expected, "index", at);
+
+        double weightedValue = weighted.evaluate(arguments.clone());
+        double weightedExpected = computeIndex(expanded, d, arguments);
+        check(weightedValue, weightedExpected, "weighted index", at);
+      }
+    }
+
+    print("\nTestFriedmanTukeyIndex completed.\n");
+    print("Total errors reported: " + errorCount + "\n");
+  }
+
+  /**
+   * Computes the index of the projection onto the axis given by
+   * <code>arguments</code> by summing over all pairs of points.
+   */
+  private static double computeIndex(double[] coordinates, int d, double[] arguments) {
+    double[] axis = new double[d];
+    double sumOfSquares = 0.0;
+    for (int i = 0; i < d - 1; i++) {
+      axis[i] = arguments[i];
+      sumOfSquares += arguments[i] * arguments[i];
+    }
+    axis[d - 1] = Math.sqrt(1.0 - sumOfSquares);
+
+    int n = coordinates.length / d;
+    double[] values = new double[n];
+    double sum = 0.0;
+    for (int k = 0; k < n; k++) {
+      for (int i = 0; i < d; i++)
+        values[k] += coordinates[k * d + i] * axis[i];
+      sum += values[k];
+    }
+    double mean = sum / n;
+    double sumsq = 0.0;
+    for (int k = 0; k < n; k++)
+      sumsq += (values[k] - mean) * (values[k] - mean);
+    double standardDeviation = Math.sqrt(sumsq / n);
+    for (int k = 0; k < n; k++)
+      values[k] = (values[k] - mean) / standardDeviation;
+
+    // The standard deviation of the values without the lowest and highest
+    // tenth.
+
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int trim = (int) (0.1 * n);
+    double trimmedSum = 0.0;
+    double trimmedSumsq = 0.0;
+    for (int k = trim; k < n - trim; k++) {
+      trimmedSum += sorted[k];
+      trimmedSumsq += sorted[k] * sorted[k];
+    }
+    double trimmedMean = trimmedSum / (n - 2 * trim);
+    double spread = Math.sqrt(trimmedSumsq / (n - 2 * trim) - trimmedMean * trimmedMean);
+
+    double density = 0.0;
+    for (int k = 0; k < n; k++)
+      for (int l = 0; l < n; l++)
+        density += Math.max(0.0, HORIZON - Math.abs(values[k] - values[l]));
+
+    return spread * density / n / n;
+  }
+
+  private static void check(double actual, double expected, String method, String at) {
+    if (Math.abs(actual - expected) <= 1e-10 * Math.abs(expected))
+      print(">    " + method + " of " + at + "... success\n");
+    else {
+      errorCount++;
+      print(">    " + method + " of " + at + "... *** failure *** (" + actual + " instead of " + expected + ")\n");
+    }
+  }
+
+  private static void print(String s) {
+    System.out.print(s);
+  }
+}
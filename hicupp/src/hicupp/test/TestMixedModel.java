@@ -0,0 +1,92 @@
+package hicupp.test;
+
+import hicupp.ArraySetOfPoints;
+import hicupp.MixedModel;
+import hicupp.ProjectionIndexFunction;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests that the restarts of {@link MixedModel} are reproducible: the same
+ * seed gives the same model whatever the number of threads, and the Mixed
+ * projection index gives the same value every time.
+ * <p>Run the test from the command line using</p>
+ * <pre>
+ *  java -p bin -m hicupp/hicupp.test.TestMixedModel
+ * </pre>
+ * <p>The final output should be:</p>
+ * <pre>
+ *  TestMixedModel completed.
+ *  Total errors reported: 0
+ * </pre>
+ */
+public class TestMixedModel {
+  private static final int RESTART_COUNT = 8;
+
+  private static int errorCount;
+
+  public static void main(String[] args) throws Exception {
+    Random random = new Random(1);
+    double[] values = new double[2000];
+    for (int i = 0; i < values.length; i++)
+      values[i] = random.nextGaussian() + (i % 3 == 0 ? 3 : 0);
+    double[] weights = new double[values.length];
+    for (int i = 0; i < weights.length; i++)
+      weights[i] = 1 + random.nextInt(4);
+
+    for (double[] w : new double[][] {null, weights}) {
+      String kind = w == null ? "unweighted" : "weighted";
+      MixedModel first = MixedModel.iterate(2, values, w, RESTART_COUNT, 7L);
+      MixedModel second = MixedModel.iterate(2, values, w, RESTART_COUNT, 7L);
+      check(equal(first, second), "iterate twice with the same seed", kind);
+
+      MixedModel single = new ForkJoinPool(1).submit(
+          () -> MixedModel.iterate(2, values, w, RESTART_COUNT, 7L)).get();
+      MixedModel several = new ForkJoinPool(4).submit(
+          () -> MixedModel.iterate(2, values, w, RESTART_COUNT, 7L)).get();
+      check(equal(first, single) && equal(first, several),
+            "iterate on pools of one and four threads", kind);
+    }
+
+    double[] coordinates = new double[3 * 1000];
+    for (int i = 0; i < coordinates.length; i++)
+      coordinates[i] = random.nextGaussian() + (i % 3 == 1 && i / 3 % 2 == 0 ? 4 : 0);
+    ProjectionIndexFunction function =
+        new ProjectionIndexFunction(ProjectionIndexFunction.MIXED_PROJECTION_INDEX,
+                                    new ArraySetOfPoints(3, coordinates));
+    ProjectionIndexFunction other =
+        new ProjectionIndexFunction(ProjectionIndexFunction.MIXED_PROJECTION_INDEX,
+                                    new ArraySetOfPoints(3, coordinates));
+    double[][] argumentSets = {{0.0, 0.0}, {0.6, 0.0}, {0.1, 0.9}, {-0.5, 0.5}};
+    for (double[] arguments : argumentSets) {
+      double value = function.evaluate(arguments.clone());
+      check(function.evaluate(arguments.clone()) == value && other.evaluate(arguments.clone()) == value,
+            "Mixed index at " + Arrays.toString(arguments), "repeated evaluations");
+    }
+
+    print("\nTestMixedModel completed.\n");
+    print("Total errors reported: " + errorCount + "\n");
+  }
+
+  private static boolean equal(MixedModel x, MixedModel y) {
+    return x.aic == y.aic && x.iterations == y.iterations &&
+           Arrays.equals(x.mixprob, y.mixprob) &&
+           Arrays.equals(x.mugg, y.mugg) &&
+           Arrays.equals(x.covgg, y.covgg);
+  }
+
+  private static void check(boolean passed, String method, String kind) {
+    if (passed)
+      print(">    " + method + " (" + kind + ")... success\n");
+    else {
+      errorCount++;
+      print(">    " + method + " (" + kind + ")... *** failure ***\n");
+    }
+  }
+
+  private static void print(String s) {
+    System.out.print(s);
+  }
+}
@@ -0,0 +1,205 @@
+package hicupp.test;
+
+import hicupp.ArraySetOfPoints;
+import hicupp.ProjectionIndexFunction;
+
+import java.util.Random;
+
+/**
+ * Tests the Legendre and Hermite projection indices of
+ * {@link ProjectionIndexFunction}: their values against a direct computation
+ * from the closed forms of the polynomials, and their gradients against
+ * central differences.
+ * <p>Run the test from the command line using</p>
+ * <pre>
+ *  java -p bin -m hicupp/hicupp.test.TestPolynomialIndices
+ * </pre>
+ * <p>The final output should be:</p>
+ * <pre>
+ *  TestPolynomialIndices completed.
+ *  Total errors reported: 0
+ * </pre>
+ */
+public class TestPolynomialIndices {
+  /** The highest degree of the basis functions, as in the function. */
+  private static final int ORDER = 6;
+
+  private static int errorCount;
+
+  public static void main(String[] args) {
+    Random random = new Random(1);
+    final int d = 3;
+    final int n = 1500;
+    double[] coordinates = new double[d * n];
+    for (int k = 0; k < n; k++)
+      for (int i = 0; i < d; i++)
+        coordinates[k * d + i] = random.nextGaussian() + (i == 1 && k % 2 == 0 ? 3 : 0) + 0.5 * i;
+    int[] weights = new int[n];
+    for (int k = 0; k < n; k++)
+      weights[k] = 1 + random.nextInt(3);
+
+    double[][] argumentSets = {{0.0, 0.0}, {0.3, -0.4}, {0.1, 0.9}, {-0.7, 0.2}};
+
+    for (int projectionIndex : new int[] {ProjectionIndexFunction.LEGENDRE_PROJECTION_INDEX,
+                                          ProjectionIndexFunction.HERMITE_PROJECTION_INDEX}) {
+      for (int[] w : new int[][] {null, weights}) {
+        String name = ProjectionIndexFunction.getProjectionIndexNames()[projectionIndex] +
+                      (w == null ? "" : ", weighted");
+        ProjectionIndexFunction function =
+            new ProjectionIndexFunction(projectionIndex, new ArraySetOfPoints(d, coordinates, w));
+
+        for (double[] arguments : argumentSets) {
+          String at = name + " at (" + arguments[0] + ", " + arguments[1] + ")";
+
+          double value = function.evaluate(arguments.clone());
+          double expected = computeIndex(projectionIndex, coordinates, w, d, arguments);
+          check(Math.abs(value - expected) <= 1e-9 * Math.max(1.0, Math.abs(expected)),
+                "value", at, value, expected);
+
+          double[] gradient = new double[arguments.length];
+          double gradientValue = function.evaluate(arguments.clone(), gradient);
+          check(gradientValue == value, "value with gradient", at, gradientValue, value);
+
+          final double h = 1e-6;
+          for (int i = 0; i < arguments.length; i++) {
+            double[] plus = arguments.clone();
+            double[] minus = arguments.clone();
+            plus[i] += h;
+            minus[i] -= h;
+            double difference = (function.evaluate(plus) - function.evaluate(minus)) / (2 * h);
+            check(Math.abs(gradient[i] - difference) <= 1e-5 * Math.max(1e-3, Math.abs(difference)),
+                  "gradient[" + i + "]", at, gradient[i], difference);
+          }
+        }
+      }
+    }
+
+    print("\nTestPolynomialIndices completed.\n");
+    print("Total errors reported: " + errorCount + "\n");
+  }
+
+  /**
+   * Computes the index of the projection onto the axis given by
+   * <code>arguments</code> directly from its definition.
+   */
+  private static double computeIndex(int projectionIndex, double[] coordinates, int[] weights,
+                                     int d, double[] arguments) {
+    double[] axis = new double[d];
+    double sumOfSquares = 0.0;
+    for (int i = 0; i < d - 1; i++) {
+      axis[i] = arguments[i];
+      sumOfSquares += arguments[i] * arguments[i];
+    }
+    axis[d - 1] = Math.sqrt(1.0 - sumOfSquares);
+
+    int n = coordinates.length / d;
+    double[] values = new double[n];
+    double total = 0.0;
+    double sum = 0.0;
+    for (int k = 0; k < n; k++) {
+      for (int i = 0; i < d; i++)
+        values[k] += coordinates[k * d + i] * axis[i];
+      double w = weights == null ? 1 : weights[k];
+      total += w;
+      sum += w * values[k];
+    }
+    double mean = sum / total;
+    double sumsq = 0.0;
+    for (int k = 0; k < n; k++) {
+      double w = weights == null ? 1 : weights[k];
+      sumsq += w * (values[k] - mean) * (values[k] - mean);
+    }
+    double standardDeviation = Math.sqrt(sumsq / total);
+
+    double[] means = new double[ORDER + 1];
+    for (int k = 0; k < n; k++) {
+      double w = weights == null ? 1 : weights[k];
+      double z = (values[k] - mean) / standardDeviation;
+      for (int j = 0; j <= ORDER; j++)
+        means[j] += w * (projectionIndex == ProjectionIndexFunction.LEGENDRE_PROJECTION_INDEX ?
+                         legendre(j, 2 * normalDistribution(z) - 1) : hermiteFunction(j, z)) / total;
+    }
+
+    double index = 0.0;
+    if (projectionIndex == ProjectionIndexFunction.LEGENDRE_PROJECTION_INDEX)
+      for (int j = 1; j <= ORDER; j++)
+        index += (2 * j + 1) / 2.0 * means[j] * means[j];
+    else
+      for (int j = 0; j <= ORDER; j++) {
+
+        // The standard normal density has only a component along the Hermite
+        // function of degree 0.
+
+        double coefficient = j == 0 ? 1 / Math.sqrt(2) / Math.pow(Math.PI, 0.25) : 0.0;
+        index += (means[j] - coefficient) * (means[j] - coefficient);
+      }
+    return index;
+  }
+
+  /** Returns the Legendre polynomial of degree <code>j</code> at <code>r</code>. */
+  private static double legendre(int j, double r) {
+    double r2 = r * r;
+    switch (j) {
+      case 0: return 1;
+      case 1: return r;
+      case 2: return (3 * r2 - 1) / 2;
+      case 3: return (5 * r2 - 3) * r / 2;
+      case 4: return ((35 * r2 - 30) * r2 + 3) / 8;
+      case 5: return ((63 * r2 - 70) * r2 + 15) * r / 8;
+      case 6: return (((231 * r2 - 315) * r2 + 105) * r2 - 5) / 16;
+      default: throw new IllegalArgumentException("Degree out of range.");
+    }
+  }
+
+  /**
+   * Returns the orthonormal Hermite function of degree <code>j</code> at
+   * <code>z</code>, <code>H<sub>j</sub>(z) exp(-z<sup>2</sup> / 2) /
+   * sqrt(2<sup>j</sup> j! sqrt(&pi;))</code>.
+   */
+  private static double hermiteFunction(int j, double z) {
+    double z2 = z * z;
+    double polynomial;
+    switch (j) {
+      case 0: polynomial = 1; break;
+      case 1: polynomial = 2 * z; break;
+      case 2: polynomial = 4 * z2 - 2; break;
+      case 3: polynomial = (8 * z2 - 12) * z; break;
+      case 4: polynomial = (16 * z2 - 48) * z2 + 12; break;
+      case 5: polynomial = ((32 * z2 - 160) * z2 + 120) * z; break;
+      case 6: polynomial = ((64 * z2 - 480) * z2 + 720) * z2 - 120; break;
+      default: throw new IllegalArgumentException("Degree out of range.");
+    }
+    double factorial = 1;
+    for (int i = 2; i <= j; i++)
+      factorial *= i;
+    return polynomial * Math.exp(-z2 / 2) / Math.sqrt(Math.pow(2, j) * factorial * Math.sqrt(Math.PI));
+  }
+
+  /**
+   * Returns the standard normal distribution function, by Simpson's rule on
+   * the density from zero with a thousand intervals per unit.
+   */
+  private static double normalDistribution(double z) {
+    int intervals = 2 * (int) Math.ceil(500 * Math.abs(z)) + 2;
+    double step = z / intervals;
+    double sum = 0.0;
+    for (int i = 0; i <= intervals; i++) {
+      double t = i * step;
+      sum += (i == 0 || i == intervals ? 1 : i % 2 == 1 ? 4 : 2) * Math.exp(-t * t / 2);
+    }
+    return 0.5 + sum * step / 3 / Math.sqrt(2 * Math.PI);
+  }
+
+  private static void check(boolean passed, String method, String at, double actual, double expected) {
+    if (passed)
+      print(">    " + method + " of " + at + "... success\n");
+    else {
+      errorCount++;
+      print(">    " + method + " of " + at + "... *** failure *** (" + actual + " instead of " + expected + ")\n");
+    }
+  }
+
+  private static void print(String s) {
+    System.out.print(s);
+  }
+}
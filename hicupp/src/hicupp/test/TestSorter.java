@@ -0,0 +1,151 @@
+package hicupp.test;
+
+import hicupp.Sorter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the postconditions of the sorts and selections of {@link Sorter}
+ * against the library sort, on random lists of each size class, with and
+ * without repeated values.
+ * <p>Run the test from the command line using</p>
+ * <pre>
+ *  java -p bin -m hicupp/hicupp.test.TestSorter
+ * </pre>
+ * <p>The final output should be:</p>
+ * <pre>
+ *  TestSorter completed.
+ *  Total errors reported: 0
+ * </pre>
+ */
+public class TestSorter {
+  private static final int[] SIZES = {0, 1, 2, 15, 16, 17, 100, 1023, 1024, 5000, 300000};
+
+  private static int errorCount;
+
+  public static void main(String[] args) {
+    Random random = new Random(1);
+    Sorter.setPostconditionChecking(true);
+
+    for (int size : SIZES) {
+      for (boolean repeated : new boolean[] {false, true}) {
+        String list = size + (repeated ? " repeated values" : " values");
+
+        double[] values = createList(random, size, repeated);
+        double[] expected = values.clone();
+        Arrays.sort(expected);
+
+        double[] sorted = values.clone();
+        Sorter.sort(sorted);
+        check(Arrays.equals(sorted, expected), "sort", list);
+
+        sorted = values.clone();
+        Sorter.radixSort(sorted, new double[size]);
+        check(Arrays.equals(sorted, expected), "radixSort", list);
+
+        sorted = values.clone();
+        Sorter.parallelSort(sorted);
+        check(Arrays.equals(sorted, expected), "parallelSort", list);
+
+        // The weights identify the values, so that it can be checked that
+        // each stays with its value.
+
+        sorted = values.clone();
+        double[] weights = values.clone();
+        Sorter.sort(sorted, weights);
+        check(Arrays.equals(sorted, expected) && Arrays.equals(weights, sorted),
+              "sort with weights", list);
+
+        if (size == 0)
+          continue;
+
+        for (int k : new int[] {0, size / 10, size / 2, size - 1 - size / 10, size - 1}) {
+          double[] selected = values.clone();
+          double element = Sorter.select(selected, 0, size, k);
+          check(element == expected[k] && isPartitioned(selected, 0, size, k) &&
+                isPermutation(selected, expected),
+                "select k = " + k, list);
+        }
+
+        if (size > 2) {
+          int from = 1;
+          int to = size - 1;
+          int k = (from + to) / 2;
+          double[] selected = values.clone();
+          double[] range = Arrays.copyOfRange(values, from, to);
+          Arrays.sort(range);
+          double element = Sorter.select(selected, from, to, k);
+          check(element == range[k - from] && isPartitioned(selected, from, to, k) &&
+                selected[0] == values[0] && selected[size - 1] == values[size - 1],
+                "select in subrange, k = " + k, list);
+        }
+
+        // With weights of one, the weighted selection agrees with the
+        // unweighted one; with weights of two, rank 2k + 1 is element k.
+
+        for (int k : new int[] {0, size / 2, size - 1}) {
+          double[] selected = values.clone();
+          double[] ones = new double[size];
+          Arrays.fill(ones, 1.0);
+          check(Sorter.select(selected, ones, 0, size, k) == expected[k],
+                "weighted select with unit weights, rank = " + k, list);
+
+          selected = values.clone();
+          double[] twos = new double[size];
+          Arrays.fill(twos, 2.0);
+          check(Sorter.select(selected, twos, 0, size, 2 * k + 1) == expected[k],
+                "weighted select with weights of two, rank = " + (2 * k + 1), list);
+        }
+      }
+    }
+
+    print("\nTestSorter completed.\n");
+    print("Total errors reported: " + errorCount + "\n");
+  }
+
+  /**
+   * Returns <code>size</code> standard normal values or, if
+   * <code>repeated</code>, values drawn from a handful of integers.
+   */
+  private static double[] createList(Random random, int size, boolean repeated) {
+    double[] values = new double[size];
+    for (int i = 0; i < size; i++)
+      values[i] = repeated ? random.nextInt(5) - 2 : random.nextGaussian();
+    return values;
+  }
+
+  /**
+   * Returns whether no element of <code>values</code> from <code>from</code>
+   * to <code>k</code> is greater than the one at <code>k</code>, and none
+   * from <code>k</code> to <code>to</code> is less.
+   */
+  private static boolean isPartitioned(double[] values, int from, int to, int k) {
+    for (int i = from; i < k; i++)
+      if (values[i] > values[k])
+        return false;
+    for (int i = k + 1; i < to; i++)
+      if (values[i] < values[k])
+        return false;
+    return true;
+  }
+
+  private static boolean isPermutation(double[] values, double[] sorted) {
+    double[] copy = values.clone();
+    Arrays.sort(copy);
+    return Arrays.equals(copy, sorted);
+  }
+
+  private static void check(boolean passed, String method, String list) {
+    if (passed)
+      print(">    " + method + " on " + list + "... success\n");
+    else {
+      errorCount++;
+      print(">    " + method + " on " + list + "... *** failure ***\n");
+    }
+  }
+
+  private static void print(String s) {
+    System.out.print(s);
+  }
+}
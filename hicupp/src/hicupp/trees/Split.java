@@ -13,6 +13,7 @@ public final class Split extends Observable {
 
   private int splitProjectionIndex;
   private int optimisationAlgorithmIndex;
+  private int winningAlgorithmIndex;
   private int splitIterations;
 
   Split(Tree tree, Node parent, double[] axis, double threshold) {
@@ -26,6 +27,7 @@ public final class Split extends Observable {
 
     splitProjectionIndex = -1;
     optimisationAlgorithmIndex = -1;
+    winningAlgorithmIndex = -1;
     splitIterations = 0;
   }
   
@@ -107,4 +109,16 @@ public final class Split extends Observable {
   public void setOptimisationAlgorithmIndex(int optimisationAlgorithmIndex) {
     this.optimisationAlgorithmIndex = optimisationAlgorithmIndex;
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the index of the algorithm that found the axis, which differs from
+   * the optimisation algorithm for the portfolio, or -1 if unknown.
+   */
+  public int getWinningAlgorithmIndex() {
+    return winningAlgorithmIndex;
+  }
+
+  public void setWinningAlgorithmIndex(int winningAlgorithmIndex) {
+    this.winningAlgorithmIndex = winningAlgorithmIndex;
+  }
+}
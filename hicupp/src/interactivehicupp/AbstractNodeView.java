@@ -5,6 +5,7 @@ import java.awt.event.*;
 
 import hicupp.*;
 import hicupp.algorithms.AlgorithmParameters;
+import hicupp.algorithms.MultiStart;
 import hicupp.classify.*;
 import hicupp.trees.*;
 
@@ -20,6 +21,7 @@ abstract class AbstractNodeView implements NodeView {
 
   private String splitProjection;
   private String optimisationAlgorithm;
+  private String winningAlgorithm;
   private int splitNoOfIterations;
 
   private long evaluationTime;
@@ -40,10 +42,14 @@ abstract class AbstractNodeView implements NodeView {
       this.optimisationAlgorithm = (optimisationIndex == -1) ?
               "N/A" : FunctionMaximizer.getAlgorithmNames()[optimisationIndex];
 
+      this.winningAlgorithm = getWinningAlgorithmName(splitChild.getOptimisationAlgorithmIndex(),
+                                                      splitChild.getWinningAlgorithmIndex());
+
       this.splitNoOfIterations = classNode.getNode().getChild().getSplitIterations();
     } else {
       this.splitProjection = "N/A";
       this.optimisationAlgorithm = "N/A";
+      this.winningAlgorithm = null;
       this.splitNoOfIterations = 0;
     }
     
@@ -53,6 +59,7 @@ abstract class AbstractNodeView implements NodeView {
         child.resizeHistogramView(client.getHistogramZoom());
       } else if (info == "Prune") {
         this.splitProjection = "N/A";
+        this.winningAlgorithm = null;
         this.splitNoOfIterations = 0;
 
         // hide children info
@@ -123,19 +130,25 @@ abstract class AbstractNodeView implements NodeView {
     
     final MonitorDialog monitorDialog = new MonitorDialog(client.getFrame());
     AlgorithmParameters parameters = client.getAlgorithmParameters();
+    int restartCount = client.getRestartCount();
+    boolean memoizing = client.isMemoizing();
+    ProjectionIndexFunction function = Clusterer.createFunction(client.getProjectionIndex(), classNode);
+    function.setQuadrature(client.getQuadrature());
+    function.setSinglePrecision(client.isSinglePrecision());
 
     class Computation implements Runnable {
-      public volatile double[] axis;
+      public volatile Clusterer.AxisSearch search;
       public volatile Exception exception;
 
       public void run() {
         try {
-          axis = Clusterer.findAxis(
-                  client.getProjectionIndex(),
+          search = Clusterer.searchAxis(
+                  function,
                   client.getAlgorithmIndex(),
-                  classNode,
                   monitorDialog,
-                  parameters);
+                  parameters,
+                  memoizing,
+                  restartCount);
         } catch (Exception e) {
           exception = e;
         }
@@ -168,17 +181,30 @@ abstract class AbstractNodeView implements NodeView {
       throw (RuntimeException) computation.exception;
     }
 
-    double[] axis = computation.axis;
+    double[] axis = computation.search.axis();
+    int winnerIndex = computation.search.outcome().winnerIndex();
     classNode.split(axis);
 
     splitNoOfIterations = monitorDialog.getIterationCount();
+    winningAlgorithm = getWinningAlgorithmName(client.getAlgorithmIndex(), winnerIndex);
     client.getLogTextArea().append("\nNode " + getClassNode().getNode().getSerialNumber() +
             " split using projection index " + splitProjection + " with " +
             splitNoOfIterations + " iterations in " + duration + " seconds.\n");
+    if (winningAlgorithm != null)
+      client.getLogTextArea().append("Portfolio winner: " + winningAlgorithm + "\n");
+    MultiStart.Result starts = computation.search.outcome().starts();
+    if (starts != null) {
+      StringBuilder values = new StringBuilder();
+      for (double value : starts.values())
+        values.append(values.length() == 0 ? "" : ", ").append(TextTools.formatScientific(value));
+      client.getLogTextArea().append("Values of the " + starts.values().length + " of " + starts.startCount() +
+                                     " starts that converged, best first: " + values + "\n");
+    }
 
     Split split = classNode.getNode().getChild();
     split.setSplitProjectionIndex(client.getProjectionIndex());
     split.setOptimisationAlgorithmIndex(client.getAlgorithmIndex());
+    split.setWinningAlgorithmIndex(winnerIndex);
     split.setSplitIterations(splitNoOfIterations);
 
     if (infoTextArea != null) {
@@ -187,6 +213,63 @@ abstract class AbstractNodeView implements NodeView {
     }
   }
   
+  /**
+   * Returns the name of the algorithm of the portfolio that found the axis of
+   * a split, or <code>null</code> if the split did not use the portfolio, or
+   * no algorithm of it converged, or the split was saved without its winner.
+   */
+  private static String getWinningAlgorithmName(int optimisationIndex, int winnerIndex) {
+    if (optimisationIndex != FunctionMaximizer.PORTFOLIO_ALGORITHM_INDEX || winnerIndex == -1)
+      return null;
+    return FunctionMaximizer.getAlgorithmNames()[winnerIndex];
+  }
+  
+  /**
+   * Evaluates every projection index on the axis of this node's split in the
+   * background and logs the values, unless cancelled.
+   */
+  public void compareIndices() {
+    final MonitorDialog monitorDialog = new MonitorDialog(client.getFrame(),
+            "Evaluating every projection index on the split axis...");
+    final double[] axis = classNode.getNode().getChild().getAxis();
+    String[] names = ProjectionIndexFunction.getProjectionIndexNames();
+
+    class Computation implements Runnable {
+      public volatile double[] values;
+      public volatile Exception exception;
+
+      public void run() {
+        try {
+          values = new MultiIndexEvaluator(classNode).evaluateAxis(axis);
+          monitorDialog.continuing();
+        } catch (Exception e) {
+          exception = e;
+        }
+      }
+    }
+
+    Computation computation = new Computation();
+
+    long start = System.currentTimeMillis();
+    monitorDialog.show(computation, client.getLogTextArea());
+    double duration = (System.currentTimeMillis() - start) / 1000d;
+
+    if (computation.exception instanceof CancellationException)
+      return;
+    if (computation.exception != null)
+      throw (RuntimeException) computation.exception;
+
+    double[] values = computation.values;
+    if (!client.getLogTextArea().getText().equals(""))
+      client.getLogTextArea().append("__________________________________________________________________________________\n\n");
+    client.getLogTextArea().append("Projection indices on the split of node " +
+                                   classNode.getNode().getSerialNumber() +
+                                   " (evaluated in " + duration + " seconds):\n");
+    for (int i = 0; i < names.length; i++)
+      client.getLogTextArea().append(names[i] + ": " +
+                                     (values == null ? "N/A" : TextTools.formatScientific(values[i])) + "\n");
+  }
+  
   public void newPoints() {
     if (infoTextArea != null)
       updateInfo();
@@ -246,13 +329,15 @@ abstract class AbstractNodeView implements NodeView {
     }
 
     if (!this.splitProjection.equals("N/A")) {
-      infoTextArea.setRows(classNode.getDimensionCount() + 7);
+      infoTextArea.setRows(classNode.getDimensionCount() + (winningAlgorithm == null ? 7 : 8));
       info.append("\n\n   Split info\n");
       info.append("Projection index: ").append(splitProjection).append("\n");
       StringBuilder algorithm = new StringBuilder();
       algorithm.append("Optimisation algorithm: ").append(optimisationAlgorithm);
       infoTextArea.setColumns(algorithm.length() + 1);
       info.append(algorithm).append("\n");
+      if (winningAlgorithm != null)
+        info.append("Winning algorithm: ").append(winningAlgorithm).append("\n");
       info.append("Number of iterations: ").append(splitNoOfIterations);
     } else infoTextArea.setRows(classNode.getDimensionCount() + 1);
     
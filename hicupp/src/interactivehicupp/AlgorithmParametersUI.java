@@ -48,9 +48,68 @@ public final class AlgorithmParametersUI {
                 case FunctionMaximizer.GRADIENT_ALGORITHM_INDEX -> GradientUI.log(log, parameters);
                 default -> log.append("Not applicable.\n\n");
             }
+
+            if (treeDocument.getRestartCount() > 1)
+                log.append("Number of starts: " + treeDocument.getRestartCount() + "\n\n");
+            if (treeDocument.getQuadrature() != ProjectionIndexFunction.TRAPEZOIDAL_QUADRATURE)
+                log.append("Density integration: " +
+                        ProjectionIndexFunction.getQuadratureNames()[treeDocument.getQuadrature()] + "\n\n");
+            if (treeDocument.isSinglePrecision())
+                log.append("Points projected in single precision.\n\n");
+            if (treeDocument.isMemoizing())
+                log.append("Evaluations remembered.\n\n");
         }
     }
 
+    /**
+     * Asks for the number of starts from which splits run the optimization algorithm.
+     */
+    public static void createRestartCount(TreeDocument treeDocument) {
+        Frame frame = treeDocument.getFrame();
+
+        JDialog dialog = new JDialog(frame, "Number of Starts", true);
+
+        JLabel labelStarts = new JLabel("Number of starts: ", JLabel.RIGHT);
+        JTextField fieldStarts = new JTextField(Integer.toString(treeDocument.getRestartCount()));
+
+        final JButton ok = new JButton("Ok");
+        final JButton cancel = new JButton("Cancel");
+
+        cancel.addActionListener(e -> dialog.dispose());
+
+        ok.addActionListener(e -> {
+            try {
+                final int restartCount = Integer.parseInt(fieldStarts.getText());
+
+                if (restartCount <= 0) {
+                    MessageBox.showMessage(frame, "Number of starts must be greater than 0.",
+                            "Interactive Hicupp");
+                } else {
+                    treeDocument.setRestartCount(restartCount);
+                    dialog.dispose();
+                }
+            } catch (NumberFormatException exception) {
+                MessageBox.showMessage(frame, "What you entered is not a full number.",
+                        "Interactive Hicupp");
+            }
+        });
+
+        dialog.add(labelStarts);
+        dialog.add(fieldStarts);
+        dialog.add(ok);
+        dialog.add(cancel);
+
+        dialog.setLayout(new GridLayout(2, 2, 8, 8));
+
+        showDialog(dialog, frame, new Response() {
+            @Override
+            public void confirm() { }
+
+            @Override
+            public void cancel() { }
+        });
+    }
+
     private static class AnnealingUI {
 
         private final JDialog dialog;
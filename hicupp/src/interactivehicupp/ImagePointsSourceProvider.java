@@ -7,6 +7,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Optional;
 
 import hicupp.*;
@@ -44,6 +45,8 @@ public class ImagePointsSourceProvider implements PointsSourceProvider {
   private final ImageNodeView root;
 
   private int[] imagePixels;
+  /** The index into {@link #points} of the color of each pixel. */
+  private int[] pixelColorIndices;
   private int imageWidth;
   private int imageHeight;
   private float zoomFactor;
@@ -60,35 +63,45 @@ public class ImagePointsSourceProvider implements PointsSourceProvider {
   private String metadata = "N/A\nN/A\nN/A";
   private boolean automaticColor;
 
-  private final SetOfPoints points = new SetOfPoints() {
-    public int getDimensionCount() {
-      return 3;
-    }
-
-    public int getPointCount() {
-      return imagePixels.length;
-    }
-
-    public PointIterator createIterator() {
-      return new PixelIterator();
-    }
-
-    class PixelIterator implements PointIterator {
-      private int index = -1;
-
-      public boolean hasNext() {
-        return index < imagePixels.length;
-      }
-
-      public void next() {
-        index++;
-      }
-
-      public double getCoordinate(int index) {
-        return (imagePixels[this.index] >> ((2 - index) << 3)) & 0xff;
+  /**
+   * The distinct colors of the image, which are its points, weighted by the
+   * number of pixels of each color, so that the projection indices take time
+   * proportional to the number of colors rather than of pixels.
+   */
+  private SetOfPoints points;
+
+  /**
+   * Builds the table of the distinct colors of the image and their pixel
+   * counts, and the index of each pixel's color in it, by sorting the pixels
+   * by color. The colors are stored as one byte plane per channel.
+   */
+  private void countColors() {
+    final int pixelCount = imagePixels.length;
+    final long[] keys = new long[pixelCount];
+    for (int i = 0; i < pixelCount; i++)
+      keys[i] = ((long) (imagePixels[i] & 0xffffff) << 32) | i;
+    Arrays.parallelSort(keys);
+
+    final int[] colors = new int[pixelCount];
+    final int[] counts = new int[pixelCount];
+    pixelColorIndices = new int[pixelCount];
+    int colorCount = 0;
+    int previousColor = -1;
+    for (long key : keys) {
+      int color = (int) (key >>> 32);
+      if (color != previousColor) {
+        colors[colorCount++] = color;
+        previousColor = color;
       }
+      counts[colorCount - 1]++;
+      pixelColorIndices[(int) key] = colorCount - 1;
     }
-  };
+    final byte[][] planes = new byte[3][colorCount];
+    for (int j = 0; j < colorCount; j++)
+      for (int i = 0; i < 3; i++)
+        planes[i][j] = (byte) (colors[j] >> ((2 - i) << 3));
+    points = new BytePlaneSetOfPoints(planes, Arrays.copyOf(counts, colorCount));
+  }
 
   private static void pixelToRgb(int pixel, double[] rgb) {
     rgb[0] = (pixel >> 16) & 0xff;
@@ -142,8 +155,9 @@ public class ImagePointsSourceProvider implements PointsSourceProvider {
       }
       int[] pixels = new int[imageWidth * imageHeight];
       for (int i = 0; i < pixels.length; i++) {
-        int color = parentClassNode.containsPointAtIndex(i) ?
-                (classNode.containsPointAtIndex(i) ?
+        int colorIndex = pixelColorIndices[i];
+        int color = parentClassNode.containsPointAtIndex(colorIndex) ?
+                (classNode.containsPointAtIndex(colorIndex) ?
                         imagePixels[i] :
                         newMaskColor) :
                 oldMaskColor;
@@ -455,6 +469,7 @@ public class ImagePointsSourceProvider implements PointsSourceProvider {
       imagePixels = image.getPixels();
       imageWidth = image.getWidth();
       imageHeight = image.getHeight();
+      countColors();
       classTree.setPoints(points);
       setAutomaticZoom();
 
@@ -475,6 +490,7 @@ public class ImagePointsSourceProvider implements PointsSourceProvider {
       imagePixels = image.getPixels();
       imageWidth = image.getWidth();
       imageHeight = image.getHeight();
+      countColors();
       classTree.setPoints(points);
       setAutomaticZoom();
     } catch (IOException e) {
@@ -560,6 +576,7 @@ public class ImagePointsSourceProvider implements PointsSourceProvider {
         imagePixels[i + j * width] = 0xff000000 + 2 * i + 512 * j;
     imageWidth = width;
     imageHeight = height;
+    countColors();
   }
 
   private void updateImageSource() {
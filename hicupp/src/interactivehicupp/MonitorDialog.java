@@ -21,6 +21,13 @@ public class MonitorDialog extends JDialog implements Monitor {
   private volatile int evaluationCount;
   
   public MonitorDialog(Frame owner) {
+    this(owner, "Computing the split axis by maximizing the projection index function...");
+  }
+  
+  /**
+   * @param introText Describes the computation that the dialog monitors.
+   */
+  public MonitorDialog(Frame owner, String introText) {
     super(owner, "Interactive Hicupp", true);
     
     setLayout(new BorderLayout());
@@ -30,7 +37,7 @@ public class MonitorDialog extends JDialog implements Monitor {
     JPanel buttonPanel = new JPanel();
     add(buttonPanel, BorderLayout.SOUTH);
     
-    introLabel.setText("Computing the split axis by maximizing the projection index function...");
+    introLabel.setText(introText);
     
     statisticsPanel.setLayout(new GridLayout(0, 2));
     JLabel iterationsLabelLabel = new JLabel();
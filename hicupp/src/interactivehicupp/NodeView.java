@@ -13,6 +13,7 @@ public interface NodeView {
   SplitView getParentSplitView();
   SplitView getChild();
   void split() throws NoConvergenceException, CancellationException;
+  void compareIndices();
   void newPoints();
   void showInfo();
   void hideInfo();
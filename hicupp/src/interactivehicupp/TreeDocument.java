@@ -18,6 +18,10 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
   private int projectionIndex = ProjectionIndexFunction.FRIEDMANS_PROJECTION_INDEX;
   private int algorithmIndex = FunctionMaximizer.SIMPLEX_ALGORITHM_INDEX;
   private AlgorithmParameters algorithmParameters;
+  private int restartCount = 1;
+  private int quadrature = ProjectionIndexFunction.TRAPEZOIDAL_QUADRATURE;
+  private boolean singlePrecision;
+  private boolean memoizing;
 
   private DocumentChangeListener changeListener;
 
@@ -56,6 +60,56 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
     algorithmParameters = parameters;
   }
 
+  /**
+   * Returns the number of starts from which splits run the optimization
+   * algorithm; see {@link FunctionMaximizer#maximizeWithRestarts}.
+   */
+  public int getRestartCount() {
+    return restartCount;
+  }
+
+  public void setRestartCount(int restartCount) {
+    this.restartCount = restartCount;
+  }
+
+  /**
+   * Returns how the density indices integrate when splitting; see
+   * {@link ProjectionIndexFunction#setQuadrature(int)}.
+   */
+  public int getQuadrature() {
+    return quadrature;
+  }
+
+  public void setQuadrature(int quadrature) {
+    this.quadrature = quadrature;
+  }
+
+  /**
+   * Returns whether splits project the points in single precision; see
+   * {@link ProjectionIndexFunction#setSinglePrecision(boolean)}.
+   */
+  public boolean isSinglePrecision() {
+    return singlePrecision;
+  }
+
+  public void setSinglePrecision(boolean singlePrecision) {
+    this.singlePrecision = singlePrecision;
+  }
+
+  /**
+   * Returns whether splits remember the values the algorithm evaluated, so
+   * that it does not evaluate the index twice at the same axis; see
+   * {@link FunctionMaximizer#maximize(Function, int, Monitor,
+   * AlgorithmParameters, boolean)}.
+   */
+  public boolean isMemoizing() {
+    return memoizing;
+  }
+
+  public void setMemoizing(boolean memoizing) {
+    this.memoizing = memoizing;
+  }
+
   public JFrame getFrame() {
     return getFrameAncestor(this);
   }
@@ -80,6 +134,15 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
     nodePopupMenu.setFont(DocumentFrame.menuFont);
 
     JMenuItem configureAlgorithmMenu = new JMenuItem();
+    JMenuItem restartCountMenu = new JMenuItem();
+    RadioMenuTools quadratureMenu = RadioMenuTools.createRadioMenu(
+            ProjectionIndexFunction.getQuadratureNames(),
+            quadrature,
+            this::setQuadrature);
+    JCheckBoxMenuItem singlePrecisionMenu = new JCheckBoxMenuItem();
+    singlePrecisionMenu.addActionListener(e -> setSinglePrecision(singlePrecisionMenu.getState()));
+    JCheckBoxMenuItem memoizingMenu = new JCheckBoxMenuItem();
+    memoizingMenu.addActionListener(e -> setMemoizing(memoizingMenu.getState()));
     {
       RadioMenuTools.RadioMenuEventListener projectionIndexListener = this::changeProjection;
       String[] projectionLabels = ProjectionIndexFunction.getProjectionIndexNames();
@@ -105,11 +168,17 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
         else
           changeAlgorithm(algorithmIndex);
       });
+
+      restartCountMenu.addActionListener(e -> AlgorithmParametersUI.createRestartCount(this));
     }
 
     projectionIndexMenu.setText("Projection Index");
     optimisationAlgorithmMenu.setText("Optimization Algorithm");
     configureAlgorithmMenu.setText("Configure Optimization Algorithm");
+    restartCountMenu.setText("Number of Starts");
+    quadratureMenu.setText("Density Integration");
+    singlePrecisionMenu.setText("Single Precision");
+    memoizingMenu.setText("Remember Evaluations");
 
     JMenuItem redrawTreeMenu = new JMenuItem();
     redrawTreeMenu.setText("Redraw tree");
@@ -134,6 +203,10 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
     toolsMenu.add(projectionIndexMenu);
     toolsMenu.add(optimisationAlgorithmMenu);
     toolsMenu.add(configureAlgorithmMenu);
+    toolsMenu.add(restartCountMenu);
+    toolsMenu.add(quadratureMenu);
+    toolsMenu.add(singlePrecisionMenu);
+    toolsMenu.add(memoizingMenu);
     toolsMenu.addSeparator();
     toolsMenu.add(redrawTreeMenu);
     toolsMenu.add(resizeHistogram);
@@ -247,6 +320,7 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
 
     final JMenuItem splitMenuItem = new JMenuItem();
     final JMenuItem pruneMenuItem = new JMenuItem();
+    final JMenuItem compareIndicesMenuItem = new JMenuItem();
     final JMenuItem goToNodeMenuItem = new JMenuItem();
     final JMenuItem showInfoMenuItem = new JMenuItem();
 
@@ -275,6 +349,9 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
       updateGoMenu();
       repaint();
     });
+    compareIndicesMenuItem.setText("Compare Indices On This Split");
+    compareIndicesMenuItem.setEnabled(!split);
+    compareIndicesMenuItem.addActionListener(e -> selectedNode.compareIndices());
     goToNodeMenuItem.setText("Go To Node");
     goToNodeMenuItem.addActionListener(e -> goTo(selectedNode));
     showInfoMenuItem.setText(selectedNode.infoIsShowing() ? "Hide Info" : "Show Info");
@@ -287,6 +364,7 @@ public class TreeDocument extends JPanel implements Document, PointsSourceClient
 
     nodePopupMenu.add(splitMenuItem);
     nodePopupMenu.add(pruneMenuItem);
+    nodePopupMenu.add(compareIndicesMenuItem);
     nodePopupMenu.add(goToNodeMenuItem);
     nodePopupMenu.add(showInfoMenuItem);
 
@@ -36,7 +36,7 @@ public class TreeFileFormat {
     writer.close();
   }
 
-  // id split_index split_algorithm split_iterations axis... threshold
+  // id split_index split_algorithm split_iterations axis... threshold winning_algorithm
   private static void writeSplit(int i, Split split, PrintWriter writer) {
     if (split != null) {
       // id
@@ -60,6 +60,10 @@ public class TreeFileFormat {
       // threshold
       writer.print(' ');
       writer.print(split.getThreshold());
+
+      // winning algorithm
+      writer.print(' ');
+      writer.print(split.getWinningAlgorithmIndex());
       writer.println();
       int iLeft = 2 * i;
       writeSplit(iLeft, split.getLeftChild().getChild(), writer);
@@ -107,8 +111,16 @@ public class TreeFileFormat {
       for (int j = 0; j < ndims; j++)
         axis[j] = readNumber(t);
       double splitValue = readNumber(t);
-      
+
+      // winning algorithm, absent from older files
+      int winningAlgorithm = -1;
       t.nextToken();
+      if (t.ttype == StreamTokenizer.TT_NUMBER) {
+        t.pushBack();
+        winningAlgorithm = (int) readNumber(t);
+        t.nextToken();
+      }
+      
       if (t.ttype != StreamTokenizer.TT_EOL)
         syntaxError(t.lineno(), "End of line expected.");
       
@@ -119,6 +131,7 @@ public class TreeFileFormat {
       Split child = node.getChild();
       child.setSplitProjectionIndex(splitIndex);
       child.setOptimisationAlgorithmIndex(splitAlgorithm);
+      child.setWinningAlgorithmIndex(winningAlgorithm);
       child.setSplitIterations(splitIterations);
       readSubtree(child.getLeftChild(), ndims, iLeft, t);
       readSubtree(child.getRightChild(), ndims, iLeft + 1, t);
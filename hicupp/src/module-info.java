@@ -1,3 +1,4 @@
 module hicupp {
 	requires java.desktop;
+	requires static jdk.incubator.vector;
 }